@@ -68,9 +68,13 @@ CREATE TABLE IF NOT EXISTS know_posts (
     KEY ix_know_posts_tag_ct (tag_id, create_time),
     KEY ix_know_posts_top_ct (is_top, create_time),
     KEY ix_know_posts_creator_status_pub (creator_id, status, publish_time),
+    KEY ix_know_posts_feed_pub (status, visible, publish_time, id),
     CONSTRAINT fk_know_posts_creator FOREIGN KEY (creator_id) REFERENCES users(id)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 
+-- 已有库补建首页 Feed 游标分页索引（与 listFeedPublicAfter 的 WHERE/ORDER BY 对齐）：
+-- ALTER TABLE know_posts ADD KEY ix_know_posts_feed_pub (status, visible, publish_time, id);
+
 CREATE TABLE IF NOT EXISTS outbox (
     id BIGINT UNSIGNED NOT NULL,
     aggregate_type VARCHAR(64) NOT NULL,
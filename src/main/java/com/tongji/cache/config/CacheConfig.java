@@ -3,8 +3,11 @@ package com.tongji.cache.config;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.tongji.knowpost.api.dto.FeedPageResponse;
+import com.tongji.knowpost.api.dto.KnowPostDetailResponse;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 
 import java.time.Duration;
 
@@ -25,6 +28,7 @@ public class CacheConfig {
         return Caffeine.newBuilder()
                 .maximumSize(props.getL2().getPublicCfg().getMaxSize())
                 .expireAfterWrite(Duration.ofSeconds(props.getL2().getPublicCfg().getTtlSeconds()))
+                .recordStats()
                 .build();
     }
 
@@ -38,6 +42,31 @@ public class CacheConfig {
         return Caffeine.newBuilder()
                 .maximumSize(props.getL2().getMineCfg().getMaxSize())
                 .expireAfterWrite(Duration.ofSeconds(props.getL2().getMineCfg().getTtlSeconds()))
+                .recordStats()
                 .build();
     }
+
+    /**
+     * 知文详情本地缓存（仅收录热度达到 MEDIUM 及以上的详情）。
+     *
+     * <p>键为知文 ID；值为不含用户维度状态的详情，计数随计数事件原地调整。</p>
+     */
+    @Bean("knowPostDetailCache")
+    public Cache<Long, KnowPostDetailResponse> knowPostDetailCache(CacheProperties props) {
+        return Caffeine.newBuilder()
+                .maximumSize(props.getL2().getDetailCfg().getMaxSize())
+                .expireAfterWrite(Duration.ofSeconds(props.getL2().getDetailCfg().getTtlSeconds()))
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Redis 订阅容器：承载本地缓存跨实例失效广播（pub/sub）。
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        return container;
+    }
 }
@@ -19,6 +19,9 @@ public class CacheProperties {
     // 热点 Key 识别与扩展策略配置。
     private Hotkey hotkey = new Hotkey();
 
+    // 软/硬 TTL（stale-while-revalidate）配置。
+    private Swr swr = new Swr();
+
     @Data
     public static class L2 {
         // 公共信息流缓存配置。
@@ -26,6 +29,9 @@ public class CacheProperties {
 
         // 个人信息流缓存配置。
         private MineCfg mineCfg = new MineCfg();
+
+        // 知文详情缓存配置（仅收录热点详情）。
+        private DetailCfg detailCfg = new DetailCfg();
     }
 
     @Data
@@ -33,6 +39,9 @@ public class CacheProperties {
         // TTL（秒）：写入后在本地缓存中保留的时长。
         private int ttlSeconds = 15;
 
+        // 软 TTL（秒）：条目写入超过该时长后命中时触发后台预刷新，应小于 ttlSeconds。
+        private int softTtlSeconds = 10;
+
         // 最大条目数：超过后按 Caffeine 策略逐出。
         private long maxSize = 1000;
     }
@@ -71,5 +80,47 @@ public class CacheProperties {
 
         // 高热度额外延长 TTL（秒）。
         private int extendHighSeconds = 120;
+
+        // Count-Min Sketch 每行计数器个数（向上取 2 的幂），越大碰撞越少。
+        private int sketchWidth = 4096;
+
+        // Count-Min Sketch 行数（由 128 位哈希双重派生的行哈希个数）。
+        private int sketchDepth = 4;
+
+        // Top-K 候选容量：本地热度达到上报阈值的 key 进入候选，参与 TTL 续期与集群汇总。
+        private int topK = 1024;
+
+        // 上报阈值：本地窗口热度达到该值（且不超过 levelLow）即进入候选并上报集群汇总。
+        private int reportMinHeat = 10;
+
+        // 是否启用集群热点汇总（各实例上报本地 Top-K，合并为全局热度）。
+        private boolean clusterEnabled = true;
+    }
+
+    @Data
+    public static class DetailCfg {
+        // TTL（秒）：写入后在本地缓存中保留的时长；内容变更经失效总线即时清除，计数经总线增量调整。
+        private int ttlSeconds = 30;
+
+        // 最大条目数：超过后按 Caffeine 策略逐出。
+        private long maxSize = 500;
+    }
+
+    @Data
+    public static class Swr {
+        // 公共页面软 TTL（秒）：超过后仍返回旧值并触发后台刷新（实际值附加随机抖动）。
+        private int pageSoftSeconds = 10;
+
+        // 公共页面硬 TTL（秒）：超过后缓存值真正过期，需同步回源。
+        private int pageHardSeconds = 300;
+
+        // 详情软 TTL（秒）。
+        private int detailSoftSeconds = 60;
+
+        // 详情硬 TTL（秒）。
+        private int detailHardSeconds = 600;
+
+        // 刷新权持有时长（秒）：抢到刷新权的实例未能按时刷新时，到期后允许其他请求再次触发。
+        private int refreshLockSeconds = 10;
     }
 }
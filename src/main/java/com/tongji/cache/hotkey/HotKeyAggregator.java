@@ -0,0 +1,140 @@
+package com.tongji.cache.hotkey;
+
+import com.tongji.cache.config.CacheProperties;
+import com.tongji.cache.refresh.BackgroundRefresher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 集群热点汇总：各实例按统计分段上报本地 Top-K 候选的窗口热度，合并出全局热度并回灌到 {@link HotKeyDetector}。
+ * <p>
+ * 设计说明：
+ * - 时间按分段长度切成桶，各实例在桶 b 内对 {@code hotkey:global:{b}} 执行 ZINCRBY（每实例每桶上报一次），
+ *   桶内分数即全集群的窗口热度之和；读取上一个已完整上报的桶 b-1，取达到低热度阈值的前 topK 个；
+ * - 桶 Key 只保留三个分段，无需实例注册表；实例下线后其贡献随桶自然消失；
+ * - 新晋全局 HIGH 的 key 通过注册的预热器在后台载入本实例 L1；
+ * - Redis 不可用时保留上一视图，超过三个分段未成功汇总则清空，退回纯本地判定。
+ */
+@Component
+public class HotKeyAggregator {
+    private static final Logger log = LoggerFactory.getLogger(HotKeyAggregator.class);
+
+    private static final String KEY_PREFIX = "hotkey:global:";
+    private static final int STALE_BUCKETS = 3;
+
+    private final HotKeyDetector detector;
+    private final StringRedisTemplate redis;
+    private final CacheProperties props;
+    private final BackgroundRefresher refresher;
+    private long lastReportedBucket = -1;
+    private long lastMergedAtMs;
+    private final LongAdder reports = new LongAdder();
+    private final LongAdder warmed = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    public HotKeyAggregator(HotKeyDetector detector, StringRedisTemplate redis,
+                            CacheProperties props, BackgroundRefresher refresher) {
+        this.detector = detector;
+        this.redis = redis;
+        this.props = props;
+        this.refresher = refresher;
+    }
+
+    /**
+     * 每个统计分段上报一次本地候选并合并全局视图（频率同 `cache.hotkey.segment-seconds`）。
+     */
+    @Scheduled(fixedRateString = "${cache.hotkey.segment-seconds:10}000")
+    public synchronized void tick() {
+        if (!props.getHotkey().isClusterEnabled()) {
+            return;
+        }
+        long periodMs = Math.max(1, props.getHotkey().getSegmentSeconds()) * 1000L;
+        long now = System.currentTimeMillis();
+        long bucket = now / periodMs;
+        try {
+            if (bucket != lastReportedBucket) {
+                report(bucket, periodMs);
+                lastReportedBucket = bucket;
+            }
+            Map<String, Integer> merged = readBucket(bucket - 1);
+            lastMergedAtMs = now;
+            List<String> promoted = detector.applyGlobalHeat(merged);
+            for (String key : promoted) {
+                warm(key);
+            }
+        } catch (Exception e) {
+            failures.increment();
+            log.warn("hotkey aggregate failed bucket={} err={}", bucket, e.getMessage());
+            if (now - lastMergedAtMs > STALE_BUCKETS * periodMs) {
+                detector.applyGlobalHeat(Collections.emptyMap());
+            }
+        }
+    }
+
+    private void report(long bucket, long periodMs) {
+        Map<String, Integer> local = detector.localTopK();
+        if (local.isEmpty()) {
+            return;
+        }
+        byte[] zkey = (KEY_PREFIX + bucket).getBytes(StandardCharsets.UTF_8);
+        long ttlSeconds = STALE_BUCKETS * periodMs / 1000;
+        redis.executePipelined((RedisCallback<Object>) c -> {
+            for (Map.Entry<String, Integer> e : local.entrySet()) {
+                c.zSetCommands().zIncrBy(zkey, e.getValue(), e.getKey().getBytes(StandardCharsets.UTF_8));
+            }
+            c.keyCommands().expire(zkey, ttlSeconds);
+            return null;
+        });
+        reports.increment();
+    }
+
+    private Map<String, Integer> readBucket(long bucket) {
+        Set<ZSetOperations.TypedTuple<String>> top = redis.opsForZSet().reverseRangeByScoreWithScores(
+                KEY_PREFIX + bucket, props.getHotkey().getLevelLow(), Double.MAX_VALUE, 0, props.getHotkey().getTopK());
+        if (top == null || top.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, Integer> merged = new HashMap<>(top.size() * 2);
+        for (ZSetOperations.TypedTuple<String> t : top) {
+            if (t.getValue() != null && t.getScore() != null) {
+                merged.put(t.getValue(), (int) Math.min(Integer.MAX_VALUE, t.getScore().longValue()));
+            }
+        }
+        return merged;
+    }
+
+    private void warm(String key) {
+        Consumer<String> warmer = detector.warmerFor(key);
+        if (warmer == null) {
+            return;
+        }
+        warmed.increment();
+        refresher.refreshAhead("hot:" + key, () -> warmer.accept(key));
+    }
+
+    public long reportCount() {
+        return reports.sum();
+    }
+
+    public long warmedCount() {
+        return warmed.sum();
+    }
+
+    public long failureCount() {
+        return failures.sum();
+    }
+}
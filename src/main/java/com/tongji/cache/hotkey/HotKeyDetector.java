@@ -4,48 +4,86 @@ import com.tongji.cache.config.CacheProperties;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import java.util.Arrays;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
 
 /**
- * 热键探测器（滑动时间窗口计数 + 热度分级 + TTL 动态扩展）。
+ * 热键探测器（分段滑窗 Count-Min Sketch + Top-K 候选 + 热度分级 + TTL 动态扩展）。
  * <p>
  * 设计说明：
  * - 采用固定分段滑动窗口：窗口长度 windowSeconds，分段长度 segmentSeconds，段数 segments=window/segment；
- * - 每个 key 维护长度为 segments 的数组 counters[key]，current 指向当前活跃段；
- * - 周期性 rotate 将 current 前移并清零新段，实现近窗口热度的自然衰减；
- * - 根据总热度 h=Σ段计数，映射到 NONE/LOW/MEDIUM/HIGH 的热度等级；
- * - 提供 ttlForPublic/ttlForMine：在基准 TTL 上叠加等级扩展秒数，保护热点请求。
+ * - 每个分段是一张 depth×width 的 Count-Min Sketch，内存固定，与访问过的 key 数量无关；
+ *   行下标由 key 的 UTF-8 字节经 MurmurHash3 x64_128 得到 (h1, h2)，第 r 行取 h1 + r*h2（双重哈希），
+ *   不依赖 32 位 String.hashCode，hashCode 相同的 key 不会在所有行同时碰撞；
+ * - 热度估计：每行取各分段计数之和，再取各行最小值（只会高估，不会低估）；
+ * - 周期性 rotate 将 current 前移并以新的空表替换新段，耗时与 key 数、表大小无关；
+ * - 集群视图：候选及其本地热度由 {@link HotKeyAggregator} 定期上报并汇总为全局热度，回灌到本实例；
+ *   评级使用 max(本地热度, 全局热度)，阈值对应整个集群的真实访问量；
+ * - 根据热度 h 映射到 NONE/LOW/MEDIUM/HIGH 的热度等级；
+ * - 提供 ttlForPublic/ttlForMine：在基准 TTL 上叠加等级扩展秒数，保护热点请求；
+ * - 本地热度达到上报阈值（min(reportMinHeat, levelLow)）的 key 进入容量为 topK 的候选集（满时淘汰热度最低者），仅候选参与 TTL 续期：
+ *   请求只登记 key 与基准 TTL（纯内存），由 {@link HotKeyTtlExtender} 定时调用
+ *   {@link #collectTtlExtensions(long)} 取出等级变化或续期到期的 key，批量管道 EXPIRE。
  * <p>
  * 并发语义：
- * - 使用 ConcurrentHashMap 存储计数数组，AtomicInteger 维护段游标；
- * - 计数递增为无锁数组操作，rotate 仅清零新段，避免大范围写冲突；
- * - 统计为近似滑窗，保证在高并发下的稳定与低开销。
+ * - 计数器为 AtomicIntegerArray，递增无锁，不同 key 按哈希分散到不同计数器；
+ * - 段表通过 AtomicReferenceArray 整体替换，轮转期间落入旧表的少量计数随旧表丢弃（近似滑窗可接受）；
+ * - 候选集满时的替换在锁内进行，且仅当新 key 热度高于上轮扫描得到的候选最低热度时才进入锁。
  */
 @Component
 public class HotKeyDetector {
     public enum Level { NONE, LOW, MEDIUM, HIGH }
 
-    /** 缓存配置（包含窗口/分段参数、等级阈值、扩展秒数） */
+    /** 缓存配置（包含窗口/分段参数、等级阈值、扩展秒数、Sketch 尺寸） */
     private final CacheProperties properties;
-    /** 每个 key 的滑窗分段计数数组，长度为 segments */
-    private final Map<String, int[]> counters = new ConcurrentHashMap<>();
+    /** 各分段的 Sketch：每段 depth*width 个计数器，第 r 行位于 [r*width, (r+1)*width) */
+    private final AtomicReferenceArray<AtomicIntegerArray> sketches;
     /** 当前活跃分段索引（原子维护） */
     private final AtomicInteger current = new AtomicInteger(0);
     /** 滑窗分段数量：windowSeconds / segmentSeconds */
     private final int segments;
+    private final int depth;
+    private final int width;
+    private final int mask;
+    private final int topK;
+    /** Top-K 候选：基准 TTL 与最近一次续期的等级/时间 */
+    private final Map<String, Tracked> tracked = new ConcurrentHashMap<>();
+    private final Object admitLock = new Object();
+    /** 上轮扫描时候选集中的最低热度，候选集满时新 key 须超过该值才尝试替换 */
+    private volatile int admitFloor;
+    /** 最近一次汇总得到的全局热度（仅含达到低热度阈值的 key），整体替换 */
+    private volatile Map<String, Integer> globalHeat = Collections.emptyMap();
+    /** 全局升为 HIGH 时的本地缓存预热器：Key 前缀 -> 预热动作 */
+    private final Map<String, Consumer<String>> warmers = new ConcurrentHashMap<>();
 
     /**
-     * 初始化探测器：根据配置计算分段数量。
+     * 初始化探测器：根据配置计算分段数量与 Sketch 尺寸。
      * @param properties 缓存配置（hotkey）
      */
     public HotKeyDetector(CacheProperties properties) {
         this.properties = properties;
-        int segSeconds = properties.getHotkey().getSegmentSeconds();
-        int winSeconds = properties.getHotkey().getWindowSeconds();
+        CacheProperties.Hotkey cfg = properties.getHotkey();
+        int segSeconds = cfg.getSegmentSeconds();
+        int winSeconds = cfg.getWindowSeconds();
         this.segments = Math.max(1, winSeconds / Math.max(1, segSeconds));
+        this.depth = Math.min(Math.max(1, cfg.getSketchDepth()), 8);
+        this.width = Integer.highestOneBit(Math.max(64, Math.min(cfg.getSketchWidth(), 1 << 20)) * 2 - 1);
+        this.mask = width - 1;
+        this.topK = Math.max(1, cfg.getTopK());
+        this.sketches = new AtomicReferenceArray<>(segments);
+        for (int i = 0; i < segments; i++) {
+            sketches.set(i, new AtomicIntegerArray(depth * width));
+        }
     }
 
     /**
@@ -53,36 +91,226 @@ public class HotKeyDetector {
      * @param key 缓存键
      */
     public void record(String key) {
-        int[] arr = counters.computeIfAbsent(key, k -> new int[segments]);
-        arr[current.get()]++;
+        AtomicIntegerArray sketch = sketches.get(current.get());
+        long[] h = hash(key);
+        for (int r = 0; r < depth; r++) {
+            sketch.incrementAndGet(r * width + index(h, r));
+        }
     }
 
     /**
-     * 计算近窗口总热度（各分段求和）。
+     * 记录一次访问，并登记该 key 的基准 TTL，供后台按热度等级续期（不访问 Redis）。
+     * 本地热度未达到上报阈值的 key 不进入候选。
      * @param key 缓存键
-     * @return 热度值
+     * @param baseTtlSeconds 基准 TTL 秒数
      */
-    public int heat(String key) {
-        int[] arr = counters.get(key);
-        if (arr == null) {
-            return 0;
+    public void record(String key, int baseTtlSeconds) {
+        record(key);
+        Tracked t = tracked.get(key);
+        if (t != null) {
+            if (t.baseTtlSeconds != baseTtlSeconds) {
+                tracked.replace(key, t, new Tracked(baseTtlSeconds, t.heat));
+            }
+            return;
+        }
+        int h = heat(key);
+        if (h < candidateFloor()) {
+            return;
+        }
+        if (tracked.size() >= topK && h <= admitFloor) {
+            return;
+        }
+        // 容量检查与写入在同一把锁内完成，并发登记不会使候选集超过 topK
+        synchronized (admitLock) {
+            if (tracked.containsKey(key)) {
+                return;
+            }
+            if (tracked.size() < topK) {
+                tracked.put(key, new Tracked(baseTtlSeconds, h));
+                return;
+            }
+            if (h <= admitFloor) {
+                return;
+            }
+            String victim = null;
+            int victimHeat = Integer.MAX_VALUE;
+            for (Map.Entry<String, Tracked> e : tracked.entrySet()) {
+                if (e.getValue().heat < victimHeat) {
+                    victim = e.getKey();
+                    victimHeat = e.getValue().heat;
+                }
+            }
+            if (victim != null && h > victimHeat) {
+                tracked.remove(victim);
+                tracked.put(key, new Tracked(baseTtlSeconds, h));
+            }
+        }
+    }
+
+    /**
+     * 取出本轮需要续期的 key 与目标 TTL：等级相对上次续期发生变化，或仍为热点且距上次续期已过目标 TTL 的一半。
+     * 等级按本地与全局热度的较大者计算；本地冷却到上报阈值以下且全局也不热的 key 移出候选。由单个后台线程调用。
+     * @param nowMs 当前时间（毫秒）
+     * @return key -> 目标 TTL 秒数
+     */
+    public Map<String, Integer> collectTtlExtensions(long nowMs) {
+        Map<String, Integer> out = new LinkedHashMap<>();
+        int floor = Integer.MAX_VALUE;
+        for (Map.Entry<String, Tracked> e : tracked.entrySet()) {
+            String key = e.getKey();
+            Tracked t = e.getValue();
+            int h = heat(key);
+            Level l = levelOf(Math.max(h, globalHeat(key)));
+            if (h < candidateFloor() && l == Level.NONE) {
+                tracked.remove(key, t);
+                continue;
+            }
+            t.heat = h;
+            floor = Math.min(floor, h);
+            if (l == Level.NONE) {
+                t.appliedLevel = Level.NONE;
+                continue;
+            }
+            int target = t.baseTtlSeconds + extendSeconds(l);
+            if (l != t.appliedLevel || nowMs - t.appliedAtMs >= target * 500L) {
+                out.put(key, target);
+                t.appliedLevel = l;
+                t.appliedAtMs = nowMs;
+            }
+        }
+        admitFloor = floor == Integer.MAX_VALUE ? 0 : floor;
+        return out;
+    }
+
+    /**
+     * 本地候选快照（供集群汇总上报）：key -> 当前本地热度，仅含热度大于 0 的 key。
+     */
+    public Map<String, Integer> localTopK() {
+        Map<String, Integer> out = new HashMap<>();
+        for (String key : tracked.keySet()) {
+            int h = heat(key);
+            if (h > 0) {
+                out.put(key, h);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * 替换全局热度视图，返回本次新晋为 HIGH 的 key（上次视图中不是 HIGH）。
+     * @param merged 汇总后的全局热度
+     * @return 新晋全局热点
+     */
+    public List<String> applyGlobalHeat(Map<String, Integer> merged) {
+        int high = properties.getHotkey().getLevelHigh();
+        Map<String, Integer> prev = globalHeat;
+        List<String> promoted = new ArrayList<>();
+        merged.forEach((k, v) -> {
+            if (v >= high && prev.getOrDefault(k, 0) < high) {
+                promoted.add(k);
+            }
+        });
+        globalHeat = Map.copyOf(merged);
+        return promoted;
+    }
+
+    /**
+     * 全局热度（最近一次汇总值；不在视图中返回 0）。
+     */
+    public int globalHeat(String key) {
+        return globalHeat.getOrDefault(key, 0);
+    }
+
+    /**
+     * 注册全局热点的本地缓存预热器：Key 以 prefix 开头的 key 升为全局 HIGH 时调用，将其载入本实例 L1。
+     * @param prefix Key 前缀
+     * @param warmer 预热动作（参数为缓存 Key）
+     */
+    public void onGlobalHot(String prefix, Consumer<String> warmer) {
+        warmers.put(prefix, warmer);
+    }
+
+    /**
+     * 查找 key 对应的预热器。
+     * @return 预热器；无匹配前缀返回 null
+     */
+    Consumer<String> warmerFor(String key) {
+        for (Map.Entry<String, Consumer<String>> e : warmers.entrySet()) {
+            if (key.startsWith(e.getKey())) {
+                return e.getValue();
+            }
         }
+        return null;
+    }
 
-        int sum = 0;
-        for (int v : arr) {
-            sum += v;
+    /**
+     * 当前最热的 key（本地候选与全局视图的并集），按 max(本地, 全局) 热度降序，供监控端点展示。
+     * @param limit 返回数量上限
+     * @return 热点列表
+     */
+    public List<HotKey> topHot(int limit) {
+        Map<String, HotKey> all = new HashMap<>();
+        for (String key : tracked.keySet()) {
+            all.put(key, view(key));
+        }
+        for (String key : globalHeat.keySet()) {
+            all.computeIfAbsent(key, this::view);
         }
-        return sum;
+        List<HotKey> out = new ArrayList<>(all.values());
+        out.sort((a, b) -> Integer.compare(Math.max(b.localHeat(), b.globalHeat()), Math.max(a.localHeat(), a.globalHeat())));
+        return out.size() > limit ? new ArrayList<>(out.subList(0, limit)) : out;
+    }
+
+    private HotKey view(String key) {
+        int local = heat(key);
+        int global = globalHeat(key);
+        return new HotKey(key, levelOf(Math.max(local, global)), local, global);
     }
 
     /**
-     * 计算热度评级：根据总热度与阈值映射到等级。
+     * 当前 Top-K 候选（参与续期）的 key 数量。
+     */
+    public int trackedCount() {
+        return tracked.size();
+    }
+
+    /**
+     * 估计近窗口总热度：每行对各分段求和后取各行最小值。
+     * @param key 缓存键
+     * @return 热度值（可能因哈希碰撞略有高估）
+     */
+    public int heat(String key) {
+        long[] h = hash(key);
+        int min = Integer.MAX_VALUE;
+        for (int r = 0; r < depth; r++) {
+            int idx = r * width + index(h, r);
+            int sum = 0;
+            for (int s = 0; s < segments; s++) {
+                sum += sketches.get(s).get(idx);
+            }
+            min = Math.min(min, sum);
+        }
+        return min;
+    }
+
+    /**
+     * 计算热度评级：根据本地与全局热度的较大者与阈值映射到等级。
      * 阈值来源：properties.hotkey.levelLow/Medium/High。
      * @param key 缓存键
      * @return 热度等级
      */
     public Level level(String key) {
-        int h = heat(key);
+        return levelOf(Math.max(heat(key), globalHeat(key)));
+    }
+
+    /**
+     * 进入候选的本地热度下限：集群模式下单实例只承担部分流量，低于 levelLow 也需上报参与汇总。
+     */
+    private int candidateFloor() {
+        return Math.max(1, Math.min(properties.getHotkey().getReportMinHeat(), properties.getHotkey().getLevelLow()));
+    }
+
+    private Level levelOf(int h) {
         if (h >= properties.getHotkey().getLevelHigh()) {
             return Level.HIGH;
         }
@@ -133,26 +361,129 @@ public class HotKeyDetector {
     }
 
     /**
-     * 定时轮转当前分段，清零新分段以实现滑动窗口统计。
+     * 定时轮转当前分段：以新的空表替换即将启用的分段，再切换游标，实现滑动窗口统计。
      * 触发频率由配置 `cache.hotkey.segment-seconds` 指定（单位秒）。
      */
     @Scheduled(fixedRateString = "${cache.hotkey.segment-seconds:10}000")
     public void rotate() {
         int next = (current.get() + 1) % segments;
+        sketches.set(next, new AtomicIntegerArray(depth * width));
         current.set(next);
-        for (int[] arr : counters.values()) {
-            arr[next] = 0;
-        }
     }
 
     /**
-     * 重置指定 key 的滑窗计数（全部清零）。
-     * 用于手动降级或在配置变更后清理历史热度。
+     * 重置指定 key 的滑窗计数并移出候选。
+     * 用于手动降级或在配置变更后清理历史热度；Sketch 无法精确删除单个 key，
+     * 按各分段的估计值扣减其计数器（不低于 0），共享计数器的其他 key 可能随之略微降温。
      * @param key 缓存键
      */
     public void reset(String key) {
-        int[] arr = counters.get(key);
-        if (arr != null) Arrays.fill(arr, 0);
+        tracked.remove(key);
+        long[] h = hash(key);
+        for (int s = 0; s < segments; s++) {
+            AtomicIntegerArray sketch = sketches.get(s);
+            int est = Integer.MAX_VALUE;
+            for (int r = 0; r < depth; r++) {
+                est = Math.min(est, sketch.get(r * width + index(h, r)));
+            }
+            if (est <= 0) {
+                continue;
+            }
+            int dec = est;
+            for (int r = 0; r < depth; r++) {
+                sketch.getAndUpdate(r * width + index(h, r), v -> Math.max(0, v - dec));
+            }
+        }
+    }
+
+    /**
+     * 第 r 行的列下标：双重哈希 h1 + r*h2，高低 32 位折叠后取低位。
+     */
+    private int index(long[] h, int r) {
+        long x = h[0] + r * h[1];
+        return (int) (x ^ (x >>> 32)) & mask;
     }
-}
 
+    /**
+     * key 的 128 位哈希（MurmurHash3 x64_128，种子 0，按 UTF-8 字节计算）。
+     * @return {h1, h2}
+     */
+    static long[] hash(String key) {
+        byte[] data = key.getBytes(StandardCharsets.UTF_8);
+        final long c1 = 0x87c37b91114253d5L;
+        final long c2 = 0x4cf5ad432745937fL;
+        int len = data.length;
+        int blocks = len / 16;
+        long h1 = 0;
+        long h2 = 0;
+        for (int i = 0; i < blocks; i++) {
+            long k1 = getLongLE(data, i * 16);
+            long k2 = getLongLE(data, i * 16 + 8);
+            k1 *= c1; k1 = Long.rotateLeft(k1, 31); k1 *= c2; h1 ^= k1;
+            h1 = Long.rotateLeft(h1, 27); h1 += h2; h1 = h1 * 5 + 0x52dce729;
+            k2 *= c2; k2 = Long.rotateLeft(k2, 33); k2 *= c1; h2 ^= k2;
+            h2 = Long.rotateLeft(h2, 31); h2 += h1; h2 = h2 * 5 + 0x38495ab5;
+        }
+        int off = blocks * 16;
+        long k1 = 0;
+        long k2 = 0;
+        // 尾部不足 16 字节：第 9~15 字节按小端拼入 k2，第 1~8 字节拼入 k1
+        int rem = len & 15;
+        for (int i = rem - 1; i >= 8; i--) {
+            k2 ^= (long) (data[off + i] & 0xff) << ((i - 8) * 8);
+        }
+        if (rem > 8) {
+            k2 *= c2; k2 = Long.rotateLeft(k2, 33); k2 *= c1; h2 ^= k2;
+        }
+        for (int i = Math.min(rem, 8) - 1; i >= 0; i--) {
+            k1 ^= (long) (data[off + i] & 0xff) << (i * 8);
+        }
+        if (rem > 0) {
+            k1 *= c1; k1 = Long.rotateLeft(k1, 31); k1 *= c2; h1 ^= k1;
+        }
+        h1 ^= len;
+        h2 ^= len;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        h1 += h2;
+        h2 += h1;
+        return new long[]{h1, h2};
+    }
+
+    private static long getLongLE(byte[] b, int off) {
+        long v = 0;
+        for (int i = 7; i >= 0; i--) {
+            v = (v << 8) | (b[off + i] & 0xffL);
+        }
+        return v;
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    /**
+     * 热点视图：key、等级、本地窗口热度与全局热度。
+     */
+    public record HotKey(String key, Level level, int localHeat, int globalHeat) {}
+
+    private static final class Tracked {
+        final int baseTtlSeconds;
+        /** 最近一次扫描（或进入候选时）的热度估计 */
+        volatile int heat;
+        volatile Level appliedLevel = Level.NONE;
+        volatile long appliedAtMs;
+
+        Tracked(int baseTtlSeconds, int heat) {
+            this.baseTtlSeconds = baseTtlSeconds;
+            this.heat = heat;
+        }
+    }
+}
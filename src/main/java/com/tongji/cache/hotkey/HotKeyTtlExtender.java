@@ -0,0 +1,132 @@
+package com.tongji.cache.hotkey;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 热点 Key TTL 后台续期：定时从 {@link HotKeyDetector} 取出等级变化/续期到期的 key，按批管道执行条件 EXPIRE。
+ * <p>
+ * 条件续期由 Lua 完成：仅当 key 已有过期时间且剩余 TTL 小于目标值时才 EXPIRE，不会缩短更长的硬 TTL，
+ * 也不会给永久 key 加上过期时间；key 不存在时不做任何事。脚本只在首次或 Redis 丢失脚本缓存时加载，批量以 EVALSHA 管道执行。
+ * 请求路径只做内存计数，本地缓存命中不再产生任何 Redis 往返。
+ */
+@Component
+public class HotKeyTtlExtender {
+    private static final Logger log = LoggerFactory.getLogger(HotKeyTtlExtender.class);
+
+    private static final int BATCH = 200;
+    // TTL 为 -1（永久）或 -2（不存在）时不续期
+    private static final String EXTEND_LUA = """
+            local t = redis.call('TTL', KEYS[1])
+            if t > 0 and t < tonumber(ARGV[1]) then
+              return redis.call('EXPIRE', KEYS[1], ARGV[1])
+            end
+            return 0
+            """;
+
+    private final HotKeyDetector detector;
+    private final StringRedisTemplate redis;
+    private final DefaultRedisScript<Long> extendScript = new DefaultRedisScript<>(EXTEND_LUA, Long.class);
+    /** 脚本是否已加载到 Redis 脚本缓存 */
+    private volatile boolean scriptLoaded;
+    private final LongAdder sweeps = new LongAdder();
+    private final LongAdder extended = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    public HotKeyTtlExtender(HotKeyDetector detector, StringRedisTemplate redis) {
+        this.detector = detector;
+        this.redis = redis;
+    }
+
+    /**
+     * 每个统计分段执行一次续期扫描（频率同 `cache.hotkey.segment-seconds`）。
+     */
+    @Scheduled(fixedDelayString = "${cache.hotkey.segment-seconds:10}000")
+    public void sweep() {
+        sweeps.increment();
+        Map<String, Integer> targets = detector.collectTtlExtensions(System.currentTimeMillis());
+        if (targets.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(targets.entrySet());
+        for (int from = 0; from < entries.size(); from += BATCH) {
+            List<Map.Entry<String, Integer>> batch = entries.subList(from, Math.min(from + BATCH, entries.size()));
+            try {
+                if (!scriptLoaded) {
+                    loadScript();
+                }
+                List<Object> results;
+                try {
+                    results = extendBatch(batch);
+                } catch (Exception e) {
+                    if (!isNoScript(e)) {
+                        throw e;
+                    }
+                    // Redis 重启或执行过 SCRIPT FLUSH：重新加载后重试本批
+                    loadScript();
+                    results = extendBatch(batch);
+                }
+                for (Object r : results) {
+                    if (r instanceof Long n && n > 0) {
+                        extended.increment();
+                    }
+                }
+            } catch (Exception e) {
+                failed.increment();
+                log.warn("hotkey ttl extend failed batch={} err={}", batch.size(), e.getMessage());
+            }
+        }
+        log.debug("hotkey ttl sweep candidates={} tracked={}", targets.size(), detector.trackedCount());
+    }
+
+    private void loadScript() {
+        redis.execute((RedisCallback<String>) c ->
+                c.scriptingCommands().scriptLoad(EXTEND_LUA.getBytes(StandardCharsets.UTF_8)));
+        scriptLoaded = true;
+    }
+
+    private List<Object> extendBatch(List<Map.Entry<String, Integer>> batch) {
+        String sha = extendScript.getSha1();
+        return redis.executePipelined((RedisCallback<Object>) c -> {
+            for (Map.Entry<String, Integer> e : batch) {
+                c.scriptingCommands().evalSha(sha, ReturnType.INTEGER, 1,
+                        e.getKey().getBytes(StandardCharsets.UTF_8),
+                        String.valueOf(e.getValue()).getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+    }
+
+    private static boolean isNoScript(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t.getMessage() != null && t.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long sweepCount() {
+        return sweeps.sum();
+    }
+
+    public long extendedCount() {
+        return extended.sum();
+    }
+
+    public long failedCount() {
+        return failed.sum();
+    }
+}
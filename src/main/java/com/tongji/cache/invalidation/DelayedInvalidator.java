@@ -0,0 +1,171 @@
+package com.tongji.cache.invalidation;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 延迟失效调度器：缓存“延时双删”的第二次删除在后台按到期时间执行，写请求无需在线程内 sleep。
+ * <p>
+ * 设计说明：
+ * - 基于 {@link DelayQueue}，单个后台线程按到期顺序取出任务并执行（任务均为轻量的 Redis 删除/代际递增）；
+ * - 按 key 合并：同一 key 已有待执行任务时只保留最晚的到期时间，连续写入只在最后一次写入后删除一次；
+ *   被推迟的旧队列条目出队时发现已过期（到期时间小于登记值）直接丢弃；
+ * - 关闭时立即执行所有未到期任务，避免重启丢失第二次删除；
+ * - 统计调度、合并、执行、失败次数与执行滞后（实际执行时间 - 到期时间）。
+ */
+@Component
+public class DelayedInvalidator {
+    private static final Logger log = LoggerFactory.getLogger(DelayedInvalidator.class);
+
+    private final DelayQueue<Task> queue = new DelayQueue<>();
+    /** key -> 当前登记的到期时间（毫秒）与动作 */
+    private final ConcurrentHashMap<String, Pending> pending = new ConcurrentHashMap<>();
+    private final LongAdder scheduled = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final AtomicLong lastLagMs = new AtomicLong();
+    private final AtomicLong maxLagMs = new AtomicLong();
+    private volatile Thread worker;
+
+    @PostConstruct
+    public void start() {
+        Thread t = new Thread(this::loop, "DelayedInvalidator");
+        t.setDaemon(true);
+        worker = t;
+        t.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        Thread t = worker;
+        worker = null;
+        if (t != null) {
+            t.interrupt();
+        }
+        // 关闭前执行全部未到期任务
+        List<String> keys = new ArrayList<>(pending.keySet());
+        for (String key : keys) {
+            Pending p = pending.remove(key);
+            if (p != null) {
+                run(key, p, System.currentTimeMillis());
+            }
+        }
+        queue.clear();
+    }
+
+    /**
+     * 登记一次延迟失效。
+     * @param key 合并 Key（通常为被失效的缓存 Key 或代际 Key）
+     * @param delayMillis 延迟（毫秒）
+     * @param action 失效动作
+     */
+    public void schedule(String key, long delayMillis, Runnable action) {
+        long due = System.currentTimeMillis() + Math.max(0, delayMillis);
+        boolean[] enqueue = {false};
+        pending.compute(key, (k, cur) -> {
+            if (cur != null) {
+                coalesced.increment();
+                if (cur.due() >= due) {
+                    return cur;
+                }
+            }
+            enqueue[0] = true;
+            return new Pending(due, action);
+        });
+        scheduled.increment();
+        if (enqueue[0]) {
+            queue.put(new Task(key, due));
+        }
+    }
+
+    private void loop() {
+        while (worker == Thread.currentThread()) {
+            Task task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            // 仅当出队条目仍是该 key 的最新登记时执行，被推迟的旧条目直接丢弃
+            Pending[] taken = {null};
+            pending.computeIfPresent(task.key(), (k, cur) -> {
+                if (cur.due() == task.due()) {
+                    taken[0] = cur;
+                    return null;
+                }
+                return cur;
+            });
+            if (taken[0] != null) {
+                run(task.key(), taken[0], System.currentTimeMillis());
+            }
+        }
+    }
+
+    private void run(String key, Pending p, long now) {
+        long lag = Math.max(0, now - p.due());
+        lastLagMs.set(lag);
+        maxLagMs.accumulateAndGet(lag, Math::max);
+        try {
+            p.action().run();
+            executed.increment();
+        } catch (Exception e) {
+            failed.increment();
+            log.warn("delayed invalidation failed key={} err={}", key, e.getMessage());
+        }
+    }
+
+    public long scheduledCount() {
+        return scheduled.sum();
+    }
+
+    public long coalescedCount() {
+        return coalesced.sum();
+    }
+
+    public long executedCount() {
+        return executed.sum();
+    }
+
+    public long failedCount() {
+        return failed.sum();
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    public long lastLagMillis() {
+        return lastLagMs.get();
+    }
+
+    public long maxLagMillis() {
+        return maxLagMs.get();
+    }
+
+    private record Pending(long due, Runnable action) {}
+
+    private record Task(String key, long due) implements Delayed {
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(due - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            return Long.compare(due, ((Task) o).due);
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package com.tongji.cache.invalidation;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * 本地缓存（L1）跨实例失效总线：基于 Redis pub/sub 广播 Key/命名空间失效与计数增量。
+ * <p>
+ * 设计说明：
+ * - 发布方先在本实例内立即生效，再把操作放入待发送缓冲区；缓冲区按 50ms 定时或满批时合并为一条消息广播；
+ * - 缓冲区内按操作去重：同一 Key/前缀/整表失效只发一次，同一条目同一指标的计数增量累加为一条；
+ * - 消息携带发送实例 ID、递增序号与发送时间：接收方忽略自身消息，按序号丢弃重复/乱序消息并统计缺口，按发送时间记录各实例延迟；
+ * - pub/sub 不持久化，丢失的消息由 L1 自身的 TTL 兜底（L1 TTL 均为秒级）。
+ */
+@Component
+public class L1InvalidationBus implements MessageListener {
+    private static final Logger log = LoggerFactory.getLogger(L1InvalidationBus.class);
+
+    public static final String CHANNEL = "cache:l1:inval";
+    /** 公共 Feed 页面缓存（Key 为页面缓存 Key） */
+    public static final String FEED_PUBLIC = "feed.public";
+    /** 我的发布页面缓存（Key 为 feed:mine:{uid}:g{gen}:{size}:{page}） */
+    public static final String FEED_MINE = "feed.mine";
+    /** 知文详情热点缓存（Key 为知文 ID） */
+    public static final String KNOWPOST_DETAIL = "knowpost.detail";
+    /** Feed 缓存代际（Key 为代际 Redis Key） */
+    public static final String FEED_GEN = "feed.gen";
+    /** 大V关注列表 Top 缓存（Key 为用户 ID） */
+    public static final String RELATION_FLWS_TOP = "relation.flwsTop";
+    /** 大V粉丝列表 Top 缓存（Key 为用户 ID） */
+    public static final String RELATION_FANS_TOP = "relation.fansTop";
+    /** 用户关注的大V列表缓存（Key 为用户 ID） */
+    public static final String RELATION_BIGV_FOLLOW = "relation.bigVFollow";
+
+    private static final String OP_KEY = "key";
+    private static final String OP_PREFIX = "prefix";
+    private static final String OP_ALL = "all";
+    private static final String OP_DELTA = "delta";
+    private static final int MAX_BATCH = 500;
+
+    private final StringRedisTemplate redis;
+    private final ObjectMapper objectMapper;
+    private final RedisMessageListenerContainer container;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final AtomicLong seq = new AtomicLong();
+
+    private final Map<String, Registered<?>> caches = new ConcurrentHashMap<>();
+    private final Map<String, DeltaHandler> deltaHandlers = new ConcurrentHashMap<>();
+
+    /** 待广播操作：去重 Key -> 操作（保持首次加入的顺序） */
+    private final ReentrantLock pendingLock = new ReentrantLock();
+    private LinkedHashMap<String, Op> pending = new LinkedHashMap<>();
+    /** 串行化发送，保证同一实例的消息序号按发送顺序到达 */
+    private final ReentrantLock sendLock = new ReentrantLock();
+
+    /** 各来源实例的接收状态 */
+    private final Map<String, PeerState> peers = new ConcurrentHashMap<>();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder mergedOps = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+
+    public L1InvalidationBus(StringRedisTemplate redis,
+                             ObjectMapper objectMapper,
+                             RedisMessageListenerContainer container) {
+        this.redis = redis;
+        this.objectMapper = objectMapper;
+        this.container = container;
+    }
+
+    @PostConstruct
+    void subscribe() {
+        container.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    /**
+     * 计数增量处理器：由缓存持有方实现“在本地页面中定位条目并调整计数”。
+     * targets 为发布方给出的候选缓存 Key（如反向索引中的页面 Key），为 null 表示未限定。
+     */
+    @FunctionalInterface
+    public interface DeltaHandler {
+        void apply(String entityId, String metric, int delta, Collection<String> targets);
+    }
+
+    /**
+     * 注册一个参与广播失效的本地缓存。
+     * @param name 缓存名（各实例一致）
+     * @param cache 本地缓存
+     * @param keyParser 将消息中的字符串 Key 还原为缓存 Key 类型
+     */
+    public <K> void register(String name, Cache<K, ?> cache, Function<String, K> keyParser) {
+        caches.put(name, new Registered<>(cache, keyParser));
+    }
+
+    /**
+     * 注册计数增量处理器。
+     * @param name 缓存名
+     * @param handler 处理器
+     */
+    public void onDelta(String name, DeltaHandler handler) {
+        deltaHandlers.put(name, handler);
+    }
+
+    /**
+     * 失效单个 Key（本实例立即生效并广播）。
+     */
+    public void invalidate(String cache, Object key) {
+        publish(new Op(OP_KEY, cache, String.valueOf(key), null, 0, null));
+    }
+
+    /**
+     * 失效 Key 前缀下的全部条目（本实例立即生效并广播）。
+     */
+    public void invalidatePrefix(String cache, String prefix) {
+        publish(new Op(OP_PREFIX, cache, prefix, null, 0, null));
+    }
+
+    /**
+     * 清空整个缓存（本实例立即生效并广播）。
+     */
+    public void invalidateAll(String cache) {
+        publish(new Op(OP_ALL, cache, null, null, 0, null));
+    }
+
+    /**
+     * 广播计数增量（本实例立即生效并广播），由注册的 {@link DeltaHandler} 调整本地页面中的计数。
+     */
+    public void countDelta(String cache, String entityId, String metric, int delta) {
+        countDelta(cache, entityId, metric, delta, null);
+    }
+
+    /**
+     * 广播计数增量并限定候选缓存 Key：接收方只需调整这些 Key 对应的本地条目，不必遍历整个缓存。
+     * @param targets 候选缓存 Key；为 null 表示未限定
+     */
+    public void countDelta(String cache, String entityId, String metric, int delta, Collection<String> targets) {
+        if (delta == 0) {
+            return;
+        }
+        publish(new Op(OP_DELTA, cache, entityId, metric, delta, targets == null ? null : List.copyOf(targets)));
+    }
+
+    private void publish(Op op) {
+        apply(op);
+        boolean full;
+        pendingLock.lock();
+        try {
+            String dedupKey = op.dedupKey();
+            Op prev = pending.get(dedupKey);
+            if (prev != null) {
+                mergedOps.increment();
+                if (OP_DELTA.equals(op.type())) {
+                    pending.put(dedupKey, new Op(OP_DELTA, op.cache(), op.key(), op.metric(), prev.delta() + op.delta(),
+                            mergeTargets(prev.targets(), op.targets())));
+                }
+            } else {
+                pending.put(dedupKey, op);
+            }
+            full = pending.size() >= MAX_BATCH;
+        } finally {
+            pendingLock.unlock();
+        }
+        if (full) {
+            flush();
+        }
+    }
+
+    /**
+     * 合并两次增量的候选 Key；任一方未限定则合并结果也不限定。
+     */
+    private static List<String> mergeTargets(List<String> a, List<String> b) {
+        if (a == null || b == null) {
+            return null;
+        }
+        Set<String> merged = new LinkedHashSet<>(a);
+        merged.addAll(b);
+        return List.copyOf(merged);
+    }
+
+    /**
+     * 定时广播缓冲区中的操作（固定延迟 50ms）。
+     */
+    @Scheduled(fixedDelay = 50L)
+    public void flush() {
+        sendLock.lock();
+        try {
+            List<Op> ops;
+            pendingLock.lock();
+            try {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                ops = new ArrayList<>(pending.values());
+                pending = new LinkedHashMap<>();
+            } finally {
+                pendingLock.unlock();
+            }
+            for (int from = 0; from < ops.size(); from += MAX_BATCH) {
+                List<Op> batch = ops.subList(from, Math.min(from + MAX_BATCH, ops.size()));
+                Envelope env = new Envelope(nodeId, seq.incrementAndGet(), System.currentTimeMillis(), new ArrayList<>(batch));
+                try {
+                    redis.convertAndSend(CHANNEL, objectMapper.writeValueAsString(env));
+                    published.increment();
+                } catch (Exception e) {
+                    // 广播失败不影响本实例（已生效）；其他实例依赖 L1 TTL 兜底
+                    log.warn("l1 invalidation publish failed ops={} err={}", batch.size(), e.getMessage());
+                }
+            }
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Envelope env;
+        try {
+            env = objectMapper.readValue(message.getBody(), Envelope.class);
+        } catch (Exception e) {
+            log.warn("l1 invalidation message malformed err={}", e.getMessage());
+            return;
+        }
+        if (nodeId.equals(env.node())) {
+            return;
+        }
+        received.increment();
+        PeerState peer = peers.computeIfAbsent(env.node(), k -> new PeerState());
+        if (!peer.accept(env.seq(), System.currentTimeMillis() - env.ts())) {
+            duplicates.increment();
+            return;
+        }
+        for (Op op : env.ops()) {
+            try {
+                apply(op);
+            } catch (Exception e) {
+                log.warn("l1 invalidation apply failed cache={} type={} err={}", op.cache(), op.type(), e.getMessage());
+            }
+        }
+    }
+
+    private void apply(Op op) {
+        if (OP_DELTA.equals(op.type())) {
+            DeltaHandler h = deltaHandlers.get(op.cache());
+            if (h != null) {
+                h.apply(op.key(), op.metric(), op.delta(), op.targets());
+            }
+            return;
+        }
+        Registered<?> r = caches.get(op.cache());
+        if (r == null) {
+            return;
+        }
+        switch (op.type()) {
+            case OP_KEY -> r.invalidate(op.key());
+            case OP_PREFIX -> r.cache().asMap().keySet().removeIf(k -> String.valueOf(k).startsWith(op.key()));
+            case OP_ALL -> r.cache().invalidateAll();
+            default -> log.debug("l1 invalidation unknown op={}", op.type());
+        }
+    }
+
+    public String nodeId() {
+        return nodeId;
+    }
+
+    public long publishedCount() {
+        return published.sum();
+    }
+
+    public long mergedCount() {
+        return mergedOps.sum();
+    }
+
+    public long receivedCount() {
+        return received.sum();
+    }
+
+    public long duplicateCount() {
+        return duplicates.sum();
+    }
+
+    /**
+     * 各来源实例的接收延迟快照。
+     * @return 来源实例 ID -> {lastSeq, lastLagMs, maxLagMs, received, gaps}
+     */
+    public Map<String, Map<String, Long>> lagSnapshot() {
+        Map<String, Map<String, Long>> out = new LinkedHashMap<>();
+        peers.forEach((node, p) -> out.put(node, p.snapshot()));
+        return out;
+    }
+
+    /**
+     * 广播消息：发送实例、递增序号、发送时间（毫秒）与操作列表。
+     */
+    record Envelope(String node, long seq, long ts, List<Op> ops) {}
+
+    /**
+     * 单个失效操作：type 为 key/prefix/all/delta；delta 操作的 key 为实体 ID，targets 为候选缓存 Key（可为 null）。
+     */
+    record Op(String type, String cache, String key, String metric, int delta, List<String> targets) {
+        String dedupKey() {
+            return type + "|" + cache + "|" + (key == null ? "" : key) + "|" + (metric == null ? "" : metric);
+        }
+    }
+
+    private record Registered<K>(Cache<K, ?> cache, Function<String, K> keyParser) {
+        void invalidate(String raw) {
+            cache.invalidate(keyParser.apply(raw));
+        }
+    }
+
+    /**
+     * 单个来源实例的接收状态：序号只增不减，跳号计入缺口（pub/sub 丢失或本实例订阅中断）。
+     */
+    private static final class PeerState {
+        private long lastSeq;
+        private long lastLagMs;
+        private long maxLagMs;
+        private long receivedBatches;
+        private long gaps;
+
+        synchronized boolean accept(long seq, long lagMs) {
+            if (seq <= lastSeq) {
+                return false;
+            }
+            if (lastSeq > 0 && seq > lastSeq + 1) {
+                gaps += seq - lastSeq - 1;
+            }
+            lastSeq = seq;
+            lastLagMs = Math.max(0, lagMs);
+            maxLagMs = Math.max(maxLagMs, lastLagMs);
+            receivedBatches++;
+            return true;
+        }
+
+        synchronized Map<String, Long> snapshot() {
+            Map<String, Long> m = new LinkedHashMap<>();
+            m.put("lastSeq", lastSeq);
+            m.put("lastLagMs", lastLagMs);
+            m.put("maxLagMs", maxLagMs);
+            m.put("received", receivedBatches);
+            m.put("gaps", gaps);
+            return m;
+        }
+    }
+}
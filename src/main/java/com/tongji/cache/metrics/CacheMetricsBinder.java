@@ -0,0 +1,114 @@
+package com.tongji.cache.metrics;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.tongji.cache.hotkey.HotKeyAggregator;
+import com.tongji.cache.hotkey.HotKeyDetector;
+import com.tongji.cache.hotkey.HotKeyTtlExtender;
+import com.tongji.cache.invalidation.DelayedInvalidator;
+import com.tongji.cache.invalidation.L1InvalidationBus;
+import com.tongji.cache.refresh.BackgroundRefresher;
+import com.tongji.cache.singleflight.SingleFlight;
+import com.tongji.storage.content.ContentFetchService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 缓存组件的 Micrometer 指标注册：Caffeine 命中率/逐出/加载耗时，单航班合并，后台刷新，L1 失效总线，
+ * 延迟失效，热点探测与续期、集群汇总，正文拉取磁盘缓存。
+ * <p>
+ * 指标均以函数形式读取各组件已有的计数器，不在请求路径上增加开销；由 Actuator 自动绑定到 MeterRegistry。
+ */
+@Component
+public class CacheMetricsBinder implements MeterBinder {
+    private final Cache<?, ?> feedPublicCache;
+    private final Cache<?, ?> feedMineCache;
+    private final Cache<?, ?> knowPostDetailCache;
+    private final SingleFlight singleFlight;
+    private final BackgroundRefresher refresher;
+    private final L1InvalidationBus l1Bus;
+    private final DelayedInvalidator delayedInvalidator;
+    private final HotKeyDetector hotKey;
+    private final HotKeyTtlExtender ttlExtender;
+    private final HotKeyAggregator aggregator;
+    private final ContentFetchService contentFetch;
+
+    public CacheMetricsBinder(@Qualifier("feedPublicCache") Cache<?, ?> feedPublicCache,
+                              @Qualifier("feedMineCache") Cache<?, ?> feedMineCache,
+                              @Qualifier("knowPostDetailCache") Cache<?, ?> knowPostDetailCache,
+                              SingleFlight singleFlight,
+                              BackgroundRefresher refresher,
+                              L1InvalidationBus l1Bus,
+                              DelayedInvalidator delayedInvalidator,
+                              HotKeyDetector hotKey,
+                              HotKeyTtlExtender ttlExtender,
+                              HotKeyAggregator aggregator,
+                              ContentFetchService contentFetch) {
+        this.feedPublicCache = feedPublicCache;
+        this.feedMineCache = feedMineCache;
+        this.knowPostDetailCache = knowPostDetailCache;
+        this.singleFlight = singleFlight;
+        this.refresher = refresher;
+        this.l1Bus = l1Bus;
+        this.delayedInvalidator = delayedInvalidator;
+        this.hotKey = hotKey;
+        this.ttlExtender = ttlExtender;
+        this.aggregator = aggregator;
+        this.contentFetch = contentFetch;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, feedPublicCache, "feed.public");
+        CaffeineCacheMetrics.monitor(registry, feedMineCache, "feed.mine");
+        CaffeineCacheMetrics.monitor(registry, knowPostDetailCache, "knowpost.detail");
+
+        counter(registry, "cache.singleflight.loads", "单航班实际执行的加载次数", singleFlight, SingleFlight::loadCount);
+        counter(registry, "cache.singleflight.coalesced", "单航班被合并的调用次数", singleFlight, SingleFlight::coalescedCount);
+        gauge(registry, "cache.singleflight.inflight", "进行中的航班数", singleFlight, SingleFlight::inFlightCount);
+
+        counter(registry, "cache.refresh.stale.served", "返回过期值（软 TTL 已过）的次数", refresher, BackgroundRefresher::staleServedCount);
+        counter(registry, "cache.refresh.executed", "后台刷新执行次数", refresher, BackgroundRefresher::refreshCount);
+        counter(registry, "cache.refresh.failed", "后台刷新失败次数", refresher, BackgroundRefresher::failureCount);
+        gauge(registry, "cache.refresh.inflight", "进行中的后台刷新数", refresher, BackgroundRefresher::inFlightCount);
+
+        counter(registry, "cache.l1bus.published", "L1 失效广播发送批次数", l1Bus, L1InvalidationBus::publishedCount);
+        counter(registry, "cache.l1bus.merged", "L1 失效缓冲区合并的操作数", l1Bus, L1InvalidationBus::mergedCount);
+        counter(registry, "cache.l1bus.received", "L1 失效广播接收批次数", l1Bus, L1InvalidationBus::receivedCount);
+        counter(registry, "cache.l1bus.duplicates", "L1 失效广播重复/乱序丢弃数", l1Bus, L1InvalidationBus::duplicateCount);
+
+        counter(registry, "cache.delayed.scheduled", "延迟失效登记次数", delayedInvalidator, DelayedInvalidator::scheduledCount);
+        counter(registry, "cache.delayed.coalesced", "延迟失效合并次数", delayedInvalidator, DelayedInvalidator::coalescedCount);
+        counter(registry, "cache.delayed.executed", "延迟失效执行次数", delayedInvalidator, DelayedInvalidator::executedCount);
+        counter(registry, "cache.delayed.failed", "延迟失效失败次数", delayedInvalidator, DelayedInvalidator::failedCount);
+        gauge(registry, "cache.delayed.pending", "待执行的延迟失效数", delayedInvalidator, DelayedInvalidator::pendingCount);
+        gauge(registry, "cache.delayed.lag.max.ms", "延迟失效最大执行滞后（毫秒）", delayedInvalidator, DelayedInvalidator::maxLagMillis);
+
+        gauge(registry, "cache.hotkey.tracked", "热点 Top-K 候选数", hotKey, HotKeyDetector::trackedCount);
+        counter(registry, "cache.hotkey.ttl.extended", "热点 TTL 续期生效次数", ttlExtender, HotKeyTtlExtender::extendedCount);
+        counter(registry, "cache.hotkey.ttl.failed", "热点 TTL 续期失败批次数", ttlExtender, HotKeyTtlExtender::failedCount);
+        counter(registry, "cache.hotkey.cluster.reports", "集群热点上报次数", aggregator, HotKeyAggregator::reportCount);
+        counter(registry, "cache.hotkey.cluster.warmed", "全局热点本地预热次数", aggregator, HotKeyAggregator::warmedCount);
+        counter(registry, "cache.hotkey.cluster.failed", "集群热点汇总失败次数", aggregator, HotKeyAggregator::failureCount);
+
+        counter(registry, "content.fetch.disk.hits", "正文磁盘缓存命中次数", contentFetch, ContentFetchService::diskHitCount);
+        counter(registry, "content.fetch.downloads", "正文实际下载次数", contentFetch, ContentFetchService::downloadCount);
+        counter(registry, "content.fetch.failures", "正文下载失败次数", contentFetch, ContentFetchService::failureCount);
+        counter(registry, "content.fetch.disk.evicted", "正文磁盘缓存逐出文件数", contentFetch, ContentFetchService::diskEvictedCount);
+        gauge(registry, "content.fetch.disk.bytes", "正文磁盘缓存占用（字节）", contentFetch, ContentFetchService::diskBytes);
+    }
+
+    private static <T> void counter(MeterRegistry registry, String name, String desc, T obj, ToDoubleFunction<T> f) {
+        FunctionCounter.builder(name, obj, f).description(desc).register(registry);
+    }
+
+    private static <T> void gauge(MeterRegistry registry, String name, String desc, T obj, ToDoubleFunction<T> f) {
+        Gauge.builder(name, obj, f).description(desc).register(registry);
+    }
+}
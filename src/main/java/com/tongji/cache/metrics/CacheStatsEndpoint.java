@@ -0,0 +1,149 @@
+package com.tongji.cache.metrics;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.tongji.cache.hotkey.HotKeyAggregator;
+import com.tongji.cache.hotkey.HotKeyDetector;
+import com.tongji.cache.hotkey.HotKeyTtlExtender;
+import com.tongji.cache.invalidation.DelayedInvalidator;
+import com.tongji.cache.invalidation.L1InvalidationBus;
+import com.tongji.cache.refresh.BackgroundRefresher;
+import com.tongji.cache.singleflight.SingleFlight;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 缓存监控端点 {@code /actuator/cachestats}：当前热点 Key 及等级、各层命中次数、Caffeine 统计、单航班合并与后台组件状态，
+ * 用于依据真实数据调整 {@code cache.hotkey.*} 阈值。
+ */
+@Component
+@Endpoint(id = "cachestats")
+public class CacheStatsEndpoint {
+    private static final int DEFAULT_TOP = 50;
+
+    private final Cache<?, ?> feedPublicCache;
+    private final Cache<?, ?> feedMineCache;
+    private final Cache<?, ?> knowPostDetailCache;
+    private final HotKeyDetector hotKey;
+    private final HotKeyTtlExtender ttlExtender;
+    private final HotKeyAggregator aggregator;
+    private final CacheTierMetrics tiers;
+    private final SingleFlight singleFlight;
+    private final BackgroundRefresher refresher;
+    private final L1InvalidationBus l1Bus;
+    private final DelayedInvalidator delayedInvalidator;
+
+    public CacheStatsEndpoint(@Qualifier("feedPublicCache") Cache<?, ?> feedPublicCache,
+                              @Qualifier("feedMineCache") Cache<?, ?> feedMineCache,
+                              @Qualifier("knowPostDetailCache") Cache<?, ?> knowPostDetailCache,
+                              HotKeyDetector hotKey,
+                              HotKeyTtlExtender ttlExtender,
+                              HotKeyAggregator aggregator,
+                              CacheTierMetrics tiers,
+                              SingleFlight singleFlight,
+                              BackgroundRefresher refresher,
+                              L1InvalidationBus l1Bus,
+                              DelayedInvalidator delayedInvalidator) {
+        this.feedPublicCache = feedPublicCache;
+        this.feedMineCache = feedMineCache;
+        this.knowPostDetailCache = knowPostDetailCache;
+        this.hotKey = hotKey;
+        this.ttlExtender = ttlExtender;
+        this.aggregator = aggregator;
+        this.tiers = tiers;
+        this.singleFlight = singleFlight;
+        this.refresher = refresher;
+        this.l1Bus = l1Bus;
+        this.delayedInvalidator = delayedInvalidator;
+    }
+
+    /**
+     * 读取缓存监控快照。
+     * @param top 返回的热点 Key 数量（默认 50）
+     * @return 监控数据
+     */
+    @ReadOperation
+    public Map<String, Object> stats(@Nullable Integer top) {
+        int limit = top == null || top <= 0 ? DEFAULT_TOP : Math.min(top, 1000);
+        Map<String, Object> out = new LinkedHashMap<>();
+
+        Map<String, Object> hot = new LinkedHashMap<>();
+        hot.put("tracked", hotKey.trackedCount());
+        hot.put("top", hotKey.topHot(limit));
+        hot.put("ttlSweeps", ttlExtender.sweepCount());
+        hot.put("ttlExtended", ttlExtender.extendedCount());
+        hot.put("clusterReports", aggregator.reportCount());
+        hot.put("clusterWarmed", aggregator.warmedCount());
+        hot.put("clusterFailures", aggregator.failureCount());
+        out.put("hotKeys", hot);
+
+        out.put("tiers", tiers.snapshot());
+
+        Map<String, Object> caffeine = new LinkedHashMap<>();
+        caffeine.put("feed.public", caffeineStats(feedPublicCache));
+        caffeine.put("feed.mine", caffeineStats(feedMineCache));
+        caffeine.put("knowpost.detail", caffeineStats(knowPostDetailCache));
+        out.put("caffeine", caffeine);
+
+        Map<String, Object> sf = new LinkedHashMap<>();
+        sf.put("loads", singleFlight.loadCount());
+        sf.put("coalesced", singleFlight.coalescedCount());
+        sf.put("inFlight", singleFlight.inFlightCount());
+        sf.put("topCoalesced", topCoalesced(singleFlight.coalescedSnapshot(), limit));
+        out.put("singleFlight", sf);
+
+        Map<String, Object> refresh = new LinkedHashMap<>();
+        refresh.put("staleServed", refresher.staleServedCount());
+        refresh.put("refreshes", refresher.refreshCount());
+        refresh.put("failures", refresher.failureCount());
+        refresh.put("inFlight", refresher.inFlightCount());
+        out.put("refresher", refresh);
+
+        Map<String, Object> bus = new LinkedHashMap<>();
+        bus.put("node", l1Bus.nodeId());
+        bus.put("published", l1Bus.publishedCount());
+        bus.put("merged", l1Bus.mergedCount());
+        bus.put("received", l1Bus.receivedCount());
+        bus.put("duplicates", l1Bus.duplicateCount());
+        bus.put("peers", l1Bus.lagSnapshot());
+        out.put("l1Bus", bus);
+
+        Map<String, Object> delayed = new LinkedHashMap<>();
+        delayed.put("scheduled", delayedInvalidator.scheduledCount());
+        delayed.put("coalesced", delayedInvalidator.coalescedCount());
+        delayed.put("executed", delayedInvalidator.executedCount());
+        delayed.put("failed", delayedInvalidator.failedCount());
+        delayed.put("pending", delayedInvalidator.pendingCount());
+        delayed.put("lastLagMs", delayedInvalidator.lastLagMillis());
+        delayed.put("maxLagMs", delayedInvalidator.maxLagMillis());
+        out.put("delayedInvalidator", delayed);
+        return out;
+    }
+
+    private static Map<String, Object> caffeineStats(Cache<?, ?> cache) {
+        CacheStats st = cache.stats();
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("size", cache.estimatedSize());
+        m.put("hitRate", st.hitRate());
+        m.put("hits", st.hitCount());
+        m.put("misses", st.missCount());
+        m.put("evictions", st.evictionCount());
+        m.put("averageLoadPenaltyMs", st.averageLoadPenalty() / 1_000_000.0);
+        return m;
+    }
+
+    private static Map<String, Long> topCoalesced(Map<String, Long> all, int limit) {
+        Map<String, Long> out = new LinkedHashMap<>();
+        all.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(limit)
+                .forEach(e -> out.put(e.getKey(), e.getValue()));
+        return out;
+    }
+}
@@ -0,0 +1,56 @@
+package com.tongji.cache.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 缓存分层命中计数：按缓存名与命中层级（local/3tier/page/db）累计，注册为 Micrometer 计数器 {@code cache.tier.hits}。
+ * <p>
+ * 计数器按 (cache, tier) 懒创建并缓存，请求路径上只有一次 Map 查找与一次无锁递增。
+ */
+@Component
+public class CacheTierMetrics {
+    public static final String LOCAL = "local";
+    public static final String FRAGMENT = "3tier";
+    public static final String PAGE = "page";
+    public static final String DB = "db";
+
+    private final MeterRegistry registry;
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    public CacheTierMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * 记录一次命中。
+     * @param cache 缓存名（如 feed.public、feed.mine、knowpost.detail）
+     * @param tier 命中层级
+     */
+    public void hit(String cache, String tier) {
+        counters.computeIfAbsent(cache + "|" + tier, k -> Counter.builder("cache.tier.hits")
+                .description("按缓存层级统计的命中/回源次数")
+                .tag("cache", cache)
+                .tag("tier", tier)
+                .register(registry)).increment();
+    }
+
+    /**
+     * 各缓存各层级累计次数快照。
+     * @return 缓存名 -> {层级 -> 次数}
+     */
+    public Map<String, Map<String, Long>> snapshot() {
+        Map<String, Map<String, Long>> out = new TreeMap<>();
+        counters.forEach((k, c) -> {
+            int i = k.indexOf('|');
+            out.computeIfAbsent(k.substring(0, i), x -> new LinkedHashMap<>()).put(k.substring(i + 1), (long) c.count());
+        });
+        return out;
+    }
+}
@@ -0,0 +1,128 @@
+package com.tongji.cache.refresh;
+
+import com.tongji.cache.config.CacheProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 后台刷新器：为页面/详情缓存提供 stale-while-revalidate 与 refresh-ahead。
+ * <p>
+ * 设计说明：
+ * - 缓存值本身使用硬 TTL（兜底过期），旁路的新鲜标记 {@code {key}:fresh} 使用软 TTL（逻辑过期）；
+ * - 标记缺失即视为“已过软 TTL”：调用方照常返回旧值，同时通过 SET NX 抢占跨实例的刷新权，仅抢到者在后台回源；
+ * - 刷新成功后由写缓存路径重置标记为完整软 TTL；刷新失败时标记按短 TTL 自然过期，之后的读取会再次触发刷新；
+ * - 本实例内同一 key 同时只保留一个刷新任务，线程池饱和时直接放弃，下次读取会重新提交。
+ */
+@Component
+public class BackgroundRefresher {
+    private static final Logger log = LoggerFactory.getLogger(BackgroundRefresher.class);
+    private static final String FRESH_SUFFIX = ":fresh";
+
+    private final StringRedisTemplate redis;
+    private final CacheProperties props;
+    private final Executor executor;
+    /** 本实例内进行中的刷新 key */
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    /** 过软 TTL 后仍返回旧值的次数 */
+    private final LongAdder staleServed = new LongAdder();
+    /** 实际提交的后台刷新次数 */
+    private final LongAdder refreshes = new LongAdder();
+    /** 执行失败或被线程池拒绝的刷新次数 */
+    private final LongAdder failures = new LongAdder();
+
+    public BackgroundRefresher(StringRedisTemplate redis,
+                               CacheProperties props,
+                               @Qualifier("cacheRefreshExecutor") Executor executor) {
+        this.redis = redis;
+        this.props = props;
+        this.executor = executor;
+    }
+
+    /**
+     * 新鲜标记 Key：存在表示缓存值仍在软 TTL 内。
+     * @param key 缓存 Key
+     * @return 标记 Key
+     */
+    public static String freshKey(String key) {
+        return key + FRESH_SUFFIX;
+    }
+
+    /**
+     * Redis 缓存值已过软 TTL：抢占跨实例刷新权，抢到者在后台执行刷新。
+     * 调用方不等待刷新结果，继续返回旧值。
+     * @param key 缓存 Key
+     * @param task 刷新逻辑（回源并重写缓存与新鲜标记）
+     */
+    public void refreshStale(String key, Runnable task) {
+        staleServed.increment();
+        if (refreshing.contains(key)) {
+            return;
+        }
+        Boolean claimed;
+        try {
+            claimed = redis.opsForValue().setIfAbsent(freshKey(key), "1",
+                    Duration.ofSeconds(props.getSwr().getRefreshLockSeconds()));
+        } catch (Exception e) {
+            log.warn("swr claim failed key={}", key, e);
+            return;
+        }
+        if (Boolean.TRUE.equals(claimed)) {
+            refreshAhead(key, task);
+        }
+    }
+
+    /**
+     * 提前刷新（仅本实例去重）：用于本地缓存在过期前的预刷新。
+     * @param key 缓存 Key
+     * @param task 刷新逻辑
+     */
+    public void refreshAhead(String key, Runnable task) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                    log.debug("swr refreshed key={}", key);
+                } catch (Exception e) {
+                    failures.increment();
+                    log.warn("swr refresh failed key={} err={}", key, e.getMessage());
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+            refreshes.increment();
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(key);
+            failures.increment();
+            log.debug("swr refresh rejected key={}", key);
+        }
+    }
+
+    public long staleServedCount() {
+        return staleServed.sum();
+    }
+
+    public long refreshCount() {
+        return refreshes.sum();
+    }
+
+    public long failureCount() {
+        return failures.sum();
+    }
+
+    public int inFlightCount() {
+        return refreshing.size();
+    }
+}
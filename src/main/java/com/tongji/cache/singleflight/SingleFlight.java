@@ -0,0 +1,146 @@
+package com.tongji.cache.singleflight;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 单航班（single-flight）合并器：同一 key 的并发回源只由一个调用者执行，其余调用者共享其结果。
+ * <p>
+ * 设计说明：
+ * - 首个到达的调用者成为 leader，在自身线程内执行加载并完成共享的 CompletableFuture；
+ * - 后到的调用者直接拿到同一个 future 等待，不持有任何对象监视器，对虚拟线程友好（不会钉住载体线程）；
+ * - 无论加载成功或抛出异常，leader 都在 finally 中移除航班条目，异常同样传播给所有等待方；
+ * - 按 key 统计被合并的等待方数量（有界缓存），用于观测击穿合并效果。
+ */
+@Component
+public class SingleFlight {
+    private static final Logger log = LoggerFactory.getLogger(SingleFlight.class);
+
+    /** 进行中的航班：key -> 航班（共享 future + 等待方计数） */
+    private final ConcurrentHashMap<String, Flight> inFlight = new ConcurrentHashMap<>();
+    /** 每个 key 累计被合并的等待方数量（有界，按 Caffeine 策略逐出冷 key） */
+    private final Cache<String, LongAdder> coalescedByKey = Caffeine.newBuilder().maximumSize(10_000).build();
+    /** 实际执行的加载次数 */
+    private final LongAdder loads = new LongAdder();
+    /** 被合并（未执行加载）的调用次数 */
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * 提交一次加载：若同 key 已有航班则加入等待，否则由当前线程执行加载。
+     * 返回的 future 在当前调用返回时可能仍未完成（加入他人航班的情况）。
+     * @param key 航班号（通常为缓存 Key）
+     * @param loader 加载逻辑（仅 leader 执行）
+     * @return 共享的加载结果
+     */
+    public <T> CompletableFuture<T> submit(String key, Supplier<T> loader) {
+        Flight flight = new Flight();
+        Flight existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            existing.waiters.incrementAndGet();
+            coalesced.increment();
+            coalescedByKey.get(key, k -> new LongAdder()).increment();
+            return cast(existing.future);
+        }
+
+        loads.increment();
+        try {
+            flight.future.complete(loader.get());
+        } catch (Throwable t) {
+            flight.future.completeExceptionally(t);
+        } finally {
+            // 仅移除自己的航班，避免误删后续新建的同名航班
+            inFlight.remove(key, flight);
+            int waiters = flight.waiters.get();
+            if (waiters > 0) {
+                log.debug("singleflight key={} coalesced={}", key, waiters);
+            }
+        }
+        return cast(flight.future);
+    }
+
+    /**
+     * 同步执行：加入或发起航班并等待结果，加载异常按原类型抛出。
+     * @param key 航班号（通常为缓存 Key）
+     * @param loader 加载逻辑（仅 leader 执行）
+     * @return 加载结果
+     */
+    public <T> T execute(String key, Supplier<T> loader) {
+        try {
+            return this.<T>submit(key, loader).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException re) {
+                throw re;
+            }
+            if (cause instanceof Error err) {
+                throw err;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 当前进行中的航班数量。
+     */
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * 累计执行的加载次数。
+     */
+    public long loadCount() {
+        return loads.sum();
+    }
+
+    /**
+     * 累计被合并的调用次数。
+     */
+    public long coalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * 指定 key 累计被合并的等待方数量。
+     * @param key 航班号
+     * @return 合并次数；未记录时为 0
+     */
+    public long coalescedCount(String key) {
+        LongAdder adder = coalescedByKey.getIfPresent(key);
+        return adder == null ? 0L : adder.sum();
+    }
+
+    /**
+     * 各 key 累计合并次数快照。
+     */
+    public Map<String, Long> coalescedSnapshot() {
+        Map<String, Long> out = new LinkedHashMap<>();
+        coalescedByKey.asMap().forEach((k, v) -> out.put(k, v.sum()));
+        return out;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> CompletableFuture<T> cast(CompletableFuture<Object> f) {
+        return (CompletableFuture<T>) (CompletableFuture<?>) f;
+    }
+
+    /**
+     * 一次航班：共享结果与等待方计数。
+     */
+    private static final class Flight {
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+        private final AtomicInteger waiters = new AtomicInteger();
+    }
+}
@@ -21,4 +21,36 @@ public class ThreadPoolConfig {
         executor.initialize();
         return executor;
     }
-}
\ No newline at end of file
+
+    /**
+     * 计数 SDS 后台重建线程池：小并发、有界队列，饱和时丢弃（下次读取缺失时会重新提交）。
+     */
+    @Bean(name = "counterRebuildExecutor")
+    public ThreadPoolTaskExecutor counterRebuildExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(4);
+        executor.setQueueCapacity(500);
+        executor.setKeepAliveSeconds(30);
+        executor.setThreadNamePrefix("CounterRebuild-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 缓存后台刷新线程池（stale-while-revalidate）：刷新失败不影响读请求，饱和时丢弃（下次读取过软 TTL 时重新提交）。
+     */
+    @Bean(name = "cacheRefreshExecutor")
+    public ThreadPoolTaskExecutor cacheRefreshExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(8);
+        executor.setQueueCapacity(200);
+        executor.setKeepAliveSeconds(30);
+        executor.setThreadNamePrefix("CacheRefresh-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+}
@@ -1,17 +1,21 @@
 package com.tongji.counter.config;
 
 import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
 import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.annotation.EnableKafka;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.listener.ContainerProperties;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
- * 计数模块配置：启用调度与 Kafka，并提供字符串模板。
+ * 计数模块配置：启用调度与 Kafka，并提供字符串模板与计数事件的批量监听容器。
  */
 @Configuration
 @EnableScheduling // 启用 @Scheduled 定时任务（计数聚合刷写）
@@ -28,4 +32,19 @@ public class CounterConfig {
     public KafkaTemplate<String, String> stringKafkaTemplate(ProducerFactory<String, String> pf) {
         return new KafkaTemplate<>(pf);
     }
-}
\ No newline at end of file
+
+    /**
+     * 计数事件批量监听容器：沿用 spring.kafka 的全局配置，仅切换为批量模式并手动提交位点。
+     * 其它监听器仍使用默认的单条模式容器。
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> counterBatchListenerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> consumerFactory) {
+        var factory = new ConcurrentKafkaListenerContainerFactory<Object, Object>();
+        configurer.configure(factory, consumerFactory);
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        return factory;
+    }
+}
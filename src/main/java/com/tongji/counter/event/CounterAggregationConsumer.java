@@ -3,6 +3,14 @@ package com.tongji.counter.event;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.tongji.counter.schema.CounterKeys;
 import com.tongji.counter.schema.CounterSchema;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.kafka.annotation.KafkaListener;
@@ -10,147 +18,286 @@ import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
 
 /**
  * 计数事件聚合与刷写消费者。
  *
  * <p>职责：</p>
- * - 消费点赞/收藏等增量事件，写入 Redis 聚合桶（Hash）；
- * - 以固定延迟定时任务将聚合增量折叠到 SDS 固定结构计数；
- * - 刷写成功后删除聚合字段，避免重复加算。
+ * - 批量消费点赞/收藏等增量事件，按实体与指标在内存中合并净增量后写入 Redis 聚合桶（Hash），
+ *   并在同一脚本内把实体登记到待刷写索引（Set）；
+ * - 以固定延迟定时任务从索引中分批取出实体，每个实体一次脚本调用将全部字段折叠到 SDS 并删除聚合桶；
+ * - 刷写开销只与有增量的实体数相关，不随 Redis 键空间增长；
+ * - 脚本只在首次或 Redis 丢失脚本缓存时加载，管道内以 EVALSHA 发送，不随每个实体重复传输脚本正文。
  */
 @Service
 public class CounterAggregationConsumer {
+    private static final Logger log = LoggerFactory.getLogger(CounterAggregationConsumer.class);
+
+    // 每批刷写的实体数与单次刷写的最大批数：单轮最多处理 FLUSH_BATCH × FLUSH_MAX_ROUNDS 个实体，剩余留待下一轮
+    private static final int FLUSH_BATCH = 200;
+    private static final int FLUSH_MAX_ROUNDS = 50;
 
     private final ObjectMapper objectMapper;
     private final StringRedisTemplate redis;
-    private final DefaultRedisScript<Long> incrScript;
+    private final DefaultRedisScript<Long> aggIncrScript = new DefaultRedisScript<>(AGG_INCR_LUA, Long.class);
+    private final DefaultRedisScript<Long> foldScript = new DefaultRedisScript<>(FOLD_LUA, Long.class);
+    /** 已加载到 Redis 脚本缓存的脚本 SHA1 */
+    private final Set<String> loadedScripts = ConcurrentHashMap.newKeySet();
 
     // 使用 Redis Hash 作为持久化聚合桶：agg:{schema}:{etype}:{eid} ，field=idx ，value=delta
     public CounterAggregationConsumer(ObjectMapper objectMapper, StringRedisTemplate redis) {
         this.objectMapper = objectMapper;
         this.redis = redis;
-        this.incrScript = new DefaultRedisScript<>();
-        this.incrScript.setResultType(Long.class);
-        this.incrScript.setScriptText(INCR_FIELD_LUA); // 原子将增量折叠到 SDS 指定段（大端 32 位）
     }
 
     /**
-     * 消费计数事件并写入聚合桶。
-     * @param message 事件 JSON
-     * @param ack 位点确认对象（手动提交）
+     * 启动时把已存在的聚合桶补登记到待刷写索引（一次性 SCAN，兼容升级前遗留的聚合桶）。
      */
-    @KafkaListener(topics = CounterTopics.EVENTS, groupId = "counter-agg")
-    public void onMessage(String message, Acknowledgment ack) throws Exception {
-        CounterEvent evt = objectMapper.readValue(message, CounterEvent.class);
-        String aggKey = CounterKeys.aggKey(evt.getEntityType(), evt.getEntityId());
-        String field = String.valueOf(evt.getIdx());
-        try {
-            // 将增量持久化到 Redis Hash
-            redis.opsForHash().increment(aggKey, field, evt.getDelta());
-            // 成功后提交位点，绑定“已持久化”语义
-            ack.acknowledge();
-        } catch (Exception ex) {
-            // 不提交位点以便重试
+    @PostConstruct
+    void seedDirtyIndex() {
+        String prefix = "agg:" + CounterSchema.SCHEMA_ID + ":";
+        List<String> members = new ArrayList<>();
+        try (Cursor<String> cursor = redis.scan(ScanOptions.scanOptions().match(prefix + "*").count(1000).build())) {
+            while (cursor.hasNext()) {
+                String aggKey = cursor.next();
+                String[] parts = aggKey.split(":", 4); // agg:schema:etype:eid
+                if (parts.length == 4) {
+                    members.add(CounterKeys.aggDirtyMember(parts[2], parts[3]));
+                }
+                if (members.size() >= 1000) {
+                    redis.opsForSet().add(CounterKeys.aggDirtyKey(), members.toArray(new String[0]));
+                    members.clear();
+                }
+            }
+            if (!members.isEmpty()) {
+                redis.opsForSet().add(CounterKeys.aggDirtyKey(), members.toArray(new String[0]));
+            }
+        } catch (Exception e) {
+            log.warn("counter dirty index seed failed err={}", e.getMessage());
         }
     }
 
     /**
-     * 将聚合增量刷写到 SDS 固定结构计数。
-     * 固定延迟 1s，保证秒级最终一致性。
+     * 批量消费计数事件：一次拉取的事件先在内存中按 (实体, 指标下标) 合并为净增量，
+     * 再以一次管道写入聚合桶（每个实体一次脚本调用），整批成功后提交一次位点。
+     * 单次拉取上限由 counter.consumer.max-poll-records 控制（默认 500）。
+     * 写入失败时抛出异常，由容器错误处理器回退位点重投整批（至少一次语义）；无法解析的消息记录后跳过。
+     * @param messages 事件 JSON 列表
+     * @param ack 位点确认对象（手动提交）
      */
-    @Scheduled(fixedDelay = 1000L)
-    public void flush() {
-        // 简化实现：扫描所有聚合桶键（生产建议使用索引集合替代 KEYS）
-        Set<String> keys = redis.keys("agg:" + CounterSchema.SCHEMA_ID + ":*");
-        if (keys.isEmpty()) {
-            return;
+    @KafkaListener(topics = CounterTopics.EVENTS, groupId = "counter-agg",
+            containerFactory = "counterBatchListenerFactory",
+            properties = {"max.poll.records=${counter.consumer.max-poll-records:500}"})
+    public void onMessages(List<String> messages, Acknowledgment ack) {
+        Map<String, Map<Integer, Long>> net = fold(messages);
+        if (!net.isEmpty()) {
+            byte[] dirtyKey = CounterKeys.aggDirtyKey().getBytes(StandardCharsets.UTF_8);
+            pipelineWithScript(aggIncrScript, (c, sha) -> {
+                for (Map.Entry<String, Map<Integer, Long>> e : net.entrySet()) {
+                    String[] parts = e.getKey().split(":", 2); // etype:eid
+                    byte[][] keysAndArgs = new byte[3 + e.getValue().size() * 2][];
+                    keysAndArgs[0] = CounterKeys.aggKey(parts[0], parts[1]).getBytes(StandardCharsets.UTF_8);
+                    keysAndArgs[1] = dirtyKey;
+                    keysAndArgs[2] = e.getKey().getBytes(StandardCharsets.UTF_8);
+                    int i = 3;
+                    for (Map.Entry<Integer, Long> f : e.getValue().entrySet()) {
+                        keysAndArgs[i++] = String.valueOf(f.getKey()).getBytes(StandardCharsets.UTF_8);
+                        keysAndArgs[i++] = String.valueOf(f.getValue()).getBytes(StandardCharsets.UTF_8);
+                    }
+                    c.scriptingCommands().evalSha(sha, ReturnType.INTEGER, 2, keysAndArgs);
+                }
+            });
         }
+        // 整批已持久化到聚合桶后提交位点
+        ack.acknowledge();
+        log.debug("counter events batch={} entities={}", messages.size(), net.size());
+    }
 
-        for (String aggKey : keys) {
-            Map<Object, Object> entries = redis.opsForHash().entries(aggKey);
-            if (entries.isEmpty()) {
+    /**
+     * 将一批事件按 (实体, 指标下标) 合并为净增量；净增量为 0 的字段（如点赞后立即取消）不写入。
+     * @return 实体（etype:eid） -> (下标 -> 净增量)
+     */
+    Map<String, Map<Integer, Long>> fold(List<String> messages) {
+        Map<String, Map<Integer, Long>> net = new LinkedHashMap<>();
+        for (String message : messages) {
+            CounterEvent evt;
+            try {
+                evt = objectMapper.readValue(message, CounterEvent.class);
+            } catch (Exception e) {
+                log.warn("counter event malformed, skipped err={}", e.getMessage());
                 continue;
             }
-            // 解析 etype/eid 以定位 SDS key
-            String[] parts = aggKey.split(":", 4); // agg:schema:etype:eid
-            if (parts.length < 4) {
+            if (evt.getDelta() == 0 || evt.getIdx() < 0 || evt.getIdx() >= CounterSchema.SCHEMA_LEN) {
                 continue;
             }
+            net.computeIfAbsent(CounterKeys.aggDirtyMember(evt.getEntityType(), evt.getEntityId()), k -> new LinkedHashMap<>())
+                    .merge(evt.getIdx(), (long) evt.getDelta(), Long::sum);
+        }
+        net.values().forEach(fields -> fields.values().removeIf(d -> d == 0L));
+        net.values().removeIf(Map::isEmpty);
+        return net;
+    }
 
-            String cntKey = CounterKeys.sdsKey(parts[2], parts[3]);
+    /**
+     * 将聚合增量刷写到 SDS 固定结构计数。
+     * 固定延迟 1s，保证秒级最终一致性；每批一次管道，每个实体一次脚本调用。
+     * 多实例并发刷写同一实体是安全的：脚本原子地折叠并删除聚合桶，后执行者读到空桶直接返回。
+     */
+    @Scheduled(fixedDelay = 1000L)
+    public void flush() {
+        String dirtyKey = CounterKeys.aggDirtyKey();
+        byte[] dirtyKeyBytes = dirtyKey.getBytes(StandardCharsets.UTF_8);
+        byte[] schemaLen = String.valueOf(CounterSchema.SCHEMA_LEN).getBytes(StandardCharsets.UTF_8);
+        byte[] fieldSize = String.valueOf(CounterSchema.FIELD_SIZE).getBytes(StandardCharsets.UTF_8);
+        byte[] readIdx = String.valueOf(CounterSchema.IDX_READ).getBytes(StandardCharsets.UTF_8);
+        for (int round = 0; round < FLUSH_MAX_ROUNDS; round++) {
+            Set<String> members;
+            try {
+                members = redis.opsForSet().distinctRandomMembers(dirtyKey, FLUSH_BATCH);
+            } catch (Exception e) {
+                log.warn("counter flush skipped err={}", e.getMessage());
+                return;
+            }
+            if (members == null || members.isEmpty()) {
+                return;
+            }
+            try {
+                pipelineWithScript(foldScript, (c, sha) -> {
+                    for (String member : members) {
+                        byte[] memberBytes = member.getBytes(StandardCharsets.UTF_8);
+                        String[] parts = member.split(":", 2); // etype:eid
+                        if (parts.length < 2) {
+                            // 无法解析的成员直接移出索引
+                            c.setCommands().sRem(dirtyKeyBytes, memberBytes);
+                            continue;
+                        }
+                        c.scriptingCommands().evalSha(sha, ReturnType.INTEGER, 4,
+                                CounterKeys.aggKey(parts[0], parts[1]).getBytes(StandardCharsets.UTF_8),
+                                CounterKeys.sdsKey(parts[0], parts[1]).getBytes(StandardCharsets.UTF_8),
+                                dirtyKeyBytes,
+                                CounterKeys.viewDirtyKey(parts[0]).getBytes(StandardCharsets.UTF_8),
+                                schemaLen, fieldSize, memberBytes, readIdx, parts[1].getBytes(StandardCharsets.UTF_8));
+                    }
+                });
+            } catch (Exception e) {
+                // 失败的实体仍在索引中，下一轮重试
+                log.warn("counter flush failed batch={} err={}", members.size(), e.getMessage());
+                return;
+            }
+            if (members.size() < FLUSH_BATCH) {
+                return;
+            }
+        }
+    }
 
-            for (Map.Entry<Object, Object> e : entries.entrySet()) {
-                String field = String.valueOf(e.getKey());
-                // 增量
-                long delta;
-                try {
-                    delta = Long.parseLong(String.valueOf(e.getValue()));
-                } catch (NumberFormatException nfe) {
-                    continue;
-                }
-                if (delta == 0) continue;
-                int idx;
+    /**
+     * 管道执行脚本调用：脚本未加载时先 SCRIPT LOAD，管道内以 EVALSHA 发送。
+     * 遇到 NOSCRIPT（Redis 重启或执行过 SCRIPT FLUSH，整批均未执行）时重新加载并重试整批。
+     * @param script 脚本
+     * @param writes 在管道连接上写入脚本调用，第二个参数为脚本 SHA1
+     */
+    private void pipelineWithScript(DefaultRedisScript<Long> script, BiConsumer<RedisConnection, String> writes) {
+        String sha = script.getSha1();
+        if (!loadedScripts.contains(sha)) {
+            loadScript(script);
+        }
+        try {
+            runPipeline(sha, writes);
+        } catch (Exception e) {
+            if (!isNoScript(e)) {
+                throw e;
+            }
+            loadScript(script);
+            runPipeline(sha, writes);
+        }
+    }
 
-                try {
-                    idx = Integer.parseInt(field);
-                } catch (NumberFormatException nfe) {
-                    continue;
-                }
+    private void runPipeline(String sha, BiConsumer<RedisConnection, String> writes) {
+        redis.executePipelined((RedisCallback<Object>) c -> {
+            writes.accept(c, sha);
+            return null;
+        });
+    }
 
-                try {
-                    redis.execute(incrScript, List.of(cntKey),
-                            String.valueOf(CounterSchema.SCHEMA_LEN),
-                            String.valueOf(CounterSchema.FIELD_SIZE),
-                            String.valueOf(idx),
-                            String.valueOf(delta));
-                    // 成功后删除该字段，避免重复加算
-                    redis.opsForHash().delete(aggKey, field);
-                } catch (Exception ex) {
-                    // 留存字段，下一轮重试
-                }
-            }
-            // 如 Hash 已为空，删除聚合桶Key
-            // 目的：降低键空间噪音，避免后续无效扫描
-            Long size = redis.opsForHash().size(aggKey);
-            if (size == 0L) {
-                redis.delete(aggKey);
+    private void loadScript(DefaultRedisScript<Long> script) {
+        redis.execute((RedisCallback<String>) c ->
+                c.scriptingCommands().scriptLoad(script.getScriptAsString().getBytes(StandardCharsets.UTF_8)));
+        loadedScripts.add(script.getSha1());
+    }
+
+    private static boolean isNoScript(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t.getMessage() != null && t.getMessage().contains("NOSCRIPT")) {
+                return true;
             }
         }
+        return false;
     }
 
-    private static final String INCR_FIELD_LUA = """
-            
-            local cntKey = KEYS[1]
+    // 写入聚合桶并登记待刷写索引：KEYS[1]=aggKey, KEYS[2]=dirtyKey；ARGV = member, field1, delta1, field2, delta2, ...
+    private static final String AGG_INCR_LUA = """
+            for i=2,#ARGV,2 do
+              redis.call('HINCRBY', KEYS[1], ARGV[i], ARGV[i+1])
+            end
+            redis.call('SADD', KEYS[2], ARGV[1])
+            return 1
+            """;
+
+    // 折叠实体的全部聚合字段到 SDS，并删除聚合桶、移出待刷写索引（原子执行）
+    // 浏览数（read 段）发生变化时，在写入 SDS 的同一脚本内把实体登记到浏览数待同步集合，同步方读到的一定是折叠后的值
+    // KEYS[1]=aggKey, KEYS[2]=cntKey, KEYS[3]=dirtyKey, KEYS[4]=viewDirtyKey；ARGV = schemaLen, fieldSize, member, readIdx, eid
+    private static final String FOLD_LUA = """
+            local aggKey = KEYS[1]
+            local cntKey = KEYS[2]
             local schemaLen = tonumber(ARGV[1])
             local fieldSize = tonumber(ARGV[2]) -- 固定为4
-            local idx = tonumber(ARGV[3])
-            local delta = tonumber(ARGV[4])
-            
+
             local function read32be(s, off)
               local b = {string.byte(s, off+1, off+4)}
               local n = 0
               for i=1,4 do n = n * 256 + b[i] end
               return n
             end
-            
+
             local function write32be(n)
               local t = {}
               for i=4,1,-1 do t[i] = n % 256; n = math.floor(n/256) end
               return string.char(unpack(t))
             end
-            
+
+            redis.call('SREM', KEYS[3], ARGV[3])
+            local kv = redis.call('HGETALL', aggKey)
+            if #kv == 0 then return 0 end
+
             local cnt = redis.call('GET', cntKey)
-            if not cnt then cnt = string.rep(string.char(0), schemaLen * fieldSize) end
-            local off = idx * fieldSize
-            local v = read32be(cnt, off) + delta
-            if v < 0 then v = 0 end
-            local seg = write32be(v)
-            cnt = string.sub(cnt, 1, off) .. seg .. string.sub(cnt, off+fieldSize+1)
-            redis.call('SET', cntKey, cnt)
-            return 1
+            if not cnt or string.len(cnt) ~= schemaLen * fieldSize then
+              cnt = string.rep(string.char(0), schemaLen * fieldSize)
+            end
+            local folded = 0
+            local readChanged = false
+            for i=1,#kv,2 do
+              local idx = tonumber(kv[i])
+              local delta = tonumber(kv[i+1])
+              if idx and delta and idx >= 0 and idx < schemaLen and delta ~= 0 then
+                local off = idx * fieldSize
+                local v = read32be(cnt, off) + delta
+                if v < 0 then v = 0 end
+                cnt = string.sub(cnt, 1, off) .. write32be(v) .. string.sub(cnt, off+fieldSize+1)
+                folded = folded + 1
+                if idx == tonumber(ARGV[4]) then readChanged = true end
+              end
+            end
+            if folded > 0 then redis.call('SET', cntKey, cnt) end
+            if readChanged then redis.call('SADD', KEYS[4], ARGV[5]) end
+            redis.call('DEL', aggKey)
+            return folded
             """;
-}
\ No newline at end of file
+}
@@ -2,29 +2,128 @@ package com.tongji.counter.event;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * 计数事件生产者。
  *
  * <p>职责：将业务产生的计数增量事件异步发送到 Kafka 主题，供聚合消费者处理。</p>
+ *
+ * <p>可选的进程内合并（counter.producer.coalesce.enabled=true）：</p>
+ * - 事件按 (实体类型, 实体ID, 指标) 在内存中累加净增量，后台线程每个窗口（默认 5ms）把净增量各发送为一条事件，
+ *   热点内容的连续点赞/取消只产生少量消息，点赞后立即取消的净增量为 0 则不发送；
+ * - 合并后的事件 userId 为 0：下游消费者（聚合与重建）只使用增量，用户维度的状态以位图为准；
+ * - 待合并条目数有上限，超过上限时新条目直接发送，不丢弃也不阻塞调用方；
+ * - 关闭时立即发送所有未到期的净增量；与关闭并发的合并在合并后复查关闭状态并自行补发，不会遗留。
  */
 @Service
 public class CounterEventProducer {
+    private static final Logger log = LoggerFactory.getLogger(CounterEventProducer.class);
+
     private final KafkaTemplate<String, String> kafka;
     private final ObjectMapper objectMapper;
 
+    @Value("${counter.producer.coalesce.enabled:false}")
+    private boolean coalesceEnabled;
+    @Value("${counter.producer.coalesce.window-ms:5}")
+    private long windowMs;
+    @Value("${counter.producer.coalesce.max-pending:10000}")
+    private int maxPending;
+
+    /** (etype, eid, metric, idx) -> 当前窗口内的净增量；仅通过 merge/remove 原子修改 */
+    private final ConcurrentHashMap<Key, Integer> pending = new ConcurrentHashMap<>();
+    private volatile Thread worker;
+
     public CounterEventProducer(KafkaTemplate<String, String> kafka, ObjectMapper objectMapper) {
         this.kafka = kafka;
         this.objectMapper = objectMapper;
     }
 
+    @PostConstruct
+    public void start() {
+        if (!coalesceEnabled) {
+            return;
+        }
+        Thread t = new Thread(this::loop, "CounterEventCoalescer");
+        t.setDaemon(true);
+        worker = t;
+        t.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        Thread t = worker;
+        worker = null;
+        if (t != null) {
+            t.interrupt();
+        }
+        // 关闭前发送全部待合并的净增量
+        flush();
+    }
+
     /**
      * 发布计数事件到 Kafka。
+     * 启用合并时仅在内存中累加净增量，由后台线程按窗口发送。
      * @param event 计数事件（实体类型、ID、指标、delta 等）
      */
     public void publish(CounterEvent event) {
+        if (worker == null) {
+            send(event);
+            return;
+        }
+        Key key = new Key(event.getEntityType(), event.getEntityId(), event.getMetric(), event.getIdx());
+        if (pending.size() >= maxPending && !pending.containsKey(key)) {
+            // 合并表已满：直接发送，保证不丢增量
+            send(event);
+            return;
+        }
+        pending.merge(key, event.getDelta(), Integer::sum);
+        if (worker == null) {
+            // 合并期间已关闭：关闭时的最终刷写可能早于本次合并，补发一次（remove 原子，不会重复发送）
+            flush();
+        }
+    }
+
+    private void loop() {
+        Thread self = Thread.currentThread();
+        while (worker == self) {
+            try {
+                Thread.sleep(windowMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                flush();
+            } catch (Exception e) {
+                log.warn("counter event coalesce flush failed err={}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 取出当前窗口的全部净增量并各发送为一条事件；净增量为 0 的条目直接丢弃。
+     */
+    void flush() {
+        List<Key> keys = new ArrayList<>(pending.keySet());
+        for (Key key : keys) {
+            Integer delta = pending.remove(key);
+            if (delta != null && delta != 0) {
+                send(CounterEvent.of(key.entityType(), key.entityId(), key.metric(), key.idx(), 0L, delta));
+            }
+        }
+    }
+
+    private void send(CounterEvent event) {
         try {
             String payload = objectMapper.writeValueAsString(event);
             kafka.send(CounterTopics.EVENTS, payload); // 异步写入计数事件主题（幂等生产已在配置启用）
@@ -32,4 +131,6 @@ public class CounterEventProducer {
             // 生产异常不抛出影响主流程；可接入告警
         }
     }
-}
\ No newline at end of file
+
+    private record Key(String entityType, String entityId, String metric, int idx) {}
+}
@@ -15,8 +15,42 @@ public final class CounterKeys {
         return String.format("bm:%s:%s:%s:%d", metric, entityType, entityId, chunk); // 位图事实层（分片）
     }
 
+    // 稀疏成员集合（Set）：bmset:{metric}:{etype}:{eid}，成员为用户ID；成员数超过阈值后迁移为位图分片
+    public static String sparseMemberKey(String metric, String entityType, String entityId) {
+        return String.format("bmset:%s:%s:%s", metric, entityType, entityId); // 长尾实体的紧凑存储（intset 编码）
+    }
+
+    // 位图分片索引（Set）：bmidx:{metric}:{etype}:{eid}，成员为出现过置位的分片号；存在即表示实体处于位图模式
+    public static String bitmapIndexKey(String metric, String entityType, String entityId) {
+        return String.format("bmidx:%s:%s:%s", metric, entityType, entityId); // 重建时只统计登记过的分片
+    }
+
+    // 位图分片索引回填完成标记：启动时发现该标记即跳过对存量位图的 SCAN
+    public static String bitmapIndexSeededKey() {
+        return "bmidx:seeded:" + CounterSchema.SCHEMA_ID;
+    }
+
     // 聚合增量持久化桶（Hash）：agg:{schema}:{etype}:{eid}
     public static String aggKey(String entityType, String entityId) {
         return String.format("agg:%s:%s:%s", CounterSchema.SCHEMA_ID, entityType, entityId); // 刷写前的增量存储桶
     }
-}
\ No newline at end of file
+
+    // 待刷写聚合桶索引（Set）：agg:dirty:{schema}，成员为 {etype}:{eid}
+    public static String aggDirtyKey() {
+        return "agg:dirty:" + CounterSchema.SCHEMA_ID; // 有未折叠增量的实体，刷写只处理这些实体
+    }
+
+    public static String aggDirtyMember(String entityType, String entityId) {
+        return entityType + ":" + entityId;
+    }
+
+    // 浏览去重集合（按天，Set，成员为用户ID）：vd:{etype}:{eid}:{yyyyMMdd}
+    public static String viewDedupKey(String entityType, String entityId, String day) {
+        return String.format("vd:%s:%s:%s", entityType, entityId, day); // 当天已计入浏览的用户
+    }
+
+    // 浏览数待同步集合（Set）：view:dirty:{etype}
+    public static String viewDirtyKey(String entityType) {
+        return "view:dirty:" + entityType; // 浏览数有变化、待同步到搜索索引的实体
+    }
+}
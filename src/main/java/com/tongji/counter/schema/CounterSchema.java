@@ -10,7 +10,7 @@ import java.util.Set;
 public final class CounterSchema {
 
     // 使用 v1 Schema：下标约定（可扩展）
-    // 0: read（预留）
+    // 0: read（按用户/天去重的浏览量，无位图事实层）
     // 1: like
     // 2: fav
     // 3: comment（预留）
@@ -19,15 +19,19 @@ public final class CounterSchema {
     public static final int FIELD_SIZE = 4; // 改为 4 字节 Int32 存储
     public static final int SCHEMA_LEN = 5; // 预留 5 个指标位
 
+    public static final int IDX_READ = 0;
     public static final int IDX_LIKE = 1;
     public static final int IDX_FAV = 2;
 
     public static final Map<String, Integer> NAME_TO_IDX = Map.of(
+            "read", IDX_READ,
             "like", IDX_LIKE,
             "fav", IDX_FAV
     );
 
     public static final Set<String> SUPPORTED_METRICS = NAME_TO_IDX.keySet(); // 对外可请求的指标集合
 
+    public static final Set<String> BITMAP_METRICS = Set.of("like", "fav"); // 有位图事实层、可按位图重建的指标
+
     private CounterSchema() {}
 }
\ No newline at end of file
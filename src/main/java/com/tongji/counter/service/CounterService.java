@@ -38,4 +38,10 @@ public interface CounterService {
      */
     boolean isLiked(String entityType, String entityId, long userId);
     boolean isFaved(String entityType, String entityId, long userId);
+
+    /**
+     * 批量判断用户在多个实体上的点赞/收藏状态（位图，单次管道往返）。
+     * @return entityId -> (metric -> 是否置位)
+     */
+    Map<String, Map<String, Boolean>> getUserStatesBatch(String entityType, List<String> entityIds, long userId, List<String> metrics);
 }
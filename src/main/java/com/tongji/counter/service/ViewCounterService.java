@@ -0,0 +1,16 @@
+package com.tongji.counter.service;
+
+/**
+ * 浏览计数服务接口。
+ *
+ * <p>浏览只在内存中登记，由后台批量去重并折叠到 SDS 的 read 段，读路径不产生同步写。</p>
+ */
+public interface ViewCounterService {
+    /**
+     * 登记一次浏览。
+     * @param entityType 实体类型
+     * @param entityId 实体 ID
+     * @param userId 浏览用户（为空表示匿名，匿名浏览不去重）
+     */
+    void recordView(String entityType, String entityId, Long userId);
+}
@@ -6,7 +6,11 @@ import com.tongji.counter.schema.BitmapShard;
 import com.tongji.counter.service.CounterService;
 import com.tongji.counter.event.CounterEvent;
 import com.tongji.counter.event.CounterEventProducer;
+import jakarta.annotation.PostConstruct;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.Cursor;
 import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
@@ -16,29 +20,46 @@ import org.redisson.api.RLock;
 import org.redisson.api.RRateLimiter;
 import org.redisson.api.RateType;
 import org.redisson.api.RBucket;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 /**
  * 内容实体计数服务实现（位图事实 + 事件聚合 + SDS 汇总）。
  *
  * <p>职责：</p>
- * - 位图原子切换并产出计数事件（幂等）；
+ * - 位图原子切换并产出计数事件（幂等）；长尾实体先以稀疏成员集合存储，成员数超过阈值后迁移为位图分片；
  * - 读取汇总计数（SDS），异常时基于位图分片重建；
  * - 批量读取优化与“是否点赞/收藏”判定。
  */
 @Service
 public class CounterServiceImpl implements CounterService {
+    private static final Logger log = LoggerFactory.getLogger(CounterServiceImpl.class);
 
     private final StringRedisTemplate redis;
     private final DefaultRedisScript<Long> toggleScript;
+    private final DefaultRedisScript<Long> switchScript;
+    private final DefaultRedisScript<Long> migrateScript = new DefaultRedisScript<>(MIGRATE_LUA, Long.class);
     private final CounterEventProducer eventProducer;
     private final ApplicationEventPublisher eventPublisher;
     private final RedissonClient redisson;
+    private final Executor rebuildExecutor;
+    /** 本节点已排队/进行中的后台重建实体，避免同一实体重复提交 */
+    private final Set<String> pendingRebuilds = ConcurrentHashMap.newKeySet();
+    /** 分片索引是否已完成存量回填；回填完成前重建退化为按实体 SCAN 枚举分片 */
+    private volatile boolean bitmapIndexReady;
+    /** 稀疏模式成员上限：超过后迁移为位图分片；0 表示关闭稀疏模式 */
+    @Value("${counter.bitmap.sparse-max-members:512}")
+    private int sparseMaxMembers;
     @Value("${counter.rebuild.lock.ttl-ms:5000}")
     private long lockTtlMs;
     @Value("${counter.rebuild.rate.permits:3}")
@@ -50,15 +71,88 @@ public class CounterServiceImpl implements CounterService {
     @Value("${counter.rebuild.backoff.max-ms:30000}")
     private long backoffMaxMs;
 
-    public CounterServiceImpl(StringRedisTemplate redis, CounterEventProducer eventProducer, ApplicationEventPublisher eventPublisher, RedissonClient redisson) {
+    public CounterServiceImpl(StringRedisTemplate redis, CounterEventProducer eventProducer, ApplicationEventPublisher eventPublisher, RedissonClient redisson,
+                              @Qualifier("counterRebuildExecutor") Executor rebuildExecutor) {
         this.redis = redis;
         this.eventProducer = eventProducer;
         this.eventPublisher = eventPublisher;
         this.redisson = redisson;
+        this.rebuildExecutor = rebuildExecutor;
         this.toggleScript = new DefaultRedisScript<>();
         this.toggleScript.setResultType(Long.class);
         // 位图状态原子切换，仅在状态变化时返回 1
         this.toggleScript.setScriptText(TOGGLE_LUA);
+        this.switchScript = new DefaultRedisScript<>();
+        this.switchScript.setResultType(Long.class);
+        // 稀疏模式切换为位图模式：以分片索引是否存在为界原子切换
+        this.switchScript.setScriptText(SWITCH_LUA);
+    }
+
+    /**
+     * 启动时在后台把存量位图分片回填到分片索引（一次性 SCAN，兼容升级前写入的位图）。
+     * 完成后写入全局标记，其他节点与后续重启直接跳过。
+     */
+    @PostConstruct
+    void seedBitmapIndex() {
+        try {
+            rebuildExecutor.execute(() -> {
+                try {
+                    if (bitmapIndexSeeded()) {
+                        return;
+                    }
+                    long seeded = 0;
+                    List<String[]> batch = new ArrayList<>();
+                    try (Cursor<String> cursor = redis.scan(ScanOptions.scanOptions().match("bm:*").count(1000).build())) {
+                        while (cursor.hasNext()) {
+                            String[] parts = cursor.next().split(":", 4); // bm:metric:etype:eid:chunk
+                            int sep = parts.length == 4 ? parts[3].lastIndexOf(':') : -1;
+                            if (sep <= 0) {
+                                continue;
+                            }
+                            batch.add(new String[]{CounterKeys.bitmapIndexKey(parts[1], parts[2], parts[3].substring(0, sep)),
+                                    parts[3].substring(sep + 1)});
+                            if (batch.size() >= 1000) {
+                                seeded += addIndexMembers(batch);
+                            }
+                        }
+                    }
+                    seeded += addIndexMembers(batch);
+                    redis.opsForValue().set(CounterKeys.bitmapIndexSeededKey(), "1");
+                    bitmapIndexReady = true;
+                    log.info("bitmap chunk index seeded shards={}", seeded);
+                } catch (Exception e) {
+                    log.warn("bitmap chunk index seed failed err={}", e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("bitmap chunk index seed rejected");
+        }
+    }
+
+    private boolean bitmapIndexSeeded() {
+        if (!bitmapIndexReady && Boolean.TRUE.equals(redis.hasKey(CounterKeys.bitmapIndexSeededKey()))) {
+            bitmapIndexReady = true;
+        }
+        return bitmapIndexReady;
+    }
+
+    /**
+     * 管道批量 SADD 分片索引成员，完成后清空批次。
+     * @param batch (索引键, 分片号) 列表
+     * @return 写入的条目数
+     */
+    private int addIndexMembers(List<String[]> batch) {
+        int n = batch.size();
+        if (n > 0) {
+            redis.executePipelined((RedisCallback<Object>) connection -> {
+                for (String[] e : batch) {
+                    connection.setCommands().sAdd(e[0].getBytes(StandardCharsets.UTF_8), e[1].getBytes(StandardCharsets.UTF_8));
+                }
+                return null;
+            });
+            batch.clear();
+        }
+        return n;
     }
 
     /**
@@ -114,10 +208,18 @@ public class CounterServiceImpl implements CounterService {
         // 分片内位偏移
         long bit = BitmapShard.bitOf(uid);
         String bmKey = CounterKeys.bitmapKey(metric, etype, eid, chunk);
-        List<String> keys = List.of(bmKey);
-        List<String> args = List.of(String.valueOf(bit), add ? "add" : "remove");
+        // 置位时同一脚本内登记分片号，重建只统计登记过的分片；
+        // 未进入位图模式的实体写稀疏成员集合（存量分片回填完成前不启用稀疏模式，避免与未登记的存量位图重复计数）
+        List<String> keys = List.of(bmKey, CounterKeys.bitmapIndexKey(metric, etype, eid), CounterKeys.sparseMemberKey(metric, etype, eid));
+        int sparseMax = bitmapIndexSeeded() ? Math.max(0, sparseMaxMembers) : 0;
+        List<String> args = List.of(String.valueOf(bit), add ? "add" : "remove", String.valueOf(chunk),
+                String.valueOf(uid), String.valueOf(sparseMax));
         Long changed = redis.execute(toggleScript, keys, args.toArray());
-        boolean ok = changed == 1L;
+        boolean ok = changed != null && (changed == 1L || changed == 2L);
+        if (changed != null && changed == 2L) {
+            // 稀疏成员数超过阈值（或仍有未迁移完的成员）：后台迁移为位图分片
+            schedulePromote(metric, etype, eid);
+        }
         if (ok) {
             int delta = add ? 1 : -1;
             // 产出计数事件（异步聚合），分区按实体维度保证同实体事件顺序
@@ -128,6 +230,60 @@ public class CounterServiceImpl implements CounterService {
         return ok;
     }
 
+    /**
+     * 提交后台稀疏→位图迁移；线程池饱和时放弃，下次状态变化或重建时再提交。
+     */
+    private void schedulePromote(String metric, String etype, String eid) {
+        try {
+            rebuildExecutor.execute(() -> {
+                try {
+                    promote(metric, etype, eid);
+                } catch (Exception e) {
+                    log.warn("sparse member promote failed metric={} etype={} eid={} err={}", metric, etype, eid, e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("sparse member promote rejected metric={} etype={} eid={}", metric, etype, eid);
+        }
+    }
+
+    /**
+     * 把实体的稀疏成员集合迁移为位图分片。
+     * 先由脚本以分片索引键为界原子切换到位图模式（登记全部成员所在分片），此后切换脚本不再写入稀疏集合；
+     * 再在客户端取出成员，按分片键显式拼出 KEYS 逐个迁移（每个成员的 SREM 与 SETBIT 在同一脚本内完成），
+     * 迁移期间任一时刻每个成员恰好处于稀疏集合或位图之一。重复执行是幂等的。
+     */
+    private void promote(String metric, String etype, String eid) {
+        String idxKey = CounterKeys.bitmapIndexKey(metric, etype, eid);
+        String spKey = CounterKeys.sparseMemberKey(metric, etype, eid);
+        redis.execute(switchScript, List.of(idxKey, spKey), String.valueOf(BitmapShard.CHUNK_SIZE));
+
+        Set<String> members = redis.opsForSet().members(spKey);
+        if (members == null || members.isEmpty()) {
+            return;
+        }
+        byte[] sp = spKey.getBytes(StandardCharsets.UTF_8);
+        List<Object> res = redis.executePipelined((RedisCallback<Object>) connection -> {
+            // 同一管道内先加载脚本，后续 EVALSHA 不会遇到 NOSCRIPT
+            connection.scriptingCommands().scriptLoad(MIGRATE_LUA.getBytes(StandardCharsets.UTF_8));
+            String migrateSha = migrateScript.getSha1();
+            for (String m : members) {
+                long uid;
+                try {
+                    uid = Long.parseLong(m);
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                byte[] bm = CounterKeys.bitmapKey(metric, etype, eid, BitmapShard.chunkOf(uid)).getBytes(StandardCharsets.UTF_8);
+                connection.scriptingCommands().evalSha(migrateSha, ReturnType.INTEGER, 2, bm, sp,
+                        String.valueOf(BitmapShard.bitOf(uid)).getBytes(StandardCharsets.UTF_8),
+                        m.getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+        log.info("sparse members promoted metric={} etype={} eid={} members={}", metric, etype, eid, Math.max(0, res.size() - 1));
+    }
+
     /**
      * 获取实体计数汇总（SDS）。
      * 若缺失或结构异常则触发基于位图的事实重建，并清理对应聚合字段。
@@ -143,71 +299,14 @@ public class CounterServiceImpl implements CounterService {
         Map<String, Long> result = new LinkedHashMap<>();
 
         if (needRebuild) {
-            // 限流与指数退避：避免在热点实体上触发重建风暴
-            if (inBackoff(entityType, entityId)) {
+            Map<String, Long> rebuilt = rebuildSds(entityType, entityId, metrics);
+            if (rebuilt == null) {
                 for (String m : metrics) {
                     result.put(m, 0L);
                 }
                 return result;
             }
-
-            if (!allowedByRateLimiter(entityType, entityId)) {
-                escalateBackoff(entityType, entityId);
-                for (String m : metrics) {
-                    result.put(m, 0L);
-                }
-                return result;
-            }
-
-            String lockKey = String.format("lock:sds-rebuild:%s:%s", entityType, entityId);
-
-            RLock lock = redisson.getLock(lockKey);
-            boolean locked = false;
-
-            try {
-                // 使用 Redisson 看门狗机制：不指定租期，自动续约（由 Redisson 的 lockWatchdogTimeout 控制）
-                locked = lock.tryLock(0L, TimeUnit.MILLISECONDS);
-                if (!locked) {
-                    escalateBackoff(entityType, entityId);
-                    for (String m : metrics) {
-                        result.put(m, 0L);
-                    }
-                    return result;
-                }
-                // 依据位图分片统计真实计数（仅由持锁者执行重建）
-                byte[] newSds = new byte[expectedLen];
-                List<String> rebuildFields = new ArrayList<>();
-                for (String m : metrics) {
-                    Integer idx = CounterSchema.NAME_TO_IDX.get(m);
-                    if (idx == null) {
-                        continue;
-                    }
-                    long sum = bitCountShardsPipelined(m, entityType, entityId);
-                    writeInt32BE(newSds, idx * CounterSchema.FIELD_SIZE, sum);
-                    result.put(m, sum);
-                    rebuildFields.add(String.valueOf(idx));
-                }
-                // 回写SDS并清理聚合桶，避免重复加算
-                setRaw(sdsKey, newSds);
-                if (!rebuildFields.isEmpty()) {
-                    String aggKey = CounterKeys.aggKey(entityType, entityId);
-                    redis.opsForHash().delete(aggKey, rebuildFields.toArray());
-                }
-                resetBackoff(entityType, entityId);
-            } catch (InterruptedException ie) {
-                Thread.currentThread().interrupt();
-                escalateBackoff(entityType, entityId);
-                for (String m : metrics) {
-                    result.put(m, 0L);
-                }
-                return result;
-            } finally {
-                if (locked) {
-                    try {
-                        lock.unlock();
-                    } catch (Exception ignore) {}
-                }
-            }
+            result.putAll(rebuilt);
         } else {
             for (String m : metrics) {
                 Integer idx = CounterSchema.NAME_TO_IDX.get(m);
@@ -220,9 +319,89 @@ public class CounterServiceImpl implements CounterService {
         return result;
     }
 
+    /**
+     * 基于位图分片重建单个实体的 SDS，并清理对应聚合字段。
+     * 受指数退避、限流与分布式锁保护，任一条件不满足时放弃本次重建。
+     * @param entityType 实体类型
+     * @param entityId 实体 ID
+     * @param metrics 需要重建的指标
+     * @return 重建后的计数；放弃重建时返回 null
+     */
+    private Map<String, Long> rebuildSds(String entityType, String entityId, List<String> metrics) {
+        // 限流与指数退避：避免在热点实体上触发重建风暴
+        if (inBackoff(entityType, entityId)) {
+            return null;
+        }
+
+        if (!allowedByRateLimiter(entityType, entityId)) {
+            escalateBackoff(entityType, entityId);
+            return null;
+        }
+
+        String sdsKey = CounterKeys.sdsKey(entityType, entityId);
+        int expectedLen = CounterSchema.SCHEMA_LEN * CounterSchema.FIELD_SIZE;
+        String lockKey = String.format("lock:sds-rebuild:%s:%s", entityType, entityId);
+
+        RLock lock = redisson.getLock(lockKey);
+        boolean locked = false;
+
+        try {
+            // 使用 Redisson 看门狗机制：不指定租期，自动续约（由 Redisson 的 lockWatchdogTimeout 控制）
+            locked = lock.tryLock(0L, TimeUnit.MILLISECONDS);
+            if (!locked) {
+                escalateBackoff(entityType, entityId);
+                return null;
+            }
+            // 依据位图分片统计真实计数（仅由持锁者执行重建）
+            // 无位图事实层的指标（浏览数）无法重建：若 SDS 已被并发写成合法结构则保留其值，否则从 0 开始
+            Map<String, Long> result = new LinkedHashMap<>();
+            byte[] current = getRaw(sdsKey);
+            byte[] newSds = (current != null && current.length == expectedLen) ? current : new byte[expectedLen];
+            List<String> rebuildFields = new ArrayList<>();
+            for (String m : metrics) {
+                Integer idx = CounterSchema.NAME_TO_IDX.get(m);
+                if (idx == null) {
+                    continue;
+                }
+                if (!CounterSchema.BITMAP_METRICS.contains(m)) {
+                    result.put(m, readInt32BE(newSds, idx * CounterSchema.FIELD_SIZE));
+                    continue;
+                }
+                long sum = countFromFacts(m, entityType, entityId);
+                if (sum < 0) {
+                    // 稀疏成员正在迁移为位图，事实层暂不可一致读取：放弃本次重建，退避后再试
+                    escalateBackoff(entityType, entityId);
+                    return null;
+                }
+                writeInt32BE(newSds, idx * CounterSchema.FIELD_SIZE, sum);
+                result.put(m, sum);
+                rebuildFields.add(String.valueOf(idx));
+            }
+            // 回写SDS并清理聚合桶，避免重复加算
+            setRaw(sdsKey, newSds);
+            if (!rebuildFields.isEmpty()) {
+                String aggKey = CounterKeys.aggKey(entityType, entityId);
+                redis.opsForHash().delete(aggKey, rebuildFields.toArray());
+            }
+            resetBackoff(entityType, entityId);
+            return result;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            escalateBackoff(entityType, entityId);
+            return null;
+        } finally {
+            if (locked) {
+                try {
+                    lock.unlock();
+                } catch (Exception ignore) {}
+            }
+        }
+    }
+
     /**
      * 批量获取实体计数（管道批量 GET 降低 RTT）。
-     * 缺失或结构异常（长度不符）时按零返回，保证接口稳定。
+     * 缺失或结构异常（长度不符）时按零返回，保证接口稳定；这些实体提交到后台批量重建，
+     * 请求路径上不加锁、不限流、不扫描位图，固定一次往返。
      * @param entityType 实体类型
      * @param entityIds 实体ID列表
      * @param metrics 指标名列表
@@ -240,15 +419,10 @@ public class CounterServiceImpl implements CounterService {
             keys.add(CounterKeys.sdsKey(entityType, eid));
         }
 
-        // 管道批量 GET：将多个 SDS 读取合并到一次往返
-        List<Object> raws = redis.executePipelined((RedisCallback<Object>) connection -> {
-            for (String k : keys) {
-                connection.stringCommands().get(k.getBytes(StandardCharsets.UTF_8));
-            }
-            return null;
-        });
+        List<Object> raws = getRawBatch(keys);
 
         int expectedLen = CounterSchema.SCHEMA_LEN * CounterSchema.FIELD_SIZE;
+        List<String> misses = new ArrayList<>();
         for (int i = 0; i < entityIds.size(); i++) {
             String eid = entityIds.get(i);
             Object rawObj = i < raws.size() ? raws.get(i) : null;
@@ -267,43 +441,178 @@ public class CounterServiceImpl implements CounterService {
                 for (String name : metrics) {
                     m.put(name, 0L); // 缺失或异常结构时补零，避免接口失败与重建风暴
                 }
+                misses.add(eid);
             }
             out.put(eid, m);
         }
+        if (!misses.isEmpty()) {
+            scheduleRebuild(entityType, misses);
+        }
         return out;
     }
 
     /**
-     * 是否点赞判定：基于分片位图在分片内做位测试。
+     * 提交后台批量重建：同一实体在本节点排队期间只提交一次；线程池饱和时直接丢弃，下次读取时再提交。
+     * @param entityType 实体类型
+     * @param entityIds SDS 缺失或结构异常的实体
+     */
+    private void scheduleRebuild(String entityType, List<String> entityIds) {
+        List<String> accepted = new ArrayList<>(entityIds.size());
+        for (String eid : entityIds) {
+            if (pendingRebuilds.add(entityType + ":" + eid)) {
+                accepted.add(eid);
+            }
+        }
+        if (accepted.isEmpty()) {
+            return;
+        }
+        try {
+            rebuildExecutor.execute(() -> rebuildBatch(entityType, accepted));
+        } catch (RejectedExecutionException e) {
+            for (String eid : accepted) {
+                pendingRebuilds.remove(entityType + ":" + eid);
+            }
+        }
+    }
+
+    /**
+     * 后台批量重建：先一次管道复查 SDS（可能已被其他节点重建），仍缺失的实体逐个按位图重建全部指标。
+     * @param entityType 实体类型
+     * @param entityIds 待重建实体
+     */
+    private void rebuildBatch(String entityType, List<String> entityIds) {
+        try {
+            List<String> keys = new ArrayList<>(entityIds.size());
+            for (String eid : entityIds) {
+                keys.add(CounterKeys.sdsKey(entityType, eid));
+            }
+            List<Object> raws = getRawBatch(keys);
+            int expectedLen = CounterSchema.SCHEMA_LEN * CounterSchema.FIELD_SIZE;
+            List<String> metrics = new ArrayList<>(CounterSchema.SUPPORTED_METRICS);
+            int rebuilt = 0;
+            for (int i = 0; i < entityIds.size(); i++) {
+                Object rawObj = i < raws.size() ? raws.get(i) : null;
+                if (rawObj instanceof byte[] raw && raw.length == expectedLen) {
+                    continue;
+                }
+                try {
+                    if (rebuildSds(entityType, entityIds.get(i), metrics) != null) {
+                        rebuilt++;
+                    }
+                } catch (Exception e) {
+                    log.warn("sds rebuild failed etype={} eid={}", entityType, entityIds.get(i), e);
+                }
+            }
+            log.debug("sds batch rebuild etype={} requested={} rebuilt={}", entityType, entityIds.size(), rebuilt);
+        } finally {
+            for (String eid : entityIds) {
+                pendingRebuilds.remove(entityType + ":" + eid);
+            }
+        }
+    }
+
+    /**
+     * 是否点赞判定：稀疏成员集合或分片位图任一命中即为已点赞。
      * 毫秒级读取，不依赖计数快照。
      */
     @Override
     public boolean isLiked(String entityType, String entityId, long userId) {
-        long chunk = BitmapShard.chunkOf(userId);
-        long bit = BitmapShard.bitOf(userId);
-        return getBit(CounterKeys.bitmapKey("like", entityType, entityId, chunk), bit);
+        return isMember("like", entityType, entityId, userId);
     }
 
     /**
-     * 是否收藏判定：同点赞，基于分片位图位测试。
+     * 是否收藏判定：同点赞，稀疏成员集合或分片位图任一命中。
      */
     @Override
     public boolean isFaved(String entityType, String entityId, long userId) {
+        return isMember("fav", entityType, entityId, userId);
+    }
+
+    /**
+     * 批量判断点赞/收藏状态：同一用户在任意实体上都落在相同的分片号与分片内偏移，
+     * 因此只需按 (实体, 指标) 拼出稀疏集合键与分片键，在一次管道中批量 SISMEMBER + GETBIT。
+     * @param entityType 实体类型
+     * @param entityIds 实体ID列表
+     * @param userId 用户ID
+     * @param metrics 指标名列表（like/fav）
+     * @return 每个实体的指标状态映射；未知指标及无位图的指标被忽略
+     */
+    @Override
+    public Map<String, Map<String, Boolean>> getUserStatesBatch(String entityType, List<String> entityIds, long userId, List<String> metrics) {
+        Map<String, Map<String, Boolean>> out = new LinkedHashMap<>();
+        if (entityIds == null || entityIds.isEmpty() || metrics == null || metrics.isEmpty()) {
+            return out;
+        }
+
+        List<String> names = new ArrayList<>(metrics.size());
+        for (String m : metrics) {
+            if (CounterSchema.BITMAP_METRICS.contains(m)) {
+                names.add(m);
+            }
+        }
+        if (names.isEmpty()) {
+            return out;
+        }
+
         long chunk = BitmapShard.chunkOf(userId);
         long bit = BitmapShard.bitOf(userId);
-        return getBit(CounterKeys.bitmapKey("fav", entityType, entityId, chunk), bit);
+        byte[] member = String.valueOf(userId).getBytes(StandardCharsets.UTF_8);
+        List<byte[]> sparseKeys = new ArrayList<>(entityIds.size() * names.size());
+        List<byte[]> bmKeys = new ArrayList<>(entityIds.size() * names.size());
+        for (String eid : entityIds) {
+            for (String m : names) {
+                sparseKeys.add(CounterKeys.sparseMemberKey(m, entityType, eid).getBytes(StandardCharsets.UTF_8));
+                bmKeys.add(CounterKeys.bitmapKey(m, entityType, eid, chunk).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        // 管道批量 SISMEMBER + GETBIT：N 个实体 × M 个指标合并为一次往返
+        List<Object> res = redis.executePipelined((RedisCallback<Object>) connection -> {
+            for (int k = 0; k < bmKeys.size(); k++) {
+                connection.setCommands().sIsMember(sparseKeys.get(k), member);
+                connection.stringCommands().getBit(bmKeys.get(k), bit);
+            }
+            return null;
+        });
+
+        int i = 0;
+        for (String eid : entityIds) {
+            Map<String, Boolean> m = new LinkedHashMap<>();
+            for (String name : names) {
+                Object sparse = 2 * i < res.size() ? res.get(2 * i) : null;
+                Object dense = 2 * i + 1 < res.size() ? res.get(2 * i + 1) : null;
+                m.put(name, Boolean.TRUE.equals(sparse) || Boolean.TRUE.equals(dense));
+                i++;
+            }
+            out.put(eid, m);
+        }
+        return out;
     }
 
     /**
-     * 读取位图某偏移位（GETBIT）。
-     * @param key 位图分片键
-     * @param offset 分片内位偏移
-     * @return 位是否为 1
+     * 判断用户是否在实体的某指标中：一次管道先 SISMEMBER 稀疏集合，再 GETBIT 分片位图。
+     * 迁移只会从稀疏到位图且在脚本内原子完成，按此顺序读取不会在迁移瞬间同时读到两边为空。
+     * @param metric 指标名称（like/fav）
+     * @param entityType 实体类型
+     * @param entityId 实体 ID
+     * @param userId 用户 ID
+     * @return 是否命中
      */
-    private boolean getBit(String key, long offset) {
-        Boolean bit = redis.execute((RedisCallback<Boolean>) connection ->
-                connection.stringCommands().getBit(key.getBytes(StandardCharsets.UTF_8), offset));
-        return Boolean.TRUE.equals(bit);
+    private boolean isMember(String metric, String entityType, String entityId, long userId) {
+        byte[] sparseKey = CounterKeys.sparseMemberKey(metric, entityType, entityId).getBytes(StandardCharsets.UTF_8);
+        byte[] bmKey = CounterKeys.bitmapKey(metric, entityType, entityId, BitmapShard.chunkOf(userId)).getBytes(StandardCharsets.UTF_8);
+        long bit = BitmapShard.bitOf(userId);
+        List<Object> res = redis.executePipelined((RedisCallback<Object>) connection -> {
+            connection.setCommands().sIsMember(sparseKey, String.valueOf(userId).getBytes(StandardCharsets.UTF_8));
+            connection.stringCommands().getBit(bmKey, bit);
+            return null;
+        });
+        for (Object o : res) {
+            if (Boolean.TRUE.equals(o)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -314,6 +623,22 @@ public class CounterServiceImpl implements CounterService {
                 connection.stringCommands().get(key.getBytes(StandardCharsets.UTF_8)));
     }
 
+    /**
+     * 管道批量读取 SDS 原始字节。
+     * 结果不经过模板的字符串反序列化（StringRedisTemplate 会把 byte[] 转成 String），保持二进制原样。
+     * @param keys SDS 键列表
+     * @return 与 keys 一一对应的原始值（缺失为 null）
+     */
+    private List<Object> getRawBatch(List<String> keys) {
+        // 管道批量 GET：将多个 SDS 读取合并到一次往返
+        return redis.executePipelined((RedisCallback<Object>) connection -> {
+            for (String k : keys) {
+                connection.stringCommands().get(k.getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        }, null);
+    }
+
     /**
      * 写入 SDS 原始字节（覆盖式写）。
      */
@@ -408,13 +733,57 @@ public class CounterServiceImpl implements CounterService {
     }
 
     /**
-     * 基于位图分片进行管道化 BITCOUNT 汇总，用于按事实重建计数。
-     * 说明：当前使用 KEYS 枚举分片（生产建议维护索引集合），结果按分片 BITCOUNT 求和。
+     * 按事实层统计实体某指标的真实计数，用于重建 SDS。
+     * 分片索引回填完成后按索引登记的分片键显式管道 BITCOUNT，开销只与该实体的分片数相关，不扫描键空间：
+     * 索引不存在即为稀疏模式，计数为成员集合基数；索引存在而稀疏集合仍有成员说明迁移未完成，
+     * 此时补交迁移并返回 -1，由调用方放弃本次重建。回填完成前按实体前缀 SCAN 枚举分片（不使用阻塞的 KEYS）。
+     * @return 真实计数；迁移进行中返回 -1
      */
-    private long bitCountShardsPipelined(String metric, String etype, String eid) {
+    private long countFromFacts(String metric, String etype, String eid) {
+        if (bitmapIndexSeeded()) {
+            byte[] idx = CounterKeys.bitmapIndexKey(metric, etype, eid).getBytes(StandardCharsets.UTF_8);
+            byte[] sp = CounterKeys.sparseMemberKey(metric, etype, eid).getBytes(StandardCharsets.UTF_8);
+            // 先读成员数再读索引：索引为空说明读成员数时尚未切换，成员数即为真实计数
+            List<Object> head = redis.executePipelined((RedisCallback<Object>) connection -> {
+                connection.setCommands().sCard(sp);
+                connection.setCommands().sMembers(idx);
+                return null;
+            });
+            long sparse = head.size() > 0 && head.get(0) instanceof Number n ? n.longValue() : 0L;
+            Collection<?> chunks = head.size() > 1 && head.get(1) instanceof Collection<?> c ? c : List.of();
+            if (chunks.isEmpty()) {
+                return sparse;
+            }
+            List<byte[]> chunkKeys = new ArrayList<>(chunks.size());
+            for (Object c : chunks) {
+                chunkKeys.add(CounterKeys.bitmapKey(metric, etype, eid, Long.parseLong(String.valueOf(c))).getBytes(StandardCharsets.UTF_8));
+            }
+            // 切换后稀疏集合只减不增：BITCOUNT 之前成员数为 0，则全部成员已落入位图
+            List<Object> res = redis.executePipelined((RedisCallback<Object>) connection -> {
+                connection.setCommands().sCard(sp);
+                for (byte[] k : chunkKeys) {
+                    connection.stringCommands().bitCount(k);
+                }
+                return null;
+            });
+            if (!res.isEmpty() && res.get(0) instanceof Number n && n.longValue() > 0) {
+                schedulePromote(metric, etype, eid);
+                return -1L;
+            }
+            long sum = 0L;
+            for (int i = 1; i < res.size(); i++) {
+                if (res.get(i) instanceof Number n) {
+                    sum += n.longValue();
+                }
+            }
+            return sum;
+        }
+
+        List<String> keys = new ArrayList<>();
         String pattern = String.format("bm:%s:%s:%s:*", metric, etype, eid);
-        // 生产环境建议以索引集合替代 KEYS
-        Set<String> keys = redis.keys(pattern); 
+        try (Cursor<String> cursor = redis.scan(ScanOptions.scanOptions().match(pattern).count(1000).build())) {
+            cursor.forEachRemaining(keys::add);
+        }
         if (keys.isEmpty()) return 0L;
 
         // 管道批量 BITCOUNT 汇总
@@ -435,20 +804,72 @@ public class CounterServiceImpl implements CounterService {
     }
 
     // Redis 内嵌 Lua（Redis 5/6 的 Lua 5.1），位图原子切换（分片内偏移）
+    // KEYS[1]=分片键, KEYS[2]=分片索引, KEYS[3]=稀疏成员集合；脚本只访问声明的 KEYS
+    // ARGV = bit, op, chunk, uid, sparseMax(0=关闭稀疏模式)
+    // 返回 1=状态已变化，2=状态已变化且需迁移为位图（成员数超过 sparseMax 或仍有未迁移成员），0=无变化
+    // 分片索引存在即为位图模式，此时成员可能仍在稀疏集合中（迁移未完成），判定与移除同时检查两处。
     private static final String TOGGLE_LUA = """
             local bmKey = KEYS[1]
+            local idxKey = KEYS[2] -- 分片索引
+            local spKey = KEYS[3] -- 稀疏成员集合
             local offset = tonumber(ARGV[1])
             local op = ARGV[2] -- 'add' or 'remove'
+            local uid = ARGV[4]
+            local sparseMax = tonumber(ARGV[5])
+
+            if redis.call('EXISTS', idxKey) == 0 and (sparseMax > 0 or redis.call('EXISTS', spKey) == 1) then
+              if op == 'add' then
+                if redis.call('SADD', spKey, uid) == 0 then return 0 end
+              elseif op == 'remove' then
+                if redis.call('SREM', spKey, uid) == 0 then return 0 end
+              else
+                return -1
+              end
+              -- 稀疏模式已关闭时遗留成员也一并迁移
+              if redis.call('SCARD', spKey) > sparseMax then return 2 end
+              return 1
+            end
+
+            local inSet = redis.call('SISMEMBER', spKey, uid)
             local prev = redis.call('GETBIT', bmKey, offset)
             if op == 'add' then
-              if prev == 1 then return 0 end
+              if prev == 1 or inSet == 1 then return 0 end
               redis.call('SETBIT', bmKey, offset, 1)
-              return 1
+              redis.call('SADD', idxKey, ARGV[3])
             elseif op == 'remove' then
-              if prev == 0 then return 0 end
+              if inSet == 1 then
+                redis.call('SREM', spKey, uid)
+              elseif prev == 0 then
+                return 0
+              end
               redis.call('SETBIT', bmKey, offset, 0)
+            else
+              return -1
+            end
+            if redis.call('EXISTS', spKey) == 1 then return 2 end
+            return 1
+            """;
+
+    // 稀疏→位图切换：仅当分片索引不存在时，按全部成员所在分片登记索引（之后切换脚本不再写稀疏集合）
+    // KEYS[1]=分片索引, KEYS[2]=稀疏成员集合；ARGV[1]=分片位数
+    // 分片号按 uid 以双精度计算（要求 uid < 2^53，自增用户ID满足）
+    private static final String SWITCH_LUA = """
+            if redis.call('EXISTS', KEYS[1]) == 1 then return 0 end
+            local chunkSize = tonumber(ARGV[1])
+            local members = redis.call('SMEMBERS', KEYS[2])
+            for _, m in ipairs(members) do
+              redis.call('SADD', KEYS[1], string.format('%d', math.floor(tonumber(m) / chunkSize)))
+            end
+            return #members
+            """;
+
+    // 单个成员迁移：从稀疏集合移除并在位图分片置位，两步在同一脚本内完成
+    // KEYS[1]=分片键, KEYS[2]=稀疏成员集合；ARGV[1]=bit, ARGV[2]=uid
+    private static final String MIGRATE_LUA = """
+            if redis.call('SREM', KEYS[2], ARGV[2]) == 1 then
+              redis.call('SETBIT', KEYS[1], ARGV[1], 1)
               return 1
             end
-            return -1
+            return 0
             """;
 }
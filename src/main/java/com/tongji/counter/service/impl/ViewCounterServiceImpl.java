@@ -0,0 +1,221 @@
+package com.tongji.counter.service.impl;
+
+import com.tongji.counter.schema.CounterKeys;
+import com.tongji.counter.schema.CounterSchema;
+import com.tongji.counter.service.ViewCounterService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 浏览计数服务实现（内存登记 + 按天位图去重 + 聚合桶折叠）。
+ *
+ * <p>职责：</p>
+ * - 读路径只在内存中按实体登记浏览用户与匿名浏览次数，不访问 Redis；
+ * - 每秒将登记结果批量刷写：登录用户按天 SADD 到去重集合（新增成员才计数；整数成员为 intset 编码，
+ *   长尾内容只占与浏览人数成正比的空间），匿名浏览直接计数；
+ * - 写入聚合桶失败时，已去重的增量退回内存待下一轮重试，不会因去重标记已写入而丢失；
+ * - 去重后的增量写入聚合桶 read 段并登记待刷写索引，由 {@link com.tongji.counter.event.CounterAggregationConsumer} 折叠到 SDS，
+ *   折叠时再把实体加入待同步集合（保证搜索索引同步读到的是折叠后的浏览数）。
+ */
+@Service
+public class ViewCounterServiceImpl implements ViewCounterService {
+    private static final Logger log = LoggerFactory.getLogger(ViewCounterServiceImpl.class);
+    // 待刷写实体数上限：Redis 长时间不可用时丢弃新登记，避免内存无限增长
+    private static final int MAX_PENDING = 100_000;
+    // 去重集合保留到次日结束后，跨零点的重复浏览仍可判重
+    private static final Duration DEDUP_TTL = Duration.ofHours(48);
+    private static final DateTimeFormatter DAY = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private final StringRedisTemplate redis;
+    /** 实体（etype:eid） -> 本轮待刷写的浏览；仅在 compute 内修改，刷写时整条移除 */
+    private final ConcurrentHashMap<String, Pending> pending = new ConcurrentHashMap<>();
+    /** 因待刷写实体过多而丢弃的登记数（每轮刷写时上报并清零） */
+    private final LongAdder dropped = new LongAdder();
+
+    public ViewCounterServiceImpl(StringRedisTemplate redis) {
+        this.redis = redis;
+    }
+
+    /**
+     * 登记一次浏览（仅内存操作）。
+     */
+    @Override
+    public void recordView(String entityType, String entityId, Long userId) {
+        String key = entityType + ":" + entityId;
+        if (pending.size() >= MAX_PENDING && !pending.containsKey(key)) {
+            dropped.increment();
+            return;
+        }
+        pending.compute(key, (k, p) -> {
+            if (p == null) {
+                p = new Pending(entityType, entityId);
+            }
+            if (userId == null) {
+                p.anonymous++;
+            } else {
+                p.users.add(userId);
+            }
+            return p;
+        });
+    }
+
+    /**
+     * 刷写失败时把本轮数据退回待刷写表，与期间新登记的浏览合并，下一轮重试。
+     * @param p 本轮取出的登记
+     * @param deduped 已完成去重、只需计数的增量（未去重时为 0）
+     * @param withUsers 是否连同登录用户一并退回（去重未完成时）
+     */
+    private void requeue(Pending p, long deduped, boolean withUsers) {
+        pending.compute(p.entityType + ":" + p.entityId, (k, cur) -> {
+            if (cur == null) {
+                cur = new Pending(p.entityType, p.entityId);
+            }
+            cur.counted += deduped;
+            if (withUsers) {
+                cur.users.addAll(p.users);
+                cur.anonymous += p.anonymous;
+                cur.counted += p.counted;
+            }
+            return cur;
+        });
+    }
+
+    /**
+     * 批量刷写登记的浏览。
+     * 固定延迟 1s：一次管道完成全部去重 SADD，一次管道写入聚合桶与待刷写索引；任一步失败时数据退回内存重试。
+     */
+    @Scheduled(fixedDelay = 1000L)
+    public void flush() {
+        long lost = dropped.sumThenReset();
+        if (lost > 0) {
+            log.warn("view records dropped={} (pending full)", lost);
+        }
+        List<Pending> batch = drain();
+        if (batch.isEmpty()) {
+            return;
+        }
+        String day = LocalDate.now().format(DAY);
+        Map<Pending, Long> deltas;
+        try {
+            deltas = dedup(batch, day);
+        } catch (Exception e) {
+            // 去重未完成：原样退回（已写入的去重成员在重试时不再计数，至多少计本轮失败的部分）
+            batch.forEach(p -> requeue(p, 0L, true));
+            log.warn("view dedup failed entities={} err={}", batch.size(), e.getMessage());
+            return;
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        byte[] field = String.valueOf(CounterSchema.IDX_READ).getBytes(StandardCharsets.UTF_8);
+        byte[] aggDirtyKey = CounterKeys.aggDirtyKey().getBytes(StandardCharsets.UTF_8);
+        try {
+            redis.executePipelined((RedisCallback<Object>) connection -> {
+                for (Map.Entry<Pending, Long> e : deltas.entrySet()) {
+                    Pending p = e.getKey();
+                    byte[] aggKey = CounterKeys.aggKey(p.entityType, p.entityId).getBytes(StandardCharsets.UTF_8);
+                    // 先写聚合桶再登记刷写索引：两者之间发生的刷写最多留下一个空成员，不会遗漏增量
+                    connection.hashCommands().hIncrBy(aggKey, field, e.getValue());
+                    connection.setCommands().sAdd(aggDirtyKey,
+                            CounterKeys.aggDirtyMember(p.entityType, p.entityId).getBytes(StandardCharsets.UTF_8));
+                }
+                return null;
+            });
+            log.debug("view flush entities={}", deltas.size());
+        } catch (Exception e) {
+            // 去重成员已写入，重试时无法再次判重：退回的是去重后的增量
+            deltas.forEach((p, d) -> requeue(p, d, false));
+            log.warn("view flush failed entities={} err={}", deltas.size(), e.getMessage());
+        }
+    }
+
+    private List<Pending> drain() {
+        List<Pending> out = new ArrayList<>();
+        for (String key : pending.keySet()) {
+            Pending p = pending.remove(key);
+            if (p != null) {
+                out.add(p);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * 按天集合去重：SADD 返回新增成员数，为 1 的用户是当天首次浏览。
+     * @return 实体 -> 去重后的浏览增量（不含增量为 0 的实体）
+     */
+    private Map<Pending, Long> dedup(List<Pending> batch, String day) {
+        List<byte[]> setKeys = new ArrayList<>();
+        List<byte[]> members = new ArrayList<>();
+        List<Pending> owners = new ArrayList<>();
+        Set<String> touched = new LinkedHashSet<>();
+        for (Pending p : batch) {
+            String k = CounterKeys.viewDedupKey(p.entityType, p.entityId, day);
+            for (Long uid : p.users) {
+                setKeys.add(k.getBytes(StandardCharsets.UTF_8));
+                members.add(String.valueOf(uid).getBytes(StandardCharsets.UTF_8));
+                owners.add(p);
+                touched.add(k);
+            }
+        }
+
+        List<Object> res = setKeys.isEmpty() ? List.of() : redis.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < setKeys.size(); i++) {
+                connection.setCommands().sAdd(setKeys.get(i), members.get(i));
+            }
+            for (String k : touched) {
+                connection.keyCommands().expire(k.getBytes(StandardCharsets.UTF_8), DEDUP_TTL.getSeconds());
+            }
+            return null;
+        });
+
+        Map<Pending, Long> deltas = new LinkedHashMap<>();
+        for (Pending p : batch) {
+            if (p.anonymous + p.counted > 0) {
+                deltas.put(p, p.anonymous + p.counted);
+            }
+        }
+        for (int i = 0; i < owners.size(); i++) {
+            Object added = i < res.size() ? res.get(i) : null;
+            if (added instanceof Number n && n.longValue() > 0) {
+                deltas.merge(owners.get(i), 1L, Long::sum);
+            }
+        }
+        return deltas;
+    }
+
+    /**
+     * 单个实体本轮待刷写的浏览：登录用户集合（本轮内已去重）、匿名浏览次数与上轮刷写失败退回的已去重增量。
+     */
+    private static final class Pending {
+        private final String entityType;
+        private final String entityId;
+        private final Set<Long> users = new HashSet<>();
+        private long anonymous;
+        private long counted;
+
+        Pending(String entityType, String entityId) {
+            this.entityType = entityType;
+            this.entityId = entityId;
+        }
+    }
+}
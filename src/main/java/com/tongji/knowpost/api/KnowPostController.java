@@ -10,6 +10,8 @@ import com.tongji.knowpost.api.dto.FeedPageResponse;
 import com.tongji.knowpost.service.KnowPostService;
 import com.tongji.knowpost.service.KnowPostFeedService;
 import com.tongji.knowpost.api.dto.KnowPostDetailResponse;
+import com.tongji.knowpost.api.dto.KnowPostDetailBatchRequest;
+import com.tongji.knowpost.api.dto.KnowPostDetailBatchResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
@@ -110,15 +112,32 @@ public class KnowPostController {
 
     /**
      * 首页 Feed（公开、已发布）分页查询；默认每页 20，最大 50。
+     * 携带 cursor 参数时走游标模式（空串为首页，之后传上一页返回的 nextCursor），否则按页码分页。
      */
     @GetMapping("/feed")
     public FeedPageResponse feed(@RequestParam(value = "page", defaultValue = "1") int page,
                                  @RequestParam(value = "size", defaultValue = "20") int size,
+                                 @RequestParam(value = "cursor", required = false) String cursor,
                                  @AuthenticationPrincipal Jwt jwt) {
         Long userId = (jwt == null) ? null : jwtService.extractUserId(jwt);
+        if (cursor != null) {
+            return feedService.getPublicFeedByCursor(cursor, size, userId);
+        }
         return feedService.getPublicFeed(page, size, userId);
     }
 
+    /**
+     * 关注时间线（关注作者的发布，游标分页）；默认每页 20，最大 50。
+     * 首页不传 cursor 或传空串，之后传上一页返回的 nextCursor。
+     */
+    @GetMapping("/feed/following")
+    public FeedPageResponse followingFeed(@RequestParam(value = "cursor", required = false) String cursor,
+                                          @RequestParam(value = "size", defaultValue = "20") int size,
+                                          @AuthenticationPrincipal Jwt jwt) {
+        long userId = jwtService.extractUserId(jwt);
+        return feedService.getFollowingFeed(userId, cursor, size);
+    }
+
     /**
      * 我的知文（当前用户已发布）分页查询；默认每页 20，最大 50。
      */
@@ -139,4 +158,14 @@ public class KnowPostController {
         Long userId = (jwt == null) ? null : jwtService.extractUserId(jwt);
         return service.getDetail(id, userId);
     }
+
+    /**
+     * 批量知文详情（最多 50 个 ID，按请求顺序返回；不存在或无权限查看的 ID 列入 missing）。
+     */
+    @PostMapping("/details")
+    public KnowPostDetailBatchResponse details(@Valid @RequestBody KnowPostDetailBatchRequest request,
+                                               @AuthenticationPrincipal Jwt jwt) {
+        Long userId = (jwt == null) ? null : jwtService.extractUserId(jwt);
+        return service.getDetails(request.ids(), userId);
+    }
 }
\ No newline at end of file
@@ -4,10 +4,13 @@ import java.util.List;
 
 /**
  * 首页 Feed 分页响应。
+ *
+ * <p>nextCursor 仅在游标模式下返回，用于请求下一页；页码模式下为 null。</p>
  */
 public record FeedPageResponse(
         List<FeedItemResponse> items,
         int page,
         int size,
-        boolean hasMore
+        boolean hasMore,
+        String nextCursor
 ) {}
\ No newline at end of file
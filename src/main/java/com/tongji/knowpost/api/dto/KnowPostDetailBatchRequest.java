@@ -0,0 +1,10 @@
+package com.tongji.knowpost.api.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+public record KnowPostDetailBatchRequest(
+        @NotEmpty @Size(max = 50) List<Long> ids
+) {}
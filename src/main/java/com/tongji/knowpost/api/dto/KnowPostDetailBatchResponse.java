@@ -0,0 +1,11 @@
+package com.tongji.knowpost.api.dto;
+
+import java.util.List;
+
+/**
+ * 批量详情响应：items 按请求顺序排列；missing 为不存在或无权限查看的 ID。
+ */
+public record KnowPostDetailBatchResponse(
+        List<KnowPostDetailResponse> items,
+        List<String> missing
+) {}
@@ -0,0 +1,265 @@
+package com.tongji.knowpost.cache;
+
+import com.tongji.knowpost.api.dto.FeedItemResponse;
+import com.tongji.knowpost.api.dto.FeedPageResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Feed 缓存紧凑二进制编解码（条目片段 feed:item 与公共页面缓存 feed:public:*）。
+ *
+ * <p>格式（v1）：</p>
+ * - 头部 3 字节：MAGIC(0xFE) + 版本号 + 类型（1=条目，2=页面）；
+ * - 字符串：varint(长度+1) + UTF-8 字节，0 表示 null；字符串列表：varint(个数+1) + 各字符串；
+ * - 条目：8 个字符串字段后接 1 字节标志位（两个计数是否存在 + 三个布尔的三态），再接存在的计数（zigzag varint）；
+ * - 页面：varint page、varint size、hasMore 1 字节、nextCursor 字符串、varint 条目数 + 各条目体。
+ *
+ * <p>迁移：MAGIC 不可能是 JSON 或 "NULL" 哨兵的首字节，读取方用 {@link #isBinary(byte[])} 区分，
+ * 旧节点写入的 JSON 仍按 JSON 解析，片段 TTL 到期后自然完成切换。</p>
+ */
+public final class FeedFragmentCodec {
+
+    public static final byte MAGIC = (byte) 0xFE;
+    public static final byte VERSION = 1;
+    private static final byte TYPE_ITEM = 1;
+    private static final byte TYPE_PAGE = 2;
+
+    private FeedFragmentCodec() {}
+
+    /**
+     * 是否为本编解码器写入的二进制值（否则按旧版 JSON 或哨兵处理）。
+     */
+    public static boolean isBinary(byte[] raw) {
+        return raw != null && raw.length >= 3 && raw[0] == MAGIC;
+    }
+
+    /**
+     * 编码单个条目。
+     */
+    public static byte[] encodeItem(FeedItemResponse item) {
+        Out out = new Out(128);
+        out.header(TYPE_ITEM);
+        writeItemBody(out, item);
+        return out.toByteArray();
+    }
+
+    /**
+     * 解码单个条目。
+     * @throws IllegalArgumentException 非二进制值、版本不支持或数据截断
+     */
+    public static FeedItemResponse decodeItem(byte[] raw) {
+        In in = new In(raw);
+        in.header(TYPE_ITEM);
+        return readItemBody(in);
+    }
+
+    /**
+     * 编码页面（含全部条目）。
+     */
+    public static byte[] encodePage(FeedPageResponse page) {
+        List<FeedItemResponse> items = page.items() == null ? Collections.emptyList() : page.items();
+        Out out = new Out(64 + items.size() * 128);
+        out.header(TYPE_PAGE);
+        out.varLong(page.page());
+        out.varLong(page.size());
+        out.write(page.hasMore() ? 1 : 0);
+        out.string(page.nextCursor());
+        out.varLong(items.size());
+        for (FeedItemResponse it : items) {
+            writeItemBody(out, it);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 解码页面。
+     * @throws IllegalArgumentException 非二进制值、版本不支持或数据截断
+     */
+    public static FeedPageResponse decodePage(byte[] raw) {
+        In in = new In(raw);
+        in.header(TYPE_PAGE);
+        int page = (int) in.varLong();
+        int size = (int) in.varLong();
+        boolean hasMore = in.read() == 1;
+        String nextCursor = in.string();
+        int n = (int) in.varLong();
+        List<FeedItemResponse> items = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            items.add(readItemBody(in));
+        }
+        return new FeedPageResponse(items, page, size, hasMore, nextCursor);
+    }
+
+    private static void writeItemBody(Out out, FeedItemResponse it) {
+        out.string(it.id());
+        out.string(it.title());
+        out.string(it.description());
+        out.string(it.coverImage());
+        out.stringList(it.tags());
+        out.string(it.authorAvatar());
+        out.string(it.authorNickname());
+        out.string(it.tagJson());
+        int flags = (it.likeCount() != null ? 1 : 0)
+                | (it.favoriteCount() != null ? 1 << 1 : 0)
+                | tri(it.liked()) << 2
+                | tri(it.faved()) << 4
+                | tri(it.isTop()) << 6;
+        out.write(flags);
+        if (it.likeCount() != null) out.zigzag(it.likeCount());
+        if (it.favoriteCount() != null) out.zigzag(it.favoriteCount());
+    }
+
+    private static FeedItemResponse readItemBody(In in) {
+        String id = in.string();
+        String title = in.string();
+        String description = in.string();
+        String coverImage = in.string();
+        List<String> tags = in.stringList();
+        String authorAvatar = in.string();
+        String authorNickname = in.string();
+        String tagJson = in.string();
+        int flags = in.read();
+        Long likeCount = (flags & 1) != 0 ? in.zigzag() : null;
+        Long favoriteCount = (flags & (1 << 1)) != 0 ? in.zigzag() : null;
+        return new FeedItemResponse(id, title, description, coverImage, tags, authorAvatar, authorNickname, tagJson,
+                likeCount, favoriteCount, untri(flags >> 2), untri(flags >> 4), untri(flags >> 6));
+    }
+
+    /** 布尔三态：0=null，1=false，2=true */
+    private static int tri(Boolean b) {
+        return b == null ? 0 : (b ? 2 : 1);
+    }
+
+    private static Boolean untri(int bits) {
+        return switch (bits & 3) {
+            case 1 -> Boolean.FALSE;
+            case 2 -> Boolean.TRUE;
+            default -> null;
+        };
+    }
+
+    private static final class Out extends ByteArrayOutputStream {
+        Out(int size) {
+            super(size);
+        }
+
+        void header(byte type) {
+            write(MAGIC);
+            write(VERSION);
+            write(type);
+        }
+
+        void varLong(long v) {
+            while ((v & ~0x7FL) != 0) {
+                write((int) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            write((int) v);
+        }
+
+        void zigzag(long v) {
+            varLong((v << 1) ^ (v >> 63));
+        }
+
+        void string(String s) {
+            if (s == null) {
+                varLong(0);
+                return;
+            }
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            varLong(b.length + 1L);
+            write(b, 0, b.length);
+        }
+
+        void stringList(List<String> list) {
+            if (list == null) {
+                varLong(0);
+                return;
+            }
+            varLong(list.size() + 1L);
+            for (String s : list) {
+                string(s);
+            }
+        }
+    }
+
+    private static final class In {
+        private final byte[] buf;
+        private int pos;
+
+        In(byte[] buf) {
+            this.buf = buf;
+        }
+
+        void header(byte type) {
+            if (!isBinary(buf)) {
+                throw new IllegalArgumentException("not a binary feed fragment");
+            }
+            if (buf[1] != VERSION) {
+                throw new IllegalArgumentException("unsupported feed fragment version " + buf[1]);
+            }
+            if (buf[2] != type) {
+                throw new IllegalArgumentException("unexpected feed fragment type " + buf[2]);
+            }
+            pos = 3;
+        }
+
+        int read() {
+            if (pos >= buf.length) {
+                throw new IllegalArgumentException("truncated feed fragment");
+            }
+            return buf[pos++] & 0xFF;
+        }
+
+        long varLong() {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = read();
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return v;
+                }
+            }
+            throw new IllegalArgumentException("malformed varint");
+        }
+
+        long zigzag() {
+            long v = varLong();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        String string() {
+            long n = varLong();
+            if (n == 0) {
+                return null;
+            }
+            int len = (int) (n - 1);
+            if (len < 0 || pos + len > buf.length) {
+                throw new IllegalArgumentException("truncated feed fragment");
+            }
+            String s = new String(buf, pos, len, StandardCharsets.UTF_8);
+            pos += len;
+            return s;
+        }
+
+        List<String> stringList() {
+            long n = varLong();
+            if (n == 0) {
+                return null;
+            }
+            int size = (int) (n - 1);
+            if (size < 0 || size > buf.length - pos) {
+                throw new IllegalArgumentException("truncated feed fragment");
+            }
+            List<String> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(string());
+            }
+            return list;
+        }
+    }
+}
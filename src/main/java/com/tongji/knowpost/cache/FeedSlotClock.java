@@ -0,0 +1,69 @@
+package com.tongji.knowpost.cache;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Feed 片段缓存的时间分片时钟（小时槽）。
+ * <p>
+ * 设计说明：
+ * - 每个实例启动时取一个随机偏移（0~5 分钟），实例的槽边界 = 整点 + 偏移，各实例错开切换，避免整点同时失配；
+ * - 切换后的一段重叠期（10 分钟）内允许读取上一槽的片段，新槽由后台回填；槽末尾写入的 ID 列表相应延长寿命；
+ * - 反向索引按槽写入，读取方需覆盖相邻槽（其他实例可能尚未切换或已先切换）。
+ */
+@Component
+public class FeedSlotClock {
+    static final long SLOT_MS = 3_600_000L;
+    static final long MAX_JITTER_MS = 5 * 60_000L;
+    static final long OVERLAP_MS = 10 * 60_000L;
+
+    private final long offsetMs;
+
+    public FeedSlotClock() {
+        this(ThreadLocalRandom.current().nextLong(MAX_JITTER_MS));
+    }
+
+    FeedSlotClock(long offsetMs) {
+        this.offsetMs = offsetMs;
+    }
+
+    /**
+     * 本实例当前所在的槽。
+     */
+    public long currentSlot() {
+        return slotAt(System.currentTimeMillis());
+    }
+
+    /**
+     * 本实例当前是否处于切换后的重叠期（可回读上一槽）。
+     */
+    public boolean inOverlap() {
+        return inOverlapAt(System.currentTimeMillis());
+    }
+
+    /**
+     * 当前槽写入的 ID 列表应保留的最短时长：临近槽末尾写入时延长到下一槽重叠期结束，保证重叠期内上一槽可读。
+     * @param baseSeconds 常规 TTL（秒）
+     * @return 实际 TTL（秒）
+     */
+    public long idsTtlSeconds(long baseSeconds) {
+        return idsTtlSecondsAt(System.currentTimeMillis(), baseSeconds);
+    }
+
+    long idsTtlSecondsAt(long nowMs, long baseSeconds) {
+        long remaining = SLOT_MS - Math.floorMod(nowMs - offsetMs, SLOT_MS);
+        if (remaining >= OVERLAP_MS) {
+            return baseSeconds;
+        }
+        return Math.max(baseSeconds, (remaining + OVERLAP_MS) / 1000);
+    }
+
+    long slotAt(long nowMs) {
+        return Math.floorDiv(nowMs - offsetMs, SLOT_MS);
+    }
+
+    boolean inOverlapAt(long nowMs) {
+        return Math.floorMod(nowMs - offsetMs, SLOT_MS) < OVERLAP_MS;
+    }
+}
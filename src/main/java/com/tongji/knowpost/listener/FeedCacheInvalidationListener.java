@@ -3,16 +3,22 @@ package com.tongji.knowpost.listener;
 import com.tongji.counter.event.CounterEvent;
 import com.tongji.knowpost.service.FeedCacheService;
 import com.github.benmanes.caffeine.cache.Cache;
+import com.tongji.cache.invalidation.L1InvalidationBus;
 import com.tongji.knowpost.api.dto.FeedPageResponse;
 import org.springframework.beans.factory.annotation.Qualifier;
+import com.tongji.knowpost.cache.FeedFragmentCodec;
+import com.tongji.knowpost.cache.FeedSlotClock;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.types.Expiration;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.Set;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 @Component
 public class FeedCacheInvalidationListener {
@@ -23,19 +29,31 @@ public class FeedCacheInvalidationListener {
     private final ObjectMapper objectMapper;
     private final com.tongji.counter.service.UserCounterService userCounterService;
     private final com.tongji.knowpost.mapper.KnowPostMapper knowPostMapper;
+    private final DefaultRedisScript<Long> countIncrScript = new DefaultRedisScript<>(COUNT_INCR_LUA, Long.class);
+    private final L1InvalidationBus l1Bus;
+    private final FeedSlotClock slotClock;
 
     public FeedCacheInvalidationListener(FeedCacheService feedCacheService,
                                          @Qualifier("feedPublicCache") Cache<String, FeedPageResponse> feedPublicCache,
+                                         @Qualifier("feedMineCache") Cache<String, FeedPageResponse> feedMineCache,
                                          StringRedisTemplate redis,
                                          ObjectMapper objectMapper,
                                          com.tongji.counter.service.UserCounterService userCounterService,
-                                         com.tongji.knowpost.mapper.KnowPostMapper knowPostMapper) {
+                                         com.tongji.knowpost.mapper.KnowPostMapper knowPostMapper,
+                                         L1InvalidationBus l1Bus,
+                                         FeedSlotClock slotClock) {
         this.feedCacheService = feedCacheService;
         this.feedPublicCache = feedPublicCache;
         this.redis = redis;
         this.objectMapper = objectMapper;
         this.userCounterService = userCounterService;
         this.knowPostMapper = knowPostMapper;
+        this.l1Bus = l1Bus;
+        this.slotClock = slotClock;
+        // Feed 本地缓存接入跨实例失效总线；计数增量由各实例在本地页面中原地调整
+        l1Bus.register(L1InvalidationBus.FEED_PUBLIC, feedPublicCache, k -> k);
+        l1Bus.register(L1InvalidationBus.FEED_MINE, feedMineCache, k -> k);
+        l1Bus.onDelta(L1InvalidationBus.FEED_PUBLIC, this::adjustLocalPages);
     }
 
     @EventListener
@@ -54,50 +72,64 @@ public class FeedCacheInvalidationListener {
                 }
             } catch (Exception ignored) {}
             updateCountCache(eid, metric, delta);
-            long hourSlot = System.currentTimeMillis() / 3600000L;
+            // 热点详情计数：本实例立即调整，并经总线广播到其他实例
+            l1Bus.countDelta(L1InvalidationBus.KNOWPOST_DETAIL, eid, metric, delta);
+            // 各实例的槽边界错开，相邻三个槽的反向索引都可能有效，一次管道读取
+            long slot = slotClock.currentSlot();
+            List<String> indexKeys = List.of(
+                    "feed:public:index:" + eid + ":" + (slot - 1),
+                    "feed:public:index:" + eid + ":" + slot,
+                    "feed:public:index:" + eid + ":" + (slot + 1));
+            List<Object> members = redis.executePipelined((RedisCallback<Object>) c -> {
+                for (String ik : indexKeys) c.setCommands().sMembers(ik.getBytes(StandardCharsets.UTF_8));
+                return null;
+            });
             java.util.Set<String> keys = new java.util.LinkedHashSet<>();
-            java.util.Set<String> cur = redis.opsForSet().members("feed:public:index:" + eid + ":" + hourSlot);
-            if (cur != null) keys.addAll(cur);
-            java.util.Set<String> prev = redis.opsForSet().members("feed:public:index:" + eid + ":" + (hourSlot - 1));
-            if (prev != null) keys.addAll(prev);
-            if (keys == null || keys.isEmpty()) return;
-            for (String key : keys) {
-                FeedPageResponse local = feedPublicCache.getIfPresent(key);
-                if (local != null) {
-                    FeedPageResponse updatedLocal = adjustPageCounts(local, eid, metric, delta, true);
-                    feedPublicCache.put(key, updatedLocal);
+            for (Object m : members) {
+                if (m instanceof java.util.Collection<?> col) {
+                    for (Object k : col) keys.add(String.valueOf(k));
                 }
-                String cached = redis.opsForValue().get(key);
+            }
+            if (keys.isEmpty()) return;
+            // 本地页面计数：只调整反向索引列出的页面（本地页面 Key 与 Redis 页面 Key 一致），候选 Key 随增量广播到其他实例
+            l1Bus.countDelta(L1InvalidationBus.FEED_PUBLIC, eid, metric, delta, keys);
+            for (String key : keys) {
+                byte[] cached = redis.execute((RedisCallback<byte[]>) c -> c.stringCommands().get(key.getBytes(StandardCharsets.UTF_8)));
                 if (cached != null) {
                     try {
-                        FeedPageResponse resp = objectMapper.readValue(cached, FeedPageResponse.class);
+                        FeedPageResponse resp = FeedFragmentCodec.isBinary(cached)
+                                ? FeedFragmentCodec.decodePage(cached)
+                                : objectMapper.readValue(cached, FeedPageResponse.class);
                         FeedPageResponse updated = adjustPageCounts(resp, eid, metric, delta, false);
-                        writePageJsonKeepingTtl(key, updated);
+                        writePageKeepingTtl(key, updated);
                     } catch (Exception ignored) {}
                 } else {
-                    redis.opsForSet().remove("feed:public:index:" + eid + ":" + hourSlot, key);
+                    for (String ik : indexKeys) redis.opsForSet().remove(ik, key);
                 }
             }
         }
     }
-    private void updateCountCache(String eid, String metric, int delta) {
-        String cntKey = "feed:count:" + eid;
-        String cntJson = redis.opsForValue().get(cntKey);
-        java.util.Map<String, Long> cm = null;
-        if (cntJson != null) {
-            try { cm = objectMapper.readValue(cntJson, new com.fasterxml.jackson.core.type.TypeReference<java.util.Map<String, Long>>(){}); } catch (Exception ignored) {}
+    /**
+     * 在本实例的公共 Feed 本地缓存中调整包含该条目的页面计数（保留页面上的用户维度状态）。
+     * 由失效总线在本实例发布与接收其他实例广播时调用；只查看增量携带的候选页面 Key（来自反向索引），未携带时不调整。
+     */
+    private void adjustLocalPages(String eid, String metric, int delta, java.util.Collection<String> pageKeys) {
+        if (pageKeys == null) {
+            return;
+        }
+        for (String pageKey : pageKeys) {
+            feedPublicCache.asMap().computeIfPresent(pageKey, (k, cur) -> cur.items() != null
+                    && cur.items().stream().anyMatch(it -> eid.equals(it.id()))
+                    ? adjustPageCounts(cur, eid, metric, delta, true) : cur);
         }
-        if (cm == null) cm = new java.util.LinkedHashMap<>();
-        Long like = cm.getOrDefault("like", 0L);
-        Long fav = cm.getOrDefault("fav", 0L);
-        if ("like".equals(metric)) like = Math.max(0L, like + delta);
-        if ("fav".equals(metric)) fav = Math.max(0L, fav + delta);
-        cm.put("like", like);
-        cm.put("fav", fav);
+    }
+
+    /**
+     * 计数哈希原地增量：仅在哈希存在时 HINCRBY（不存在说明片段已过期，由下次读取回填），结果下限为 0。
+     */
+    private void updateCountCache(String eid, String metric, int delta) {
         try {
-            String j = objectMapper.writeValueAsString(cm);
-            Long ttl = redis.getExpire(cntKey);
-            if (ttl != null && ttl > 0) redis.opsForValue().set(cntKey, j, java.time.Duration.ofSeconds(ttl)); else redis.opsForValue().set(cntKey, j);
+            redis.execute(countIncrScript, List.of("feed:cnt:" + eid), metric, String.valueOf(delta));
         } catch (Exception ignored) {}
     }
 
@@ -115,18 +147,23 @@ public class FeedCacheInvalidationListener {
                 }
                 items.add(it);
             }
-        return new FeedPageResponse(items, page.page(), page.size(), page.hasMore());
+        return new FeedPageResponse(items, page.page(), page.size(), page.hasMore(), page.nextCursor());
     }
 
-    private void writePageJsonKeepingTtl(String key, FeedPageResponse page) {
-        try {
-            String json = objectMapper.writeValueAsString(page);
-            Long ttl = redis.getExpire(key);
-            if (ttl != null && ttl > 0) {
-                redis.opsForValue().set(key, json, java.time.Duration.ofSeconds(ttl));
-            } else {
-                redis.opsForValue().set(key, json);
-            }
-        } catch (Exception ignored) {}
+    private void writePageKeepingTtl(String key, FeedPageResponse page) {
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        byte[] v = FeedFragmentCodec.encodePage(page);
+        // SET ... KEEPTTL：单次往返覆盖值并保留剩余 TTL
+        redis.execute((RedisCallback<Boolean>) c -> c.stringCommands().set(k, v, Expiration.keepTtl(), RedisStringCommands.SetOption.upsert()));
     }
+
+    private static final String COUNT_INCR_LUA = """
+            if redis.call('EXISTS', KEYS[1]) == 0 then return -1 end
+            local v = redis.call('HINCRBY', KEYS[1], ARGV[1], ARGV[2])
+            if v < 0 then
+              redis.call('HSET', KEYS[1], ARGV[1], 0)
+              return 0
+            end
+            return v
+            """;
 }
@@ -7,6 +7,7 @@ import com.tongji.knowpost.model.KnowPostFeedRow;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
+import java.time.Instant;
 import java.util.List;
 
 @Mapper
@@ -25,6 +26,18 @@ public interface KnowPostMapper {
     List<KnowPostFeedRow> listFeedPublic(@Param("limit") int limit,
                                          @Param("offset") int offset);
 
+    // 首页 Feed 游标分页：取 (publish_time, id) 严格小于游标的记录，游标为空时返回首页。
+    List<KnowPostFeedRow> listFeedPublicAfter(@Param("limit") int limit,
+                                              @Param("cursorTime") Instant cursorTime,
+                                              @Param("cursorId") Long cursorId);
+
+    // 关注时间线回填：按 ID 批量查询对关注者可见（published + public/followers）的条目，顺序由调用方恢复。
+    List<KnowPostFeedRow> listFeedByIds(@Param("ids") List<Long> ids);
+
+    // 关注时间线收件箱/发件箱回填：一组作者最近发布的对关注者可见条目（仅 id 与 publishTime），按发布时间倒序。
+    List<KnowPostFeedRow> listRecentByCreators(@Param("creatorIds") List<Long> creatorIds,
+                                               @Param("limit") int limit);
+
     // 我的知文列表（当前用户已发布内容），置顶优先，其次按发布时间倒序。
     List<KnowPostFeedRow> listMyPublished(@Param("creatorId") long creatorId,
                                                                               @Param("limit") int limit,
@@ -42,6 +55,9 @@ public interface KnowPostMapper {
     // 详情查询（含作者信息）
     KnowPostDetailRow findDetailById(@Param("id") Long id);
 
+    // 批量详情查询（含作者信息，不过滤状态/可见性）
+    List<KnowPostDetailRow> findDetailByIds(@Param("ids") List<Long> ids);
+
     // 统计我的已发布知文数量
     long countMyPublished(@Param("creatorId") long creatorId);
 
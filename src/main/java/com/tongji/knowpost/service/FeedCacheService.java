@@ -1,44 +1,138 @@
 package com.tongji.knowpost.service;
 
-import lombok.RequiredArgsConstructor;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tongji.cache.invalidation.DelayedInvalidator;
+import com.tongji.cache.invalidation.L1InvalidationBus;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
-import java.util.Set;
+import java.time.Duration;
 
+/**
+ * Feed 缓存代际服务。
+ * <p>
+ * 公共 Feed 使用全局代际 {@code feed:gen:public}，“我的发布”使用作者代际 {@code feed:gen:mine:{uid}}；
+ * 代际参与页面/ID 列表等缓存 Key，失效只需一次 INCR，旧代际的 Key 不再被读取并随 TTL 自然过期，写路径不枚举键空间。
+ * 代际在本地缓存 1 秒，递增后经失效总线通知各实例立即重读。
+ * 延时双删的第二次失效交由 {@link DelayedInvalidator} 后台执行，调用线程不等待。
+ */
 @Service
-@RequiredArgsConstructor
 public class FeedCacheService {
 
+    private static final String GEN_PUBLIC = "feed:gen:public";
+    private static final String GEN_MINE_PREFIX = "feed:gen:mine:";
+    // 作者代际长期无写入时过期归零；此时旧代际页面（TTL 为分钟级）早已过期，不会被误读
+    private static final Duration GEN_MINE_TTL = Duration.ofDays(7);
+
     private final StringRedisTemplate redis;
+    private final L1InvalidationBus l1Bus;
+    private final DelayedInvalidator delayedInvalidator;
+    private final Cache<String, Long> generations = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(Duration.ofSeconds(1))
+            .build();
+
+    public FeedCacheService(StringRedisTemplate redis, L1InvalidationBus l1Bus, DelayedInvalidator delayedInvalidator) {
+        this.redis = redis;
+        this.l1Bus = l1Bus;
+        this.delayedInvalidator = delayedInvalidator;
+        l1Bus.register(L1InvalidationBus.FEED_GEN, generations, k -> k);
+    }
+
+    /**
+     * 当前公共 Feed 缓存代际。
+     */
+    public long publicGeneration() {
+        return generation(GEN_PUBLIC);
+    }
 
+    /**
+     * 当前作者“我的发布”缓存代际。
+     * @param userId 作者 ID
+     */
+    public long myGeneration(long userId) {
+        return generation(GEN_MINE_PREFIX + userId);
+    }
+
+    /**
+     * 失效全部公共 Feed 页面缓存（全局代际 +1）。
+     */
     public void deleteAllFeedCaches() {
-        Set<String> keys = redis.keys("feed:public:*");
-        if (keys != null && !keys.isEmpty()) {
-            redis.delete(keys);
-        }
+        bump(GEN_PUBLIC, null);
     }
 
+    /**
+     * 延时双删（公共 Feed）：立即失效一次，延迟后在后台再失效一次；同一时段内的多次调用合并为一次延迟失效。
+     * @param delayMillis 第二次失效的延迟（毫秒，至少 50）
+     */
     public void doubleDeleteAll(long delayMillis) {
         deleteAllFeedCaches();
-        try {
-            Thread.sleep(Math.max(delayMillis, 50));
-        } catch (InterruptedException ignored) {}
-        deleteAllFeedCaches();
+        delayedInvalidator.schedule(GEN_PUBLIC, Math.max(delayMillis, 50), this::deleteAllFeedCaches);
     }
 
+    /**
+     * 失效某作者的“我的发布”页面缓存（作者代际 +1）。
+     * @param userId 作者 ID
+     */
     public void deleteMyFeedCaches(long userId) {
-        Set<String> keys = redis.keys("feed:mine:" + userId + ":*");
-        if (keys != null && !keys.isEmpty()) {
-            redis.delete(keys);
-        }
+        bump(GEN_MINE_PREFIX + userId, GEN_MINE_TTL);
     }
 
+    /**
+     * 延时双删（我的发布）：立即失效一次，延迟后在后台再失效一次。
+     * @param userId 作者 ID
+     * @param delayMillis 第二次失效的延迟（毫秒，至少 50）
+     */
     public void doubleDeleteMy(long userId, long delayMillis) {
         deleteMyFeedCaches(userId);
-        try {
-            Thread.sleep(Math.max(delayMillis, 50));
-        } catch (InterruptedException ignored) {}
-        deleteMyFeedCaches(userId);
+        delayedInvalidator.schedule(GEN_MINE_PREFIX + userId, Math.max(delayMillis, 50), () -> deleteMyFeedCaches(userId));
+    }
+
+    /**
+     * 延时双删（单个缓存 Key，如知文详情）：立即删除一次，延迟后在后台再删除一次。
+     * @param key 缓存 Key
+     * @param delayMillis 第二次删除的延迟（毫秒，至少 50）
+     */
+    public void doubleDeleteKey(String key, long delayMillis) {
+        doubleDeleteKey(key, delayMillis, null);
+    }
+
+    /**
+     * 延时双删（单个缓存 Key），每次删除 Redis Key 后同时执行本地缓存清除（两次删除之间可能有旧值被载入本地缓存）。
+     * @param key 缓存 Key
+     * @param delayMillis 第二次删除的延迟（毫秒，至少 50）
+     * @param localEvict 本地缓存清除动作（可为 null）
+     */
+    public void doubleDeleteKey(String key, long delayMillis, Runnable localEvict) {
+        Runnable del = () -> {
+            redis.delete(key);
+            if (localEvict != null) {
+                localEvict.run();
+            }
+        };
+        del.run();
+        delayedInvalidator.schedule(key, Math.max(delayMillis, 50), del);
+    }
+
+    private long generation(String genKey) {
+        Long gen = generations.get(genKey, k -> {
+            String v = redis.opsForValue().get(k);
+            try {
+                return v == null ? 0L : Long.parseLong(v);
+            } catch (NumberFormatException e) {
+                return 0L;
+            }
+        });
+        return gen == null ? 0L : gen;
+    }
+
+    private void bump(String genKey, Duration ttl) {
+        redis.opsForValue().increment(genKey);
+        if (ttl != null) {
+            redis.expire(genKey, ttl);
+        }
+        // 本实例与其他实例的代际缓存立即失效，下一次读取即拿到新代际
+        l1Bus.invalidate(L1InvalidationBus.FEED_GEN, genKey);
     }
-}
\ No newline at end of file
+}
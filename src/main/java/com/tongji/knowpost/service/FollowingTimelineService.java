@@ -0,0 +1,360 @@
+package com.tongji.knowpost.service;
+
+import com.tongji.knowpost.mapper.KnowPostMapper;
+import com.tongji.knowpost.model.KnowPostFeedRow;
+import com.tongji.relation.mapper.RelationMapper;
+import com.tongji.relation.service.RelationService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+
+/**
+ * 关注时间线（推拉结合）。
+ *
+ * <p>数据结构：</p>
+ * - 收件箱 feed:inbox:{uid}：ZSet(member=知文ID, score=发布时间毫秒)，容量 {@value #INBOX_MAX}，超出按分数从低到高裁剪；
+ * - 发件箱 feed:outbox:{authorId}：作者最近 {@value #OUTBOX_MAX} 条发布，所有作者都维护，用于大V拉取与关注时补齐。
+ *
+ * <p>策略：</p>
+ * - 推：普通作者发布后异步分批推送到粉丝收件箱（仅推送已存在的收件箱，冷收件箱读时整体构建）；
+ * - 拉：大V作者（沿用 {@link RelationService#isBigV(long)} 阈值）不推送，读时合并其发件箱；
+ * - 读：收件箱与大V发件箱在一次管道中按 (score, id) 游标读取，合并去重后截取一页。
+ */
+@Service
+public class FollowingTimelineService {
+    private static final Logger log = LoggerFactory.getLogger(FollowingTimelineService.class);
+
+    private static final int INBOX_MAX = 800;
+    private static final int OUTBOX_MAX = 200;
+    private static final Duration INBOX_TTL = Duration.ofDays(7);
+    private static final Duration OUTBOX_TTL = Duration.ofDays(30);
+    /** 推送时每批粉丝数量（一批一次管道） */
+    private static final int FANOUT_BATCH = 500;
+    /** 关注新作者时从其发件箱补入收件箱的条数 */
+    private static final int FOLLOW_BACKFILL = 50;
+    /** 同毫秒多条发布时按游标过滤会丢弃部分结果，多读若干条兜底 */
+    private static final int TIE_SLACK = 16;
+    /** 空占位成员：标记收件箱/发件箱已构建（即使为空），避免反复回源数据库 */
+    private static final String EMPTY_MARK = "0";
+
+    private final StringRedisTemplate redis;
+    private final RelationService relationService;
+    private final RelationMapper relationMapper;
+    private final KnowPostMapper knowPostMapper;
+    private final Executor executor;
+    private final DefaultRedisScript<Long> pushScript = new DefaultRedisScript<>(PUSH_LUA, Long.class);
+    /** 推送脚本是否已加载到 Redis 脚本缓存 */
+    private volatile boolean pushScriptLoaded;
+
+    public FollowingTimelineService(StringRedisTemplate redis,
+                                    RelationService relationService,
+                                    RelationMapper relationMapper,
+                                    KnowPostMapper knowPostMapper,
+                                    @Qualifier("taskExecutor") Executor executor) {
+        this.redis = redis;
+        this.relationService = relationService;
+        this.relationMapper = relationMapper;
+        this.knowPostMapper = knowPostMapper;
+        this.executor = executor;
+    }
+
+    /**
+     * 时间线条目：知文 ID 与发布时间毫秒（同时作为游标分数）。
+     */
+    public record Entry(long postId, long score) {}
+
+    private static String inboxKey(long userId) {
+        return "feed:inbox:" + userId;
+    }
+
+    private static String outboxKey(long authorId) {
+        return "feed:outbox:" + authorId;
+    }
+
+    /**
+     * 发布：写入作者发件箱；非大V 作者再异步推送到粉丝收件箱。
+     * @param authorId 作者 ID
+     * @param postId 知文 ID
+     * @param publishMillis 发布时间（毫秒）
+     */
+    public void onPublished(long authorId, long postId, long publishMillis) {
+        String member = String.valueOf(postId);
+        addCapped(outboxKey(authorId), Map.of(member, (double) publishMillis), OUTBOX_MAX, OUTBOX_TTL);
+        if (relationService.isBigV(authorId)) {
+            // 大V 不推送，读时按发件箱拉取
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                fanOut(authorId, member, publishMillis);
+            } catch (Exception e) {
+                log.warn("timeline fan-out failed author={} post={}", authorId, postId, e);
+            }
+        });
+    }
+
+    /**
+     * 下线（删除/改为不可见）：从作者发件箱移除；收件箱中的残留条目在读取回填时按可见性过滤。
+     * @param authorId 作者 ID
+     * @param postId 知文 ID
+     */
+    public void onRemoved(long authorId, long postId) {
+        redis.opsForZSet().remove(outboxKey(authorId), String.valueOf(postId));
+    }
+
+    /**
+     * 关注：将被关注者最近的发布补入关注者收件箱（大V 读时拉取，无需补入）。
+     * @param fromUserId 关注者
+     * @param toUserId 被关注者
+     */
+    public void onFollow(long fromUserId, long toUserId) {
+        if (relationService.isBigV(toUserId)) {
+            return;
+        }
+        ensureOutboxes(List.of(toUserId));
+        Set<ZSetOperations.TypedTuple<String>> recent = redis.opsForZSet()
+                .reverseRangeWithScores(outboxKey(toUserId), 0, FOLLOW_BACKFILL - 1);
+        if (recent == null || recent.isEmpty()) {
+            return;
+        }
+        String inbox = inboxKey(fromUserId);
+        pushPipelined((c, sha) -> {
+            for (ZSetOperations.TypedTuple<String> t : recent) {
+                if (t.getValue() == null || t.getScore() == null || EMPTY_MARK.equals(t.getValue())) continue;
+                pushIfExists(c, sha, inbox, t.getValue(), t.getScore().longValue());
+            }
+        });
+    }
+
+    /**
+     * 取消关注：从关注者收件箱移除被关注者发件箱中的条目。
+     * @param fromUserId 关注者
+     * @param toUserId 被关注者
+     */
+    public void onUnfollow(long fromUserId, long toUserId) {
+        Set<String> posts = redis.opsForZSet().range(outboxKey(toUserId), 0, -1);
+        if (posts == null || posts.isEmpty()) {
+            return;
+        }
+        redis.opsForZSet().remove(inboxKey(fromUserId), posts.toArray());
+    }
+
+    /**
+     * 读取一页时间线条目：收件箱 + 大V发件箱按游标合并，按 (score, id) 倒序。
+     * @param userId 当前用户
+     * @param beforeMs 游标分数（上一页末条发布时间毫秒，首页为 null）
+     * @param beforeId 游标 ID（上一页末条知文 ID，首页为 null）
+     * @param limit 条目上限
+     * @return 条目列表（已去重）
+     */
+    public List<Entry> read(long userId, Long beforeMs, Long beforeId, int limit) {
+        ensureInbox(userId);
+        List<Long> bigVs = relationService.bigVFollowings(userId);
+        ensureOutboxes(bigVs);
+
+        List<String> keys = new ArrayList<>(bigVs.size() + 1);
+        keys.add(inboxKey(userId));
+        for (Long a : bigVs) keys.add(outboxKey(a));
+        double max = beforeMs == null ? Double.POSITIVE_INFINITY : beforeMs;
+        int fetch = limit + TIE_SLACK;
+
+        List<Object> res = redis.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                for (String k : keys) {
+                    ops.opsForZSet().reverseRangeByScoreWithScores(k, Double.NEGATIVE_INFINITY, max, 0, fetch);
+                }
+                // 读取即续期收件箱
+                ops.expire(keys.getFirst(), INBOX_TTL);
+                return null;
+            }
+        });
+
+        Map<Long, Long> merged = new HashMap<>();
+        for (int i = 0; i < keys.size() && i < res.size(); i++) {
+            if (!(res.get(i) instanceof Set<?> tuples)) continue;
+            for (Object o : tuples) {
+                if (!(o instanceof ZSetOperations.TypedTuple<?> t) || t.getScore() == null) continue;
+                String member = String.valueOf(t.getValue());
+                if (EMPTY_MARK.equals(member)) continue;
+                long id;
+                try {
+                    id = Long.parseLong(member);
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                long score = t.getScore().longValue();
+                if (beforeMs != null && (score > beforeMs || (score == beforeMs && beforeId != null && id >= beforeId))) {
+                    continue;
+                }
+                merged.putIfAbsent(id, score);
+            }
+        }
+        List<Entry> out = new ArrayList<>(merged.size());
+        merged.forEach((id, score) -> out.add(new Entry(id, score)));
+        out.sort(Comparator.comparingLong(Entry::score).thenComparingLong(Entry::postId).reversed());
+        return out.size() > limit ? new ArrayList<>(out.subList(0, limit)) : out;
+    }
+
+    /**
+     * 推送到粉丝收件箱：按粉丝ID游标分批读取粉丝，每批一次管道；仅写入已存在的收件箱。
+     */
+    private void fanOut(long authorId, String member, long score) {
+        long after = 0L;
+        int pushed = 0;
+        while (true) {
+            List<Long> fans = relationMapper.listFollowersAfter(authorId, after, FANOUT_BATCH);
+            if (fans == null || fans.isEmpty()) break;
+            pushPipelined((c, sha) -> {
+                for (Long fan : fans) {
+                    pushIfExists(c, sha, inboxKey(fan), member, score);
+                }
+            });
+            pushed += fans.size();
+            if (fans.size() < FANOUT_BATCH) break;
+            after = fans.get(fans.size() - 1);
+        }
+        log.debug("timeline fan-out author={} post={} fans={}", authorId, member, pushed);
+    }
+
+    /**
+     * 冷收件箱构建：一次查询取全部关注作者最近的发布写入收件箱，并写入空占位标记已构建。
+     */
+    private void ensureInbox(long userId) {
+        String key = inboxKey(userId);
+        if (Boolean.TRUE.equals(redis.hasKey(key))) {
+            return;
+        }
+        List<Long> followees = relationService.following(userId, 1000, 0);
+        List<KnowPostFeedRow> rows = followees.isEmpty() ? List.of() : knowPostMapper.listRecentByCreators(followees, INBOX_MAX);
+        addCapped(key, toScores(rows), INBOX_MAX, INBOX_TTL);
+    }
+
+    /**
+     * 大V发件箱回填：一次管道检查是否存在，缺失的逐个从数据库回填。
+     */
+    private void ensureOutboxes(List<Long> authorIds) {
+        if (authorIds.isEmpty()) {
+            return;
+        }
+        List<Object> exists = redis.executePipelined((RedisCallback<Object>) c -> {
+            for (Long a : authorIds) {
+                c.keyCommands().exists(outboxKey(a).getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+        for (int i = 0; i < authorIds.size(); i++) {
+            if (i < exists.size() && Boolean.TRUE.equals(exists.get(i))) continue;
+            Long a = authorIds.get(i);
+            addCapped(outboxKey(a), toScores(knowPostMapper.listRecentByCreators(List.of(a), OUTBOX_MAX)), OUTBOX_MAX, OUTBOX_TTL);
+        }
+    }
+
+    private static Map<String, Double> toScores(List<KnowPostFeedRow> rows) {
+        Map<String, Double> scores = new HashMap<>();
+        for (KnowPostFeedRow r : rows) {
+            if (r.getId() == null || r.getPublishTime() == null) continue;
+            scores.put(String.valueOf(r.getId()), (double) r.getPublishTime().toEpochMilli());
+        }
+        return scores;
+    }
+
+    /**
+     * 批量写入 ZSet 并按容量裁剪、设置 TTL；同时写入空占位（分数 0，最先被裁剪）。
+     */
+    private void addCapped(String key, Map<String, Double> members, int cap, Duration ttl) {
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        redis.executePipelined((RedisCallback<Object>) c -> {
+            c.zSetCommands().zAdd(k, 0, EMPTY_MARK.getBytes(StandardCharsets.UTF_8));
+            for (Map.Entry<String, Double> e : members.entrySet()) {
+                c.zSetCommands().zAdd(k, e.getValue(), e.getKey().getBytes(StandardCharsets.UTF_8));
+            }
+            c.zSetCommands().zRemRange(k, 0, -(cap + 2L));
+            c.keyCommands().expire(k, ttl.getSeconds());
+            return null;
+        });
+    }
+
+    /**
+     * 管道执行收件箱推送：脚本只在首次或 Redis 丢失脚本缓存时加载，推送以 EVALSHA 发送。
+     * 遇到 NOSCRIPT 时重新加载并重试整批（ZADD 幂等，重复推送无副作用）。
+     * @param writes 在管道连接上写入推送命令，第二个参数为脚本 SHA1
+     */
+    private void pushPipelined(BiConsumer<RedisConnection, String> writes) {
+        if (!pushScriptLoaded) {
+            loadPushScript();
+        }
+        try {
+            runPush(writes);
+        } catch (Exception e) {
+            if (!isNoScript(e)) {
+                throw e;
+            }
+            // Redis 重启或执行过 SCRIPT FLUSH：重新加载后重试本批
+            loadPushScript();
+            runPush(writes);
+        }
+    }
+
+    private void runPush(BiConsumer<RedisConnection, String> writes) {
+        String sha = pushScript.getSha1();
+        redis.executePipelined((RedisCallback<Object>) c -> {
+            writes.accept(c, sha);
+            return null;
+        });
+    }
+
+    private void loadPushScript() {
+        redis.execute((RedisCallback<String>) c ->
+                c.scriptingCommands().scriptLoad(PUSH_LUA.getBytes(StandardCharsets.UTF_8)));
+        pushScriptLoaded = true;
+    }
+
+    private static boolean isNoScript(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t.getMessage() != null && t.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void pushIfExists(RedisConnection c, String sha, String key, String member, long score) {
+        c.scriptingCommands().evalSha(sha, ReturnType.INTEGER, 1,
+                key.getBytes(StandardCharsets.UTF_8),
+                member.getBytes(StandardCharsets.UTF_8),
+                String.valueOf(score).getBytes(StandardCharsets.UTF_8),
+                String.valueOf(INBOX_MAX).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // 仅向已存在的收件箱推送并裁剪（不存在说明为冷收件箱，读时整体构建）
+    private static final String PUSH_LUA = """
+            if redis.call('EXISTS', KEYS[1]) == 0 then return 0 end
+            redis.call('ZADD', KEYS[1], ARGV[2], ARGV[1])
+            redis.call('ZREMRANGEBYRANK', KEYS[1], 0, -(tonumber(ARGV[3]) + 2))
+            return 1
+            """;
+}
@@ -8,5 +8,15 @@ import com.tongji.knowpost.api.dto.FeedPageResponse;
 public interface KnowPostFeedService {
     FeedPageResponse getPublicFeed(int page, int size, Long currentUserIdNullable);
 
+    /**
+     * 首页 Feed 游标分页：cursor 为上一页返回的 nextCursor，空串表示首页。
+     */
+    FeedPageResponse getPublicFeedByCursor(String cursor, int size, Long currentUserIdNullable);
+
     FeedPageResponse getMyPublished(long userId, int page, int size);
+
+    /**
+     * 关注时间线游标分页：关注作者的发布按时间倒序，cursor 为上一页返回的 nextCursor，空串表示首页。
+     */
+    FeedPageResponse getFollowingFeed(long userId, String cursor, int size);
 }
\ No newline at end of file
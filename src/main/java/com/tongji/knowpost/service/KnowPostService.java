@@ -1,5 +1,6 @@
 package com.tongji.knowpost.service;
 
+import com.tongji.knowpost.api.dto.KnowPostDetailBatchResponse;
 import com.tongji.knowpost.api.dto.KnowPostDetailResponse;
 
 import java.util.List;
@@ -24,4 +25,6 @@ public interface KnowPostService {
     void delete(long creatorId, long id);
 
     KnowPostDetailResponse getDetail(long id, Long currentUserIdNullable);
+
+    KnowPostDetailBatchResponse getDetails(List<Long> ids, Long currentUserIdNullable);
 }
\ No newline at end of file
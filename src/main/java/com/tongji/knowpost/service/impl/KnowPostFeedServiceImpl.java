@@ -1,6 +1,10 @@
 package com.tongji.knowpost.service.impl;
 
+import com.tongji.common.exception.BusinessException;
+import com.tongji.common.exception.ErrorCode;
 import com.tongji.knowpost.model.KnowPostDetailRow;
+import com.tongji.knowpost.service.FeedCacheService;
+import com.tongji.knowpost.service.FollowingTimelineService;
 import com.tongji.knowpost.service.KnowPostFeedService;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -10,22 +14,35 @@ import com.tongji.knowpost.mapper.KnowPostMapper;
 import com.tongji.knowpost.model.KnowPostFeedRow;
 import com.tongji.counter.service.CounterService;
 import com.github.benmanes.caffeine.cache.Cache;
+import com.tongji.cache.config.CacheProperties;
 import com.tongji.cache.hotkey.HotKeyDetector;
+import com.tongji.cache.metrics.CacheTierMetrics;
+import com.tongji.cache.refresh.BackgroundRefresher;
+import com.tongji.cache.singleflight.SingleFlight;
+import com.tongji.knowpost.cache.FeedFragmentCodec;
+import com.tongji.knowpost.cache.FeedSlotClock;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class KnowPostFeedServiceImpl implements KnowPostFeedService {
@@ -39,7 +56,17 @@ public class KnowPostFeedServiceImpl implements KnowPostFeedService {
     private final HotKeyDetector hotKey;
     private static final Logger log = LoggerFactory.getLogger(KnowPostFeedServiceImpl.class);
     private static final int LAYOUT_VER = 1;
-    private final ConcurrentHashMap<String, Object> singleFlight = new ConcurrentHashMap<>();
+    private static final byte[] F_LIKE = "like".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] F_FAV = "fav".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NULL_SENTINEL = "NULL".getBytes(StandardCharsets.UTF_8);
+    private static final int MINE_PAGE_TTL_SECONDS = 30;
+    private final SingleFlight singleFlight;
+    private final FollowingTimelineService timeline;
+    private final BackgroundRefresher refresher;
+    private final CacheProperties cacheProps;
+    private final FeedCacheService feedCacheService;
+    private final FeedSlotClock slotClock;
+    private final CacheTierMetrics tierMetrics;
 
     /**
      * 构造函数：注入 Mapper、Redis、对象映射器、计数服务与本地缓存。
@@ -50,6 +77,13 @@ public class KnowPostFeedServiceImpl implements KnowPostFeedService {
      * @param feedPublicCache 首页公共 Feed 本地缓存
      * @param feedMineCache 我的发布 Feed 本地缓存
      * @param hotKey 热点 Key 检测器，用于动态延长 TTL
+     * @param singleFlight 单航班合并器，用于合并同页并发回源
+     * @param timeline 关注时间线（推拉结合的收件箱/发件箱）
+     * @param refresher 后台刷新器，过软 TTL 的页面先返回旧值再后台重建
+     * @param cacheProps 缓存配置（软/硬 TTL）
+     * @param feedCacheService Feed 缓存代际（失效即代际 +1，代际参与缓存 Key）
+     * @param slotClock 片段缓存时间分片时钟（实例级错峰切换）
+     * @param tierMetrics 缓存分层命中计数（local/3tier/page/db）
      */
     @Autowired
     public KnowPostFeedServiceImpl(
@@ -59,7 +93,14 @@ public class KnowPostFeedServiceImpl implements KnowPostFeedService {
             CounterService counterService,
             @Qualifier("feedPublicCache") Cache<String, FeedPageResponse> feedPublicCache,
             @Qualifier("feedMineCache") Cache<String, FeedPageResponse> feedMineCache,
-            HotKeyDetector hotKey
+            HotKeyDetector hotKey,
+            SingleFlight singleFlight,
+            FollowingTimelineService timeline,
+            BackgroundRefresher refresher,
+            CacheProperties cacheProps,
+            FeedCacheService feedCacheService,
+            FeedSlotClock slotClock,
+            CacheTierMetrics tierMetrics
     ) {
         this.mapper = mapper;
         this.redis = redis;
@@ -68,21 +109,65 @@ public class KnowPostFeedServiceImpl implements KnowPostFeedService {
         this.feedPublicCache = feedPublicCache;
         this.feedMineCache = feedMineCache;
         this.hotKey = hotKey;
+        this.singleFlight = singleFlight;
+        this.timeline = timeline;
+        this.refresher = refresher;
+        this.cacheProps = cacheProps;
+        this.feedCacheService = feedCacheService;
+        this.slotClock = slotClock;
+        this.tierMetrics = tierMetrics;
+        // 全局热点页面预热：从 Redis 页面缓存载入本实例 L1，不回源数据库
+        hotKey.onGlobalHot("feed:public:", this::warmPublicLocal);
+        hotKey.onGlobalHot("feed:mine:", this::warmMineLocal);
     }
 
     /**
-     * 生成公共 Feed 页面的缓存 Key（包含分页与布局版本）。
+     * 将公共 Feed 页面（页码/游标模式）从 Redis 页面缓存载入本地缓存。
+     * @param key 页面缓存 Key
+     */
+    private void warmPublicLocal(String key) {
+        CachedPage cached = readPageCache(key);
+        if (cached != null) {
+            feedPublicCache.put(key, cached.resp());
+        }
+    }
+
+    /**
+     * 将“我的发布”页面从 Redis 页面缓存载入本地缓存。
+     * @param key 页面缓存 Key
+     */
+    private void warmMineLocal(String key) {
+        String cached = redis.opsForValue().get(key);
+        if (cached == null) {
+            return;
+        }
+        try {
+            feedMineCache.put(key, objectMapper.readValue(cached, FeedPageResponse.class));
+        } catch (Exception ignored) {}
+    }
+
+    /**
+     * 片段缓存 ID 列表 Key（代际 + 页大小 + 时间槽 + 页码）；hasMore 软缓存 Key 为其后缀 ":hasMore"。
+     */
+    private static String idsKey(long gen, int size, long slot, int page) {
+        return "feed:public:ids:g" + gen + ":" + size + ":" + slot + ":" + page;
+    }
+
+    /**
+     * 生成公共 Feed 页面的缓存 Key（包含代际、分页与布局版本）。
+     * @param gen 公共 Feed 缓存代际
      * @param page 页码（1 起）
      * @param size 每页大小
      * @return Redis/Page 缓存的 Key
      */
-    private String cacheKey(int page, int size) {
-        return "feed:public:" + size + ":" + page + ":v" + LAYOUT_VER;
+    private String cacheKey(long gen, int page, int size) {
+        return "feed:public:g" + gen + ":" + size + ":" + page + ":v" + LAYOUT_VER;
     }
 
     /**
      * 获取公开的首页 Feed（按发布时间倒序，不受置顶影响）。
      * 采用三级缓存：本地 Caffeine、Redis 页面缓存、Redis 片段缓存（ids/item/count）。
+     * 本地与页面缓存均为软/硬双 TTL：过软 TTL 后仍返回旧值并由一个后台任务重建，只有硬过期才同步回源。
      * @param page 页码（≥1）
      * @param size 每页数量（1~50）
      * @param currentUserIdNullable 当前用户 ID（为空表示匿名）
@@ -91,97 +176,359 @@ public class KnowPostFeedServiceImpl implements KnowPostFeedService {
     public FeedPageResponse getPublicFeed(int page, int size, Long currentUserIdNullable) {
         int safeSize = Math.min(Math.max(size, 1), 50);
         int safePage = Math.max(page, 1);
-        String key = cacheKey(safePage, safeSize);
+        // 代际参与所有页面级 Key：失效只需代际 +1，旧代际的 Key 不再被读取并随 TTL 自然过期
+        long gen = feedCacheService.publicGeneration();
+        String key = cacheKey(gen, safePage, safeSize);
         // 按小时分片的片段缓存键：降低跨小时内容更新导致的大面积失效风险
-        // 将分页维度（size/page）与时间维度（hourSlot）组合，避免热门页在整站失效时同时回源
-        long hourSlot = System.currentTimeMillis() / 3600000L;
-        String idsKey = "feed:public:ids:" + safeSize + ":" + hourSlot + ":" + safePage;
-        String hasMoreKey = "feed:public:ids:" + safeSize + ":" + hourSlot + ":" + safePage + ":hasMore";
+        // 将分页维度（size/page）与时间维度（slot）组合；槽边界按实例错开，避免各实例整点同时失配
+        long slot = slotClock.currentSlot();
+        String idsKey = idsKey(gen, safeSize, slot, safePage);
+        String hasMoreKey = idsKey + ":hasMore";
 
         FeedPageResponse local = feedPublicCache.getIfPresent(key);
         if (local != null) {
-            hotKey.record(key);
-            maybeExtendTtlPublic(key);
-            log.info("feed.public source=local key={} page={} size={}", key, safePage, safeSize);
+            hotKey.record(key, publicPageTtl());
+            if (localAging(key)) {
+                refresher.refreshAhead(localRefreshKey(key), () -> reloadLocal(key,
+                        () -> singleFlight.execute(idsKey, () -> loadPublicPage(key, idsKey, hasMoreKey, safePage, safeSize)),
+                        () -> refreshPublicPage(key, idsKey, hasMoreKey, safePage, safeSize)));
+            }
+            tierMetrics.hit("feed.public", CacheTierMetrics.LOCAL);
+            log.debug("feed.public source=local key={} page={} size={}", key, safePage, safeSize);
             List<FeedItemResponse> enrichedLocal = enrich(local.items(), currentUserIdNullable);
-            return new FeedPageResponse(enrichedLocal, local.page(), local.size(), local.hasMore());
+            return new FeedPageResponse(enrichedLocal, local.page(), local.size(), local.hasMore(), local.nextCursor());
         }
 
         FeedPageResponse fromCache = assembleFromCache(idsKey, hasMoreKey, safePage, safeSize, currentUserIdNullable);
         if (fromCache != null) {
             feedPublicCache.put(key, fromCache);
-            hotKey.record(key);
-            maybeExtendTtlPublic(key);
-            log.info("feed.public source=3tier key={} page={} size={}", key, safePage, safeSize);
+            hotKey.record(key, publicPageTtl());
+            tierMetrics.hit("feed.public", CacheTierMetrics.FRAGMENT);
+            log.debug("feed.public source=3tier key={} page={} size={}", key, safePage, safeSize);
             return fromCache;
         }
+
+        // 切换后的重叠期：新槽尚未回填时读取上一槽的片段，新槽由后台回填（同页只提交一次）
+        if (slotClock.inOverlap()) {
+            String prevIdsKey = idsKey(gen, safeSize, slot - 1, safePage);
+            FeedPageResponse fromPrev = assembleFromCache(prevIdsKey, prevIdsKey + ":hasMore", safePage, safeSize, currentUserIdNullable);
+            if (fromPrev != null) {
+                feedPublicCache.put(key, fromPrev);
+                hotKey.record(key, publicPageTtl());
+                refresher.refreshAhead(idsKey, () -> refreshPublicPage(key, idsKey, hasMoreKey, safePage, safeSize));
+                tierMetrics.hit("feed.public", CacheTierMetrics.FRAGMENT);
+                log.debug("feed.public source=3tier(prev-slot) key={} page={} size={}", key, safePage, safeSize);
+                return fromPrev;
+            }
+        }
         
-        // 先查缓存
-        String cached = redis.opsForValue().get(key);
-        if (cached != null) {
-            try {
-                FeedPageResponse cachedResp = objectMapper.readValue(cached, FeedPageResponse.class);
-                boolean hasCounts = cachedResp.items() != null && cachedResp.items().stream()
-                        .allMatch(it -> it.likeCount() != null && it.favoriteCount() != null);
-                if (hasCounts) {
-                    // 覆盖用户维度状态，不写回缓存（避免混淆不同用户）
-                    feedPublicCache.put(key, cachedResp);
-                    hotKey.record(key);
-                    maybeExtendTtlPublic(key);
-                    log.info("feed.public source=page key={} page={} size={}", key, safePage, safeSize);
-                    CompletableFuture.runAsync(() -> repairFragmentsFromPage(cachedResp, idsKey, hasMoreKey, safePage, safeSize));
-                    List<FeedItemResponse> enriched = enrich(cachedResp.items(), currentUserIdNullable);
-                    return new FeedPageResponse(enriched, cachedResp.page(), cachedResp.size(), cachedResp.hasMore());
-                }
-                // 若缓存缺少计数字段，回源构建并覆盖缓存
-            } catch (Exception ignored) {
-                // 反序列化失败则走数据库并覆盖缓存
+        // 先查缓存（缺少计数字段或解析失败时回源构建并覆盖缓存）
+        CachedPage cachedPage = readPageCache(key);
+        if (cachedPage != null) {
+            FeedPageResponse cachedResp = cachedPage.resp();
+            // 覆盖用户维度状态，不写回缓存（避免混淆不同用户）
+            feedPublicCache.put(key, cachedResp);
+            hotKey.record(key, publicPageTtl());
+            if (!cachedPage.fresh()) {
+                refresher.refreshStale(key, () -> refreshPublicPage(key, idsKey, hasMoreKey, safePage, safeSize));
             }
+            tierMetrics.hit("feed.public", CacheTierMetrics.PAGE);
+            log.debug("feed.public source=page key={} page={} size={} fresh={}", key, safePage, safeSize, cachedPage.fresh());
+            CompletableFuture.runAsync(() -> repairFragmentsFromPage(cachedResp, key, idsKey, hasMoreKey, safeSize));
+            List<FeedItemResponse> enriched = enrich(cachedResp.items(), currentUserIdNullable);
+            return new FeedPageResponse(enriched, cachedResp.page(), cachedResp.size(), cachedResp.hasMore(), cachedResp.nextCursor());
         }
 
         // 单航班机制：以 idsKey 作为“航班号”
-        // 并发下同一页只允许一个请求回源数据库，其余在锁内优先重查缓存，避免击穿惊群
-        Object lock = singleFlight.computeIfAbsent(idsKey, k -> new Object());
-        synchronized (lock) {
-            // 重查三层缓存，避免重复回源
-            FeedPageResponse again = assembleFromCache(idsKey, hasMoreKey, safePage, safeSize, currentUserIdNullable);
-            if (again != null) {
-                feedPublicCache.put(key, again);
-                hotKey.record(key);
-                maybeExtendTtlPublic(key);
-                log.info("feed.public source=3tier(after-flight) key={} page={} size={}", key, safePage, safeSize);
-                singleFlight.remove(idsKey);
-                return again;
+        // 并发下同一页只允许一个请求回源数据库，其余请求共享其结果，避免击穿惊群
+        FeedPageResponse base = singleFlight.execute(idsKey, () -> loadPublicPage(key, idsKey, hasMoreKey, safePage, safeSize));
+        hotKey.record(key, publicPageTtl());
+        // 返回时覆盖用户维度状态，不写回缓存
+        List<FeedItemResponse> enriched = enrich(base.items(), currentUserIdNullable);
+        return new FeedPageResponse(enriched, base.page(), base.size(), base.hasMore(), null);
+    }
+
+    /**
+     * 公共 Feed 页回源（仅单航班 leader 执行）：先重查三层缓存，仍未命中再读数据库并回写各级缓存。
+     * 返回的条目不含用户维度状态，由各调用方自行叠加。
+     * @param key 页面缓存 Key
+     * @param idsKey ID 列表 Key
+     * @param hasMoreKey 软缓存 Key
+     * @param safePage 页码
+     * @param safeSize 每页大小
+     * @return 页面数据（计数已填充，liked/faved 为空）
+     */
+    private FeedPageResponse loadPublicPage(String key, String idsKey, String hasMoreKey, int safePage, int safeSize) {
+        // 重查三层缓存，避免重复回源
+        FeedPageResponse again = assembleFromCache(idsKey, hasMoreKey, safePage, safeSize, null);
+        if (again != null) {
+            feedPublicCache.put(key, again);
+            tierMetrics.hit("feed.public", CacheTierMetrics.FRAGMENT);
+            log.debug("feed.public source=3tier(after-flight) key={} page={} size={}", key, safePage, safeSize);
+            return again;
+        }
+        return loadPublicPageFromDb(key, idsKey, hasMoreKey, safePage, safeSize);
+    }
+
+    /**
+     * 公共 Feed 页后台刷新：与同页的同步回源共用单航班，避免刷新与缓存缺失同时打到数据库。
+     */
+    private void refreshPublicPage(String key, String idsKey, String hasMoreKey, int safePage, int safeSize) {
+        singleFlight.execute(idsKey, () -> loadPublicPageFromDb(key, idsKey, hasMoreKey, safePage, safeSize));
+    }
+
+    /**
+     * 公共 Feed 页数据库回源并回写各级缓存（同步回源与后台刷新共用）。
+     * @return 页面数据（计数已填充，liked/faved 为空）
+     */
+    private FeedPageResponse loadPublicPageFromDb(String key, String idsKey, String hasMoreKey, int safePage, int safeSize) {
+        // 数据库回源：读取 size+1 以判断是否有下一页，后裁剪为当前页
+        int offset = (safePage - 1) * safeSize;
+        List<KnowPostFeedRow> rows = mapper.listFeedPublic(safeSize + 1, offset);
+        boolean hasMore = rows.size() > safeSize;
+        if (hasMore) {
+            rows = rows.subList(0, safeSize);
+        }
+
+        // 构建基础列表（计数已填充），liked/faved 置为 null 以免污染用户维度缓存
+        List<FeedItemResponse> items = mapRowsToItems(rows, null, false);
+
+        FeedPageResponse respForCache = new FeedPageResponse(items, safePage, safeSize, hasMore, null);
+        // 片段缓存（ids/item/count）TTL 更长并加入随机抖动，降低同一时刻大量过期
+        int baseTtl = 60;
+        int jitter = ThreadLocalRandom.current().nextInt(30);
+        Duration frTtl = Duration.ofSeconds(baseTtl + jitter);
+
+        // 页面缓存软 TTL 较短（默认 10~15s），用于快速返回但不承载用户态；硬 TTL 兜底，期间过期页由后台刷新
+        writeCaches(key, idsKey, hasMoreKey, safePage, safeSize, rows, items, hasMore, frTtl, pageSoftTtl());
+        feedPublicCache.put(key, respForCache);
+        tierMetrics.hit("feed.public", CacheTierMetrics.DB);
+        log.debug("feed.public source=db key={} page={} size={} hasMore={}", key, safePage, safeSize, hasMore);
+        return respForCache;
+    }
+
+    /**
+     * 生成游标模式页面的缓存 Key：代际与游标参与 Key，首页使用固定占位 head。
+     * @param gen 公共 Feed 缓存代际
+     * @param size 每页大小
+     * @param after 上一页末条游标（首页为 null）
+     * @return Redis/Page 缓存的 Key
+     */
+    private String cursorCacheKey(long gen, int size, FeedCursor after) {
+        String c = after == null ? "head" : after.encode();
+        return "feed:public:cursor:g" + gen + ":" + size + ":" + c + ":v" + LAYOUT_VER;
+    }
+
+    /**
+     * 获取公开的首页 Feed（游标模式）。
+     * 以 (publish_time, id) 作为 keyset 游标，查询代价与翻页深度无关，且新发布内容不会导致翻页重复或遗漏。
+     * 缓存：本地 Caffeine + Redis 页面缓存，游标参与缓存 Key；条目/计数片段与反向索引与页码模式共用。
+     * @param cursor 上一页返回的 nextCursor；空串表示从首页开始
+     * @param size 每页数量（1~50）
+     * @param currentUserIdNullable 当前用户 ID（为空表示匿名）
+     * @return 带 nextCursor 的 Feed 列表（page 固定为 0）
+     */
+    public FeedPageResponse getPublicFeedByCursor(String cursor, int size, Long currentUserIdNullable) {
+        int safeSize = Math.min(Math.max(size, 1), 50);
+        FeedCursor after = FeedCursor.decode(cursor);
+        String key = cursorCacheKey(feedCacheService.publicGeneration(), safeSize, after);
+
+        FeedPageResponse local = feedPublicCache.getIfPresent(key);
+        if (local != null) {
+            hotKey.record(key, publicPageTtl());
+            if (localAging(key)) {
+                refresher.refreshAhead(localRefreshKey(key), () -> reloadLocal(key,
+                        () -> singleFlight.execute(key, () -> loadCursorPage(key, after, safeSize)),
+                        () -> refreshCursorPage(key, after, safeSize)));
             }
+            tierMetrics.hit("feed.public.cursor", CacheTierMetrics.LOCAL);
+            log.debug("feed.public.cursor source=local key={}", key);
+            return new FeedPageResponse(enrich(local.items(), currentUserIdNullable), 0, local.size(), local.hasMore(), local.nextCursor());
+        }
 
-            // 数据库回源：读取 size+1 以判断是否有下一页，后裁剪为当前页
-            int offset = (safePage - 1) * safeSize;
-            List<KnowPostFeedRow> rows = mapper.listFeedPublic(safeSize + 1, offset);
-            boolean hasMore = rows.size() > safeSize;
-            if (hasMore) {
-                rows = rows.subList(0, safeSize);
+        CachedPage cachedPage = readPageCache(key);
+        if (cachedPage != null) {
+            FeedPageResponse cachedResp = cachedPage.resp();
+            feedPublicCache.put(key, cachedResp);
+            hotKey.record(key, publicPageTtl());
+            if (!cachedPage.fresh()) {
+                refresher.refreshStale(key, () -> refreshCursorPage(key, after, safeSize));
             }
+            tierMetrics.hit("feed.public.cursor", CacheTierMetrics.PAGE);
+            log.debug("feed.public.cursor source=page key={} fresh={}", key, cachedPage.fresh());
+            return new FeedPageResponse(enrich(cachedResp.items(), currentUserIdNullable), 0, cachedResp.size(), cachedResp.hasMore(), cachedResp.nextCursor());
+        }
 
-            // 构建基础列表（计数已填充），liked/faved 置为 null 以免污染用户维度缓存
-            List<FeedItemResponse> items = mapRowsToItems(rows, null, false);
+        FeedPageResponse base = singleFlight.execute(key, () -> loadCursorPage(key, after, safeSize));
+        hotKey.record(key, publicPageTtl());
+        return new FeedPageResponse(enrich(base.items(), currentUserIdNullable), 0, base.size(), base.hasMore(), base.nextCursor());
+    }
 
-            FeedPageResponse respForCache = new FeedPageResponse(items, safePage, safeSize, hasMore);
-            // 片段缓存（ids/item/count）TTL 更长并加入随机抖动，降低同一时刻大量过期
-            int baseTtl = 60;
-            int jitter = ThreadLocalRandom.current().nextInt(30);
-            Duration frTtl = Duration.ofSeconds(baseTtl + jitter);
+    /**
+     * 游标页回源（仅单航班 leader 执行）：重查页面缓存，未命中时按 keyset 读取数据库并回写缓存。
+     * @param key 页面缓存 Key
+     * @param after 上一页末条游标（首页为 null）
+     * @param safeSize 每页大小
+     * @return 页面数据（计数已填充，liked/faved 为空）
+     */
+    private FeedPageResponse loadCursorPage(String key, FeedCursor after, int safeSize) {
+        CachedPage again = readPageCache(key);
+        if (again != null) {
+            feedPublicCache.put(key, again.resp());
+            tierMetrics.hit("feed.public.cursor", CacheTierMetrics.PAGE);
+            log.debug("feed.public.cursor source=page(after-flight) key={}", key);
+            return again.resp();
+        }
+        return loadCursorPageFromDb(key, after, safeSize);
+    }
+
+    /**
+     * 游标页后台刷新：与同页的同步回源共用单航班。
+     */
+    private void refreshCursorPage(String key, FeedCursor after, int safeSize) {
+        singleFlight.execute(key, () -> loadCursorPageFromDb(key, after, safeSize));
+    }
+
+    /**
+     * 游标页数据库回源并回写缓存（同步回源与后台刷新共用）。
+     * @return 页面数据（计数已填充，liked/faved 为空）
+     */
+    private FeedPageResponse loadCursorPageFromDb(String key, FeedCursor after, int safeSize) {
+        // 数据库回源：keyset 读取 size+1 以判断是否有下一页
+        List<KnowPostFeedRow> rows = mapper.listFeedPublicAfter(safeSize + 1,
+                after == null ? null : after.publishTime(),
+                after == null ? null : after.id());
+        boolean hasMore = rows.size() > safeSize;
+        if (hasMore) {
+            rows = rows.subList(0, safeSize);
+        }
+        String nextCursor = null;
+        if (hasMore && !rows.isEmpty()) {
+            KnowPostFeedRow last = rows.getLast();
+            nextCursor = new FeedCursor(last.getPublishTime(), last.getId()).encode();
+        }
+
+        List<FeedItemResponse> items = mapRowsToItems(rows, null, false);
+        FeedPageResponse respForCache = new FeedPageResponse(items, 0, safeSize, hasMore, nextCursor);
+
+        // 首页会被新发布内容顶替，软 TTL 与页码模式一致；非首页不受新内容影响，软 TTL 可与片段同寿命
+        Duration frTtl = Duration.ofSeconds(60 + ThreadLocalRandom.current().nextInt(30));
+        Duration softTtl = after == null ? pageSoftTtl() : frTtl;
+        writeFragmentsPipelined(key, FeedFragmentCodec.encodePage(respForCache), softTtl, null, null, List.of(), safeSize, hasMore, items, frTtl);
+        feedPublicCache.put(key, respForCache);
+        tierMetrics.hit("feed.public.cursor", CacheTierMetrics.DB);
+        log.debug("feed.public.cursor source=db key={} hasMore={}", key, hasMore);
+        return respForCache;
+    }
 
-            // 页面缓存 TTL 更短（10~20s），用于快速返回但不承载用户态
-            Duration pageTtl = Duration.ofSeconds(10 + ThreadLocalRandom.current().nextInt(11));
-            writeCaches(key, idsKey, hasMoreKey, safePage, safeSize, rows, items, hasMore, frTtl, pageTtl);
-            feedPublicCache.put(key, respForCache);
-            hotKey.record(key);
-            // 返回时覆盖用户维度状态，不写回缓存
-            List<FeedItemResponse> enriched = enrich(items, currentUserIdNullable);
-            log.info("feed.public source=db key={} page={} size={} hasMore={}", key, safePage, safeSize, hasMore);
-            // 释放单航班锁，允许后续请求正常进入
-            singleFlight.remove(idsKey);
-            return new FeedPageResponse(enriched, safePage, safeSize, hasMore);
+    /**
+     * Redis 页面缓存命中结果。
+     * @param resp 页面数据
+     * @param fresh 是否仍在软 TTL 内（新鲜标记存在）
+     */
+    private record CachedPage(FeedPageResponse resp, boolean fresh) {}
+
+    /**
+     * 读取 Redis 页面缓存（页码/游标模式共用）；缺失、解析失败或缺少计数时返回 null。
+     * 页面值与新鲜标记在一次管道中读取；值为二进制编码时直接解码，旧版 JSON 值按 JSON 解析（滚动升级期间兼容）。
+     * @param key 页面缓存 Key
+     * @return 页面数据及新鲜度，或 null
+     */
+    private CachedPage readPageCache(String key) {
+        List<Object> res = redis.executePipelined((RedisCallback<Object>) c -> {
+            c.stringCommands().get(bytes(key));
+            c.keyCommands().exists(bytes(BackgroundRefresher.freshKey(key)));
+            return null;
+        }, null);
+        byte[] raw = !res.isEmpty() && res.get(0) instanceof byte[] b ? b : null;
+        if (raw == null) {
+            return null;
+        }
+        try {
+            FeedPageResponse resp = FeedFragmentCodec.isBinary(raw)
+                    ? FeedFragmentCodec.decodePage(raw)
+                    : objectMapper.readValue(raw, FeedPageResponse.class);
+            boolean hasCounts = resp.items() != null && resp.items().stream()
+                    .allMatch(it -> it.likeCount() != null && it.favoriteCount() != null);
+            return hasCounts ? new CachedPage(resp, res.size() > 1 && Boolean.TRUE.equals(res.get(1))) : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 公共页面软 TTL（带随机抖动，避免同批写入的页面同时变旧）。
+     */
+    private Duration pageSoftTtl() {
+        int soft = cacheProps.getSwr().getPageSoftSeconds();
+        return Duration.ofSeconds(soft + ThreadLocalRandom.current().nextInt(soft / 2 + 1));
+    }
+
+    /**
+     * 本地缓存条目是否已过软 TTL（写入时长达到阈值但尚未硬过期）。
+     * @param key 本地缓存 Key
+     * @return 是否需要预刷新
+     */
+    private boolean localAging(String key) {
+        int soft = cacheProps.getL2().getPublicCfg().getSoftTtlSeconds();
+        return feedPublicCache.policy().expireAfterWrite()
+                .map(p -> p.ageOf(key, TimeUnit.SECONDS).orElse(0L) >= soft)
+                .orElse(false);
+    }
+
+    /**
+     * 本地预刷新的去重 Key：与 Redis 页面刷新区分，预刷新过程中仍可触发页面刷新。
+     */
+    private static String localRefreshKey(String key) {
+        return "l1:" + key;
+    }
+
+    /**
+     * 本地缓存预刷新：优先用 Redis 页面覆盖本地条目；Redis 页面已过软 TTL 时继续触发跨实例刷新，
+     * 页面缺失时走完整回源（含三层缓存重查与单航班）。
+     * @param key 页面缓存 Key
+     * @param loader 页面缺失时的完整回源（结果由回源路径写入本地缓存）
+     * @param staleRefresh Redis 页面过软 TTL 时的后台刷新
+     */
+    private void reloadLocal(String key, Runnable loader, Runnable staleRefresh) {
+        CachedPage cached = readPageCache(key);
+        if (cached == null) {
+            loader.run();
+            return;
+        }
+        feedPublicCache.put(key, cached.resp());
+        if (!cached.fresh()) {
+            refresher.refreshStale(key, staleRefresh);
+        }
+    }
+
+    /**
+     * Feed 游标：上一页末条的 (publishTime, id)，对外以 Base64URL 编码的不透明字符串传递。
+     */
+    private record FeedCursor(Instant publishTime, Long id) {
+
+        String encode() {
+            String raw = publishTime.toEpochMilli() + ":" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * 解析游标；空串表示首页（返回 null），格式非法时抛出业务异常。
+         */
+        static FeedCursor decode(String cursor) {
+            if (cursor == null || cursor.isBlank()) {
+                return null;
+            }
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                String[] parts = raw.split(":");
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException(raw);
+                }
+                return new FeedCursor(Instant.ofEpochMilli(Long.parseLong(parts[0])), Long.parseLong(parts[1]));
+            } catch (IllegalArgumentException e) {
+                throw new BusinessException(ErrorCode.BAD_REQUEST, "游标非法");
+            }
         }
     }
 
@@ -193,10 +540,14 @@ public class KnowPostFeedServiceImpl implements KnowPostFeedService {
      * @return 叠加 liked/faved 的列表
      */
     private List<FeedItemResponse> enrich(List<FeedItemResponse> base, Long uid) {
+        List<String> ids = new ArrayList<>(base.size());
+        for (FeedItemResponse it : base) ids.add(it.id());
+        Map<String, Map<String, Boolean>> states = userStates(ids, uid);
         List<FeedItemResponse> out = new ArrayList<>(base.size());
         for (FeedItemResponse it : base) {
-            boolean liked = uid != null && counterService.isLiked("knowpost", it.id(), uid);
-            boolean faved = uid != null && counterService.isFaved("knowpost", it.id(), uid);
+            Map<String, Boolean> st = states.get(it.id());
+            boolean liked = st != null && Boolean.TRUE.equals(st.get("like"));
+            boolean faved = st != null && Boolean.TRUE.equals(st.get("fav"));
             out.add(new FeedItemResponse(
                     it.id(), it.title(), it.description(), it.coverImage(), it.tags(), it.authorAvatar(), it.authorNickname(), it.tagJson(), it.likeCount(), it.favoriteCount(), liked, faved, it.isTop()
             ));
@@ -204,12 +555,25 @@ public class KnowPostFeedServiceImpl implements KnowPostFeedService {
         return out;
     }
 
+    /**
+     * 批量读取用户对一组知文的点赞/收藏状态（单次管道往返）。
+     * @param ids 知文 ID 列表
+     * @param uid 用户 ID（可空）
+     * @return id -> (like/fav -> 是否置位)；匿名用户返回空映射
+     */
+    private Map<String, Map<String, Boolean>> userStates(List<String> ids, Long uid) {
+        if (uid == null || ids.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return counterService.getUserStatesBatch("knowpost", ids, uid, List.of("like", "fav"));
+    }
+
     /**
      * 从 Redis 片段缓存组装页面：
      * - idsKey：列表 ID 顺序
-     * - itemKey：每个条目基础信息
-     * - countKey：点赞/收藏计数
-     * 若缺片段则回源修补并写回软缓存。
+     * - itemKey：每个条目基础信息（二进制编码，兼容旧版 JSON）
+     * - cntKey：点赞/收藏计数哈希
+     * 条目与计数在一次管道中读取；若缺片段则回源修补并写回软缓存。
      * @param idsKey Redis 列表 Key
      * @param hasMoreKey Redis 软缓存 hasMore Key
      * @param page 页码
@@ -225,33 +589,36 @@ public class KnowPostFeedServiceImpl implements KnowPostFeedService {
             return null;
         }
         // 构造内容元数据（标题，内容等）的 Redis Key
-        List<String> itemKeys = new ArrayList<>(idList.size());
-        for (String id : idList) {
-            itemKeys.add("feed:item:" + id);
-        }
-        // 构造计数（赞藏数）的 Redis Key
-        List<String> countKeys = new ArrayList<>(idList.size());
-        for (String id : idList) {
-            countKeys.add("feed:count:" + id);
+        byte[][] itemKeys = new byte[idList.size()][];
+        for (int i = 0; i < idList.size(); i++) {
+            itemKeys[i] = bytes("feed:item:" + idList.get(i));
         }
-        // 批量获取知文 元数据 + 计数
-        List<String> itemJsons = redis.opsForValue().multiGet(itemKeys);
-        List<String> countJsons = redis.opsForValue().multiGet(countKeys);
+        // 一次管道：MGET 条目片段 + 逐条 HMGET 计数哈希；结果保持原始字节
+        List<Object> res = redis.executePipelined((RedisCallback<Object>) connection -> {
+            connection.stringCommands().mGet(itemKeys);
+            for (String id : idList) {
+                connection.hashCommands().hMGet(bytes(countKey(id)), F_LIKE, F_FAV);
+            }
+            return null;
+        }, null);
+        List<?> itemRaws = !res.isEmpty() && res.getFirst() instanceof List<?> l ? l : Collections.emptyList();
 
         List<FeedItemResponse> items = new ArrayList<>(idList.size());
         List<String> missingIds = new ArrayList<>();
         for (int i = 0; i < idList.size(); i++) {
             String id = idList.get(i);
-            String ij = itemJsons != null && i < itemJsons.size() ? itemJsons.get(i) : null;
+            byte[] ij = i < itemRaws.size() && itemRaws.get(i) instanceof byte[] b ? b : null;
             FeedItemResponse base = null;
             if (ij != null) {
                 // 使用 "NULL" 作为空占位哨兵，防止对不存在内容的穿透与击穿
-                if ("NULL".equals(ij)) {
+                if (Arrays.equals(NULL_SENTINEL, ij)) {
                     items.add(null);
                     continue;
                 }
                 try {
-                    base = objectMapper.readValue(ij, FeedItemResponse.class);
+                    base = FeedFragmentCodec.isBinary(ij)
+                            ? FeedFragmentCodec.decodeItem(ij)
+                            : objectMapper.readValue(ij, FeedItemResponse.class);
                 } catch (Exception ignored) {}
             }
             if (base == null) {
@@ -259,14 +626,21 @@ public class KnowPostFeedServiceImpl implements KnowPostFeedService {
             }
             items.add(base);
         }
+        // 回填片段的 TTL 与 idsKey 对齐，保证片段整体一致性
+        long idsTtl = missingIds.isEmpty() ? -1 : redis.getExpire(idsKey);
         if (!missingIds.isEmpty()) {
+            // 缺失条目一次 IN 查询回源，回填片段与空值哨兵在一次管道中写入
+            List<Long> nids = new ArrayList<>(missingIds.size());
+            for (String mid : missingIds) nids.add(Long.parseLong(mid));
+            Map<String, KnowPostDetailRow> rowsById = new HashMap<>();
+            for (KnowPostDetailRow d : mapper.findDetailByIds(nids)) {
+                if (d != null) rowsById.put(String.valueOf(d.getId()), d);
+            }
+            Map<String, byte[]> fills = new LinkedHashMap<>();
             for (String mid : missingIds) {
-                Long nid = Long.parseLong(mid);
-                KnowPostDetailRow d = mapper.findDetailById(nid);
+                KnowPostDetailRow d = rowsById.get(mid);
                 if (d == null) {
-                    String kNull = "feed:item:" + mid;
-                    // 随机过期时间
-                    redis.opsForValue().set(kNull, "NULL", Duration.ofSeconds(30 + ThreadLocalRandom.current().nextInt(31)));
+                    fills.put(mid, null);
                     continue;
                 }
                 List<String> tags = parseStringArray(d.getTags());
@@ -274,25 +648,29 @@ public class KnowPostFeedServiceImpl implements KnowPostFeedService {
                 // 知文封面
                 String cover = imgs.isEmpty() ? null : imgs.getFirst();
                 FeedItemResponse it = new FeedItemResponse(String.valueOf(d.getId()), d.getTitle(), d.getDescription(), cover, tags, d.getAuthorAvatar(), d.getAuthorNickname(), d.getAuthorTagJson(), null, null, null, null, null);
-                String k = "feed:item:" + mid;
-                try {
-                    String j = objectMapper.writeValueAsString(it);
-                    Long ttl = redis.getExpire(idsKey);
-                    if (ttl != null && ttl > 0) redis.opsForValue().set(k, j, Duration.ofSeconds(ttl)); else redis.opsForValue().set(k, j);
-                } catch (Exception ignored) {}
+                fills.put(mid, FeedFragmentCodec.encodeItem(it));
                 int idx = idList.indexOf(mid);
                 if (idx >= 0) items.set(idx, it);
             }
+            redis.executePipelined((RedisCallback<Object>) c -> {
+                for (Map.Entry<String, byte[]> e : fills.entrySet()) {
+                    byte[] k = bytes("feed:item:" + e.getKey());
+                    if (e.getValue() == null) {
+                        // 随机过期时间
+                        c.stringCommands().setEx(k, 30 + ThreadLocalRandom.current().nextInt(31), NULL_SENTINEL);
+                    } else if (idsTtl > 0) {
+                        c.stringCommands().setEx(k, idsTtl, e.getValue());
+                    } else {
+                        c.stringCommands().set(k, e.getValue());
+                    }
+                }
+                return null;
+            });
         }
         List<Map<String, Long>> countVals = new ArrayList<>(idList.size());
         for (int i = 0; i < idList.size(); i++) {
-            String cj = countJsons != null && i < countJsons.size() ? countJsons.get(i) : null;
-            Map<String, Long> cm = null;
-            if (cj != null) {
-                try { cm = objectMapper.readValue(cj, new TypeReference<>() {
-                }); } catch (Exception ignored) {}
-            }
-            countVals.add(cm);
+            Object cr = i + 1 < res.size() ? res.get(i + 1) : null;
+            countVals.add(parseCountHash(cr));
         }
 
         List<String> needCountsIds = new ArrayList<>();
@@ -303,28 +681,36 @@ public class KnowPostFeedServiceImpl implements KnowPostFeedService {
         }
         if (!needCountsIds.isEmpty()) {
             Map<String, Map<String, Long>> batch = counterService.getCountsBatch("knowpost", needCountsIds, List.of("like","fav"));
-
-            for (String nid : needCountsIds) {
-                Map<String, Long> m = batch.getOrDefault(nid, Map.of("like",0L,"fav",0L));
-                String k = "feed:count:" + nid;
-                try {
-                    String j = objectMapper.writeValueAsString(m);
+            long ttl = idsTtl > 0 ? idsTtl : redis.getExpire(idsKey);
+            redis.executePipelined((RedisCallback<Object>) connection -> {
+                for (String nid : needCountsIds) {
+                    Map<String, Long> m = batch.getOrDefault(nid, Map.of("like", 0L, "fav", 0L));
+                    byte[] k = bytes(countKey(nid));
+                    connection.hashCommands().hMSet(k, Map.of(
+                            F_LIKE, bytes(String.valueOf(m.getOrDefault("like", 0L))),
+                            F_FAV, bytes(String.valueOf(m.getOrDefault("fav", 0L)))));
                     // 计数片段 TTL 与 idsKey 对齐，保证片段整体一致性
-                    long ttl = redis.getExpire(idsKey);
                     if (ttl > 0) {
-                        redis.opsForValue().set(k, j, Duration.ofSeconds(ttl));
-                    } else {
-                        redis.opsForValue().set(k, j);
+                        connection.keyCommands().expire(k, ttl);
                     }
-                } catch (Exception ignored) {}
-
+                }
+                return null;
+            });
+            for (String nid : needCountsIds) {
                 int idx = idList.indexOf(nid);
                 if (idx >= 0) {
-                    countVals.set(idx, m);
+                    countVals.set(idx, batch.getOrDefault(nid, Map.of("like", 0L, "fav", 0L)));
                 }
             }
         }
 
+        // 用户维度状态实时计算，不落入片段缓存以避免用户数据污染
+        List<String> presentIds = new ArrayList<>(idList.size());
+        for (FeedItemResponse it : items) {
+            if (it != null) presentIds.add(it.id());
+        }
+        Map<String, Map<String, Boolean>> states = userStates(presentIds, uid);
+
         List<FeedItemResponse> enriched = new ArrayList<>(idList.size());
         for (int i = 0; i < idList.size(); i++) {
             FeedItemResponse base = items.get(i);
@@ -332,22 +718,23 @@ public class KnowPostFeedServiceImpl implements KnowPostFeedService {
             Map<String, Long> m = countVals.get(i);
             Long likeCount = m != null ? m.getOrDefault("like", 0L) : 0L;
             Long favoriteCount = m != null ? m.getOrDefault("fav", 0L) : 0L;
-            // 用户维度状态实时计算，不落入片段缓存以避免用户数据污染
-            boolean liked = uid != null && counterService.isLiked("knowpost", base.id(), uid);
-            boolean faved = uid != null && counterService.isFaved("knowpost", base.id(), uid);
+            Map<String, Boolean> st = states.get(base.id());
+            boolean liked = st != null && Boolean.TRUE.equals(st.get("like"));
+            boolean faved = st != null && Boolean.TRUE.equals(st.get("fav"));
             enriched.add(new FeedItemResponse(base.id(), base.title(), base.description(), base.coverImage(), base.tags(), base.authorAvatar(), base.authorNickname(), base.tagJson(), likeCount, favoriteCount, liked, faved, base.isTop()));
         }
         // hasMore 优先使用软缓存值；若缺失，则以“满页”作为兜底判断
         boolean hasMore = hasMoreStr != null ? "1".equals(hasMoreStr) : (idList.size() == size);
-        return new FeedPageResponse(enriched, page, size, hasMore);
+        return new FeedPageResponse(enriched, page, size, hasMore, null);
     }
 
     /**
      * 写入页面缓存与片段缓存：
-     * - pageKey：完整页面 JSON（短 TTL）
+     * - pageKey：完整页面（二进制编码，软 TTL 由新鲜标记承载，值本身为硬 TTL）
      * - idsKey：ID 列表（中 TTL）
-     * - item/count：条目与计数片段（中 TTL）
+     * - item/cnt：条目片段（二进制编码）与计数哈希（中 TTL）
      * - hasMore：软缓存，满页时缓存 true 10~20s，否则 10s
+     * 全部写入合并为一次管道往返。
      * @param pageKey 页面缓存 Key
      * @param idsKey ID 列表 Key
      * @param hasMoreKey 软缓存 Key
@@ -357,100 +744,188 @@ public class KnowPostFeedServiceImpl implements KnowPostFeedService {
      * @param items 条目列表（计数已填充，liked/faved 为空）
      * @param hasMore 是否还有更多
      * @param frTtl 片段缓存 TTL
-     * @param pageTtl 页面缓存 TTL
+     * @param pageSoftTtl 页面缓存软 TTL
      */
-    private void writeCaches(String pageKey, String idsKey, String hasMoreKey, int page, int size, List<KnowPostFeedRow> rows, List<FeedItemResponse> items, boolean hasMore, Duration frTtl, Duration pageTtl) {
-        try {
-            String json = objectMapper.writeValueAsString(new FeedPageResponse(items, page, size, hasMore));
-            redis.opsForValue().set(pageKey, json, pageTtl);
-        } catch (Exception ignored) {}
-        List<String> idVals = new ArrayList<>();
+    private void writeCaches(String pageKey, String idsKey, String hasMoreKey, int page, int size, List<KnowPostFeedRow> rows, List<FeedItemResponse> items, boolean hasMore, Duration frTtl, Duration pageSoftTtl) {
+        byte[] pageBytes = FeedFragmentCodec.encodePage(new FeedPageResponse(items, page, size, hasMore, null));
+        List<String> idVals = new ArrayList<>(rows.size());
         for (KnowPostFeedRow r : rows) idVals.add(String.valueOf(r.getId()));
-        if (!idVals.isEmpty()) {
-            redis.opsForList().leftPushAll(idsKey, idVals);
-            redis.expire(idsKey, frTtl);
-            // 软缓存 hasMore：仅在满页时缓存 true，TTL 很短
-            if (idVals.size() == size && hasMore) {
-                redis.opsForValue().set(hasMoreKey, "1", Duration.ofSeconds(10 + ThreadLocalRandom.current().nextInt(11)));
-            } else {
-                redis.opsForValue().set(hasMoreKey, hasMore ? "1" : "0", Duration.ofSeconds(10));
-            }
-        }
-        // 页面键集合索引，用于按页面维度批量失效与清理
-        redis.opsForSet().add("feed:public:pages", pageKey);
+        writeFragmentsPipelined(pageKey, pageBytes, pageSoftTtl, idsKey, hasMoreKey, idVals, size, hasMore, items, frTtl);
+    }
+
+    /**
+     * 管道批量写入页面/片段缓存，原先约 4N+5 次往返合并为一次：
+     * - pageBytes 非空时写入页面缓存（硬 TTL）并重置新鲜标记（pageSoftTtl）
+     * - idsKey 非空且有条目时重建 ID 列表（DEL + RPUSH + EXPIRE，保持页面顺序且不重复追加）并写 hasMore 软缓存
+     * - 每个条目写入 item 片段、cnt 计数哈希（like/fav 两个字段，便于 HINCRBY 原地更新）与按小时分片的反向索引（frTtl）
+     * 编码在进入管道前完成。
+     * @param pageKey 页面缓存 Key（同时作为反向索引的值）
+     * @param pageBytes 页面编码（可空，空则不写页面缓存）
+     * @param pageSoftTtl 页面缓存软 TTL（硬 TTL 取配置，且不短于软 TTL）
+     * @param idsKey ID 列表 Key（可空，空则不写 ids/hasMore）
+     * @param hasMoreKey 软缓存 Key
+     * @param idVals 按页面顺序的 ID 列表
+     * @param size 每页大小
+     * @param hasMore 是否还有更多
+     * @param items 条目列表（计数已填充，liked/faved 为空）
+     * @param frTtl 片段缓存 TTL
+     */
+    private void writeFragmentsPipelined(String pageKey, byte[] pageBytes, Duration pageSoftTtl,
+                                         String idsKey, String hasMoreKey, List<String> idVals, int size, boolean hasMore,
+                                         List<FeedItemResponse> items, Duration frTtl) {
+        long frSeconds = frTtl.getSeconds();
+        // 反向索引：按时间槽为每个内容建立“页面引用关系”，支持内容更新时快速定位受影响页面
+        long slot = slotClock.currentSlot();
+        long idsSeconds = slotClock.idsTtlSeconds(frSeconds);
+        List<byte[][]> fragments = new ArrayList<>(items.size());
         for (FeedItemResponse it : items) {
-            // 反向索引：按小时为每个内容建立“页面引用关系”，支持内容更新时快速定位受影响页面
-            long hourSlot = System.currentTimeMillis() / 3600000L;
-            String idxKey = "feed:public:index:" + it.id() + ":" + hourSlot;
-            redis.opsForSet().add(idxKey, pageKey);
-            redis.expire(idxKey, frTtl);
-            try {
-                String itemKey = "feed:item:" + it.id();
-                String itemJson = objectMapper.writeValueAsString(it);
-                redis.opsForValue().set(itemKey, itemJson, frTtl);
-                String cntKey = "feed:count:" + it.id();
-                Map<String, Long> cnt = Map.of("like", it.likeCount() == null ? 0L : it.likeCount(), "fav", it.favoriteCount() == null ? 0L : it.favoriteCount());
-                String cntJson = objectMapper.writeValueAsString(cnt);
-                redis.opsForValue().set(cntKey, cntJson, frTtl);
-            } catch (Exception ignored) {}
+            fragments.add(new byte[][]{
+                    bytes("feed:item:" + it.id()), FeedFragmentCodec.encodeItem(it),
+                    bytes(countKey(it.id())),
+                    bytes(String.valueOf(it.likeCount() == null ? 0L : it.likeCount())),
+                    bytes(String.valueOf(it.favoriteCount() == null ? 0L : it.favoriteCount())),
+                    bytes("feed:public:index:" + it.id() + ":" + slot)
+            });
+        }
+        byte[] pageKeyBytes = bytes(pageKey);
+        long softSeconds = pageSoftTtl == null ? 0 : pageSoftTtl.getSeconds();
+        long hardSeconds = Math.max(cacheProps.getSwr().getPageHardSeconds(), softSeconds);
+
+        try {
+            redis.executePipelined((RedisCallback<Object>) connection -> {
+                if (pageBytes != null) {
+                    connection.stringCommands().setEx(pageKeyBytes, hardSeconds, pageBytes);
+                    connection.stringCommands().setEx(bytes(BackgroundRefresher.freshKey(pageKey)), softSeconds, bytes("1"));
+                }
+                if (idsKey != null && !idVals.isEmpty()) {
+                    byte[] ik = bytes(idsKey);
+                    byte[][] vals = new byte[idVals.size()][];
+                    for (int i = 0; i < idVals.size(); i++) vals[i] = bytes(idVals.get(i));
+                    connection.keyCommands().del(ik);
+                    connection.listCommands().rPush(ik, vals);
+                    connection.keyCommands().expire(ik, idsSeconds);
+                    // 软缓存 hasMore：仅在满页时缓存 true，TTL 很短
+                    if (idVals.size() == size && hasMore) {
+                        connection.stringCommands().setEx(bytes(hasMoreKey), 10 + ThreadLocalRandom.current().nextInt(11), bytes("1"));
+                    } else {
+                        connection.stringCommands().setEx(bytes(hasMoreKey), 10, bytes(hasMore ? "1" : "0"));
+                    }
+                }
+                for (byte[][] f : fragments) {
+                    connection.stringCommands().setEx(f[0], frSeconds, f[1]);
+                    connection.hashCommands().hMSet(f[2], Map.of(F_LIKE, f[3], F_FAV, f[4]));
+                    connection.keyCommands().expire(f[2], frSeconds);
+                    connection.setCommands().sAdd(f[5], pageKeyBytes);
+                    connection.keyCommands().expire(f[5], frSeconds);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("feed.public cache write failed pageKey={}", pageKey, e);
         }
     }
 
     /**
      * 用页面数据修复片段缓存，避免只有页面缓存而缺少 ids/item/count 片段。
+     * 与回源写入共用同一条管道，反向索引与 idsKey 保持一致的小时分片。
      * @param page 页面数据
+     * @param pageKey 页面缓存 Key（反向索引的值）
      * @param idsKey ID 列表 Key
      * @param hasMoreKey 软缓存 Key
-     * @param safePage 页码
      * @param safeSize 每页大小
      */
-    private void repairFragmentsFromPage(FeedPageResponse page, String idsKey, String hasMoreKey, int safePage, int safeSize) {
+    private void repairFragmentsFromPage(FeedPageResponse page, String pageKey, String idsKey, String hasMoreKey, int safeSize) {
         try {
             int baseTtl = 60;
             int jitter = ThreadLocalRandom.current().nextInt(30);
             Duration frTtl = Duration.ofSeconds(baseTtl + jitter);
             List<String> idVals = new ArrayList<>();
             for (FeedItemResponse it : page.items()) idVals.add(it.id());
-            if (!idVals.isEmpty()) {
-                redis.opsForList().leftPushAll(idsKey, idVals);
-                redis.expire(idsKey, frTtl);
-                boolean hasMore = page.hasMore();
-                if (idVals.size() == safeSize && hasMore) {
-                    redis.opsForValue().set(hasMoreKey, "1", Duration.ofSeconds(10 + ThreadLocalRandom.current().nextInt(11)));
-                } else {
-                    redis.opsForValue().set(hasMoreKey, hasMore ? "1" : "0", Duration.ofSeconds(10));
-                }
-            }
-            // 片段修复时也补齐反向索引，保持与 idsKey 一致的小时分片
-            long hourSlot = System.currentTimeMillis() / 3600000L;
-            for (FeedItemResponse it : page.items()) {
-                String itemKey = "feed:item:" + it.id();
-                String cntKey = "feed:count:" + it.id();
-                String idxKey = "feed:public:index:" + it.id() + ":" + hourSlot;
-                try {
-                    String itemJson = objectMapper.writeValueAsString(it);
-                    redis.opsForValue().set(itemKey, itemJson, frTtl);
-                    Map<String, Long> cnt = Map.of("like", it.likeCount() == null ? 0L : it.likeCount(), "fav", it.favoriteCount() == null ? 0L : it.favoriteCount());
-                    String cntJson = objectMapper.writeValueAsString(cnt);
-                    redis.opsForValue().set(cntKey, cntJson, frTtl);
-                } catch (Exception ignored) {}
-                // 建立反向索引，便于内容更新时精准失效页面缓存
-                redis.opsForSet().add(idxKey, cacheKey(safePage, safeSize));
-                redis.expire(idxKey, frTtl);
-            }
+            writeFragmentsPipelined(pageKey, null, null, idsKey, hasMoreKey, idVals, safeSize, page.hasMore(), page.items(), frTtl);
             log.info("feed.public fragments repaired idsKey={}", idsKey);
         } catch (Exception ignored) {}
     }
 
     /**
-     * 生成“我的发布”列表的缓存 Key（用户维度）。
+     * 解析计数哈希的 HMGET 结果（like, fav）；哈希不存在或字段缺失时返回 null。
+     */
+    private static Map<String, Long> parseCountHash(Object raw) {
+        if (!(raw instanceof List<?> vals) || vals.size() < 2
+                || !(vals.get(0) instanceof byte[] like) || !(vals.get(1) instanceof byte[] fav)) {
+            return null;
+        }
+        try {
+            return Map.of("like", Long.parseLong(new String(like, StandardCharsets.UTF_8)),
+                    "fav", Long.parseLong(new String(fav, StandardCharsets.UTF_8)));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 计数片段 Key：Redis 哈希（like/fav），计数变更时 HINCRBY 原地更新，无需读改写。
+     */
+    private static String countKey(String id) {
+        return "feed:cnt:" + id;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 获取关注时间线（游标模式）。
+     * 条目 ID 与顺序来自推拉结合的时间线（收件箱 + 大V发件箱），条目内容按 ID 批量回源并过滤不可见内容，
+     * 计数与用户状态批量读取；时间线为用户维度，不做页面缓存。
+     * @param userId 当前用户 ID
+     * @param cursor 上一页返回的 nextCursor；空串或 null 表示首页
+     * @param size 每页数量（1~50）
+     * @return 带 nextCursor 的 Feed 列表（page 固定为 0）
+     */
+    public FeedPageResponse getFollowingFeed(long userId, String cursor, int size) {
+        int safeSize = Math.min(Math.max(size, 1), 50);
+        FeedCursor after = FeedCursor.decode(cursor);
+        List<FollowingTimelineService.Entry> entries = timeline.read(userId,
+                after == null ? null : after.publishTime().toEpochMilli(),
+                after == null ? null : after.id(),
+                safeSize + 1);
+        boolean hasMore = entries.size() > safeSize;
+        if (hasMore) {
+            entries = entries.subList(0, safeSize);
+        }
+        String nextCursor = null;
+        if (hasMore) {
+            FollowingTimelineService.Entry last = entries.getLast();
+            nextCursor = new FeedCursor(Instant.ofEpochMilli(last.score()), last.postId()).encode();
+        }
+        if (entries.isEmpty()) {
+            return new FeedPageResponse(List.of(), 0, safeSize, false, null);
+        }
+
+        List<Long> ids = new ArrayList<>(entries.size());
+        for (FollowingTimelineService.Entry e : entries) ids.add(e.postId());
+        // 按时间线顺序恢复行顺序；已删除或不可见的条目在查询中被过滤
+        Map<Long, KnowPostFeedRow> byId = new HashMap<>();
+        for (KnowPostFeedRow r : mapper.listFeedByIds(ids)) byId.put(r.getId(), r);
+        List<KnowPostFeedRow> rows = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            KnowPostFeedRow r = byId.get(id);
+            if (r != null) rows.add(r);
+        }
+        List<FeedItemResponse> items = mapRowsToItems(rows, userId, false);
+        log.debug("feed.following user={} entries={} items={} hasMore={}", userId, entries.size(), items.size(), hasMore);
+        return new FeedPageResponse(items, 0, safeSize, hasMore, nextCursor);
+    }
+
+    /**
+     * 生成“我的发布”列表的缓存 Key（用户维度，作者代际参与 Key）。
      * @param userId 用户 ID
      * @param page 页码
      * @param size 每页大小
      * @return Redis 页面缓存 Key
      */
     private String myCacheKey(long userId, int page, int size) {
-        return "feed:mine:" + userId + ":" + size + ":" + page;
+        return "feed:mine:" + userId + ":g" + feedCacheService.myGeneration(userId) + ":" + size + ":" + page;
     }
 
     /**
@@ -469,9 +944,9 @@ public class KnowPostFeedServiceImpl implements KnowPostFeedService {
 
         FeedPageResponse local = feedMineCache.getIfPresent(key);
         if (local != null) {
-            hotKey.record(key);
-            maybeExtendTtlMine(key);
-            log.info("feed.mine source=local key={} page={} size={} user={}", key, safePage, safeSize, userId);
+            hotKey.record(key, MINE_PAGE_TTL_SECONDS);
+            tierMetrics.hit("feed.mine", CacheTierMetrics.LOCAL);
+            log.debug("feed.mine source=local key={} page={} size={} user={}", key, safePage, safeSize, userId);
             return local;
         }
 
@@ -484,11 +959,11 @@ public class KnowPostFeedServiceImpl implements KnowPostFeedService {
                 if (hasCounts) {
                     // 覆盖 liked/faved，确保老缓存也能返回用户维度状态
                     feedMineCache.put(key, cachedResp);
-                    hotKey.record(key);
-                    maybeExtendTtlMine(key);
-                    log.info("feed.mine source=page key={} page={} size={} user={}", key, safePage, safeSize, userId);
+                    hotKey.record(key, MINE_PAGE_TTL_SECONDS);
+                    tierMetrics.hit("feed.mine", CacheTierMetrics.PAGE);
+                    log.debug("feed.mine source=page key={} page={} size={} user={}", key, safePage, safeSize, userId);
                 List<FeedItemResponse> enriched = enrich(cachedResp.items(), userId);
-                return new FeedPageResponse(enriched, cachedResp.page(), cachedResp.size(), cachedResp.hasMore());
+                return new FeedPageResponse(enriched, cachedResp.page(), cachedResp.size(), cachedResp.hasMore(), cachedResp.nextCursor());
             }
             } catch (Exception ignored) {}
         }
@@ -500,16 +975,17 @@ public class KnowPostFeedServiceImpl implements KnowPostFeedService {
 
         List<FeedItemResponse> items = mapRowsToItems(rows, userId, true);
 
-        FeedPageResponse resp = new FeedPageResponse(items, safePage, safeSize, hasMore);
+        FeedPageResponse resp = new FeedPageResponse(items, safePage, safeSize, hasMore, null);
         try {
             String json = objectMapper.writeValueAsString(resp);
-            int baseTtl = 30; // 用户维度列表缓存更短
+            int baseTtl = MINE_PAGE_TTL_SECONDS; // 用户维度列表缓存更短
             int jitter = ThreadLocalRandom.current().nextInt(20);
             redis.opsForValue().set(key, json, Duration.ofSeconds(baseTtl + jitter));
             feedMineCache.put(key, resp);
-            hotKey.record(key);
+            hotKey.record(key, MINE_PAGE_TTL_SECONDS);
         } catch (Exception ignored) {}
-        log.info("feed.mine source=db key={} page={} size={} user={} hasMore={}", key, safePage, safeSize, userId, hasMore);
+        tierMetrics.hit("feed.mine", CacheTierMetrics.DB);
+        log.debug("feed.mine source=db key={} page={} size={} user={} hasMore={}", key, safePage, safeSize, userId, hasMore);
         return resp;
     }
 
@@ -530,23 +1006,31 @@ public class KnowPostFeedServiceImpl implements KnowPostFeedService {
 
     /**
      * 将数据库行映射为响应条目。
-     * 计数通过计数服务填充；liked/faved 按需计算；isTop 仅在个人列表返回。
+     * 计数通过计数服务批量填充；liked/faved 按需计算；isTop 仅在个人列表返回。
      * @param rows 查询结果行
      * @param userIdNullable 当前用户 ID（可空）
      * @param includeIsTop 是否在响应中包含 isTop
      * @return 条目列表
      */
     private List<FeedItemResponse> mapRowsToItems(List<KnowPostFeedRow> rows, Long userIdNullable, boolean includeIsTop) {
+        List<String> ids = new ArrayList<>(rows.size());
+        for (KnowPostFeedRow r : rows) ids.add(String.valueOf(r.getId()));
+        Map<String, Map<String, Boolean>> states = userStates(ids, userIdNullable);
+        // 整页计数一次管道读取；SDS 缺失按零返回并由计数服务后台重建，不在回源路径上逐条加锁重建
+        Map<String, Map<String, Long>> countsBatch = ids.isEmpty()
+                ? Collections.emptyMap()
+                : counterService.getCountsBatch("knowpost", ids, List.of("like", "fav"));
         List<FeedItemResponse> items = new ArrayList<>(rows.size());
         for (KnowPostFeedRow r : rows) {
             List<String> tags = parseStringArray(r.getTags());
             List<String> imgs = parseStringArray(r.getImgUrls());
             String cover = imgs.isEmpty() ? null : imgs.getFirst();
-            Map<String, Long> counts = counterService.getCounts("knowpost", String.valueOf(r.getId()), List.of("like", "fav"));
+            Map<String, Long> counts = countsBatch.getOrDefault(String.valueOf(r.getId()), Collections.emptyMap());
             Long likeCount = counts.getOrDefault("like", 0L);
             Long favoriteCount = counts.getOrDefault("fav", 0L);
-            Boolean liked = userIdNullable != null && counterService.isLiked("knowpost", String.valueOf(r.getId()), userIdNullable);
-            Boolean faved = userIdNullable != null && counterService.isFaved("knowpost", String.valueOf(r.getId()), userIdNullable);
+            Map<String, Boolean> st = states.get(String.valueOf(r.getId()));
+            Boolean liked = st != null && Boolean.TRUE.equals(st.get("like"));
+            Boolean faved = st != null && Boolean.TRUE.equals(st.get("fav"));
             Boolean isTop = includeIsTop ? r.getIsTop() : null;
             items.add(new FeedItemResponse(
                     String.valueOf(r.getId()),
@@ -568,28 +1052,9 @@ public class KnowPostFeedServiceImpl implements KnowPostFeedService {
     }
 
     /**
-     * 根据热点级别动态延长公共页面缓存 TTL。
-     * @param key 页面缓存 Key
-     */
-    private void maybeExtendTtlPublic(String key) {
-        int baseTtl = 60;
-        int target = hotKey.ttlForPublic(baseTtl, key);
-        Long currentTtl = redis.getExpire(key);
-        if (currentTtl < target) {
-            redis.expire(key, Duration.ofSeconds(target));
-        }
-    }
-
-    /**
-     * 根据热点级别动态延长“我的发布”页面缓存 TTL。
-     * @param key 页面缓存 Key
+     * 公共页面热点续期的基准 TTL（页面硬 TTL），热点等级的扩展秒数在此基础上叠加，由后台续期任务生效。
      */
-    private void maybeExtendTtlMine (String key) {
-        int baseTtl = 30;
-        int target = hotKey.ttlForMine(baseTtl, key);
-        Long currentTtl = redis.getExpire(key);
-        if (currentTtl < target) {
-            redis.expire(key, Duration.ofSeconds(target));
-        }
+    private int publicPageTtl() {
+        return cacheProps.getSwr().getPageHardSeconds();
     }
 }
@@ -1,8 +1,10 @@
 package com.tongji.knowpost.service.impl;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.github.benmanes.caffeine.cache.Cache;
 import com.tongji.knowpost.service.KnowPostService;
 import com.tongji.knowpost.service.FeedCacheService;
+import com.tongji.knowpost.service.FollowingTimelineService;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.tongji.common.exception.BusinessException;
@@ -11,24 +13,44 @@ import com.tongji.knowpost.id.SnowflakeIdGenerator;
 import com.tongji.knowpost.mapper.KnowPostMapper;
 import com.tongji.knowpost.model.KnowPost;
 import com.tongji.knowpost.model.KnowPostDetailRow;
+import com.tongji.knowpost.api.dto.KnowPostDetailBatchResponse;
 import com.tongji.knowpost.api.dto.KnowPostDetailResponse;
 import com.tongji.counter.service.CounterService;
+import com.tongji.counter.service.ViewCounterService;
 import com.tongji.storage.config.OssProperties;
 import com.tongji.llm.rag.RagIndexService;
+import com.tongji.cache.config.CacheProperties;
 import com.tongji.cache.hotkey.HotKeyDetector;
+import com.tongji.cache.invalidation.L1InvalidationBus;
+import com.tongji.cache.metrics.CacheTierMetrics;
+import com.tongji.cache.refresh.BackgroundRefresher;
+import com.tongji.cache.singleflight.SingleFlight;
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Service
 @RequiredArgsConstructor
@@ -42,12 +64,31 @@ public class KnowPostServiceImpl implements KnowPostService {
     private final FeedCacheService feedCacheService;
     private final CounterService counterService;
     private final com.tongji.counter.service.UserCounterService userCounterService;
+    private final ViewCounterService viewCounter;
     private final StringRedisTemplate redis;
     private final HotKeyDetector hotKey;
     private static final Logger log = LoggerFactory.getLogger(KnowPostServiceImpl.class);
     private static final int DETAIL_LAYOUT_VER = 1;
-    private final ConcurrentHashMap<String, Object> singleFlight = new ConcurrentHashMap<>();
+    private static final long DOUBLE_DELETE_DELAY_MS = 200L;
+    private final SingleFlight singleFlight;
     private final RagIndexService ragIndexService;
+    private final FollowingTimelineService timeline;
+    private final BackgroundRefresher refresher;
+    private final CacheProperties cacheProps;
+    /** 热点详情本地缓存（知文 ID -> 不含用户状态的详情） */
+    private final Cache<Long, KnowPostDetailResponse> knowPostDetailCache;
+    private final L1InvalidationBus l1Bus;
+    private final CacheTierMetrics tierMetrics;
+
+    /**
+     * 详情本地缓存接入跨实例失效总线与计数增量；全局热点详情由热点汇总触发预热。
+     */
+    @PostConstruct
+    void registerDetailCache() {
+        l1Bus.register(L1InvalidationBus.KNOWPOST_DETAIL, knowPostDetailCache, Long::valueOf);
+        l1Bus.onDelta(L1InvalidationBus.KNOWPOST_DETAIL, (eid, metric, delta, targets) -> adjustLocalDetail(eid, metric, delta));
+        hotKey.onGlobalHot("knowpost:detail:", this::warmLocalDetail);
+    }
 
     /**
      * 创建草稿并返回新 ID。
@@ -78,7 +119,7 @@ public class KnowPostServiceImpl implements KnowPostService {
         // 缓存双删（更新前先删除）
         feedCacheService.deleteAllFeedCaches();
         feedCacheService.deleteMyFeedCaches(creatorId);
-        redis.delete("knowpost:detail:" + id + ":v" + DETAIL_LAYOUT_VER);
+        evictDetail(id);
         KnowPost post = KnowPost.builder()
                 .id(id)
                 .creatorId(creatorId)
@@ -93,10 +134,8 @@ public class KnowPostServiceImpl implements KnowPostService {
         if (updated == 0) {
             throw new BusinessException(ErrorCode.BAD_REQUEST, "草稿不存在或无权限");
         }
-        // 更新后再次删除，避免并发下写回旧值
-        feedCacheService.doubleDeleteAll(200);
-        feedCacheService.doubleDeleteMy(creatorId, 200);
-        redis.delete("knowpost:detail:" + id + ":v" + DETAIL_LAYOUT_VER);
+        // 提交后再次删除，并在后台延迟删除第三次，避免并发下写回旧值
+        invalidateAfterCommit(creatorId, id);
 
         // 触发一次预索引（草稿阶段可能因可见性/状态被跳过）
         try {
@@ -114,7 +153,7 @@ public class KnowPostServiceImpl implements KnowPostService {
         // 缓存双删（更新前先删除）
         feedCacheService.deleteAllFeedCaches();
         feedCacheService.deleteMyFeedCaches(creatorId);
-        redis.delete("knowpost:detail:" + id + ":v" + DETAIL_LAYOUT_VER);
+        evictDetail(id);
         KnowPost post = KnowPost.builder()
                 .id(id)
                 .creatorId(creatorId)
@@ -134,10 +173,8 @@ public class KnowPostServiceImpl implements KnowPostService {
         if (updated == 0) {
             throw new BusinessException(ErrorCode.BAD_REQUEST, "草稿不存在或无权限");
         }
-        // 更新后再次删除，避免并发下写回旧值
-        feedCacheService.doubleDeleteAll(200);
-        feedCacheService.doubleDeleteMy(creatorId, 200);
-        redis.delete("knowpost:detail:" + id + ":v" + DETAIL_LAYOUT_VER);
+        // 提交后再次删除，并在后台延迟删除第三次，避免并发下写回旧值
+        invalidateAfterCommit(creatorId, id);
     }
 
     /**
@@ -148,7 +185,7 @@ public class KnowPostServiceImpl implements KnowPostService {
         // 缓存双删（更新前先删除）
         feedCacheService.deleteAllFeedCaches();
         feedCacheService.deleteMyFeedCaches(creatorId);
-        redis.delete("knowpost:detail:" + id + ":v" + DETAIL_LAYOUT_VER);
+        evictDetail(id);
         int updated = mapper.publish(id, creatorId);
         if (updated == 0) {
             throw new BusinessException(ErrorCode.BAD_REQUEST, "草稿不存在或无权限");
@@ -156,11 +193,10 @@ public class KnowPostServiceImpl implements KnowPostService {
         try {
             userCounterService.incrementPosts(creatorId, 1);
         } catch (Exception ignored) {}
+        syncTimeline(creatorId, id);
 
-        // 更新后再次删除，避免并发下写回旧值
-        feedCacheService.doubleDeleteAll(200);
-        feedCacheService.doubleDeleteMy(creatorId, 200);
-        redis.delete("knowpost:detail:" + id + ":v" + DETAIL_LAYOUT_VER);
+        // 提交后再次删除，并在后台延迟删除第三次，避免并发下写回旧值
+        invalidateAfterCommit(creatorId, id);
 
         // 发布成功后触发一次预索引，减少首次问答冷启动
         try {
@@ -177,14 +213,12 @@ public class KnowPostServiceImpl implements KnowPostService {
     public void updateTop(long creatorId, long id, boolean isTop) {
         feedCacheService.deleteAllFeedCaches();
         feedCacheService.deleteMyFeedCaches(creatorId);
-        redis.delete("knowpost:detail:" + id + ":v" + DETAIL_LAYOUT_VER);
+        evictDetail(id);
         int updated = mapper.updateTop(id, creatorId, isTop);
         if (updated == 0) {
             throw new BusinessException(ErrorCode.BAD_REQUEST, "草稿不存在或无权限");
         }
-        feedCacheService.doubleDeleteAll(200);
-        feedCacheService.doubleDeleteMy(creatorId, 200);
-        redis.delete("knowpost:detail:" + id + ":v" + DETAIL_LAYOUT_VER);
+        invalidateAfterCommit(creatorId, id);
     }
 
     /**
@@ -197,14 +231,13 @@ public class KnowPostServiceImpl implements KnowPostService {
         }
         feedCacheService.deleteAllFeedCaches();
         feedCacheService.deleteMyFeedCaches(creatorId);
-        redis.delete("knowpost:detail:" + id + ":v" + DETAIL_LAYOUT_VER);
+        evictDetail(id);
         int updated = mapper.updateVisibility(id, creatorId, visible);
         if (updated == 0) {
             throw new BusinessException(ErrorCode.BAD_REQUEST, "草稿不存在或无权限");
         }
-        feedCacheService.doubleDeleteAll(200);
-        feedCacheService.doubleDeleteMy(creatorId, 200);
-        redis.delete("knowpost:detail:" + id + ":v" + DETAIL_LAYOUT_VER);
+        syncTimeline(creatorId, id);
+        invalidateAfterCommit(creatorId, id);
     }
 
     /**
@@ -214,14 +247,80 @@ public class KnowPostServiceImpl implements KnowPostService {
     public void delete(long creatorId, long id) {
         feedCacheService.deleteAllFeedCaches();
         feedCacheService.deleteMyFeedCaches(creatorId);
-        redis.delete("knowpost:detail:" + id + ":v" + DETAIL_LAYOUT_VER);
+        evictDetail(id);
         int updated = mapper.softDelete(id, creatorId);
         if (updated == 0) {
             throw new BusinessException(ErrorCode.BAD_REQUEST, "草稿不存在或无权限");
         }
-        feedCacheService.doubleDeleteAll(200);
-        feedCacheService.doubleDeleteMy(creatorId, 200);
-        redis.delete("knowpost:detail:" + id + ":v" + DETAIL_LAYOUT_VER);
+        syncTimeline(creatorId, id);
+        invalidateAfterCommit(creatorId, id);
+    }
+
+    /**
+     * 写路径的延时双删（事务提交后执行）：立即失效公共 Feed、作者“我的发布”与详情缓存，
+     * 并登记延迟失效由后台调度器执行，写请求在提交后即返回，不在请求线程内等待。
+     */
+    private void invalidateAfterCommit(long creatorId, long id) {
+        String detailKey = detailKey(id);
+        afterCommit(() -> {
+            try {
+                feedCacheService.doubleDeleteAll(DOUBLE_DELETE_DELAY_MS);
+                feedCacheService.doubleDeleteMy(creatorId, DOUBLE_DELETE_DELAY_MS);
+                feedCacheService.doubleDeleteKey(detailKey, DOUBLE_DELETE_DELAY_MS,
+                        () -> l1Bus.invalidate(L1InvalidationBus.KNOWPOST_DETAIL, id));
+            } catch (Exception e) {
+                log.warn("Cache invalidation after commit failed, post {}: {}", id, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 删除详情页面缓存，并清除各实例本地缓存中的该详情。
+     */
+    private void evictDetail(long id) {
+        redis.delete(detailKey(id));
+        l1Bus.invalidate(L1InvalidationBus.KNOWPOST_DETAIL, id);
+    }
+
+    private static String detailKey(long id) {
+        return "knowpost:detail:" + id + ":v" + DETAIL_LAYOUT_VER;
+    }
+
+    /**
+     * 按知文当前状态同步关注时间线（事务提交后执行，避免推送未提交的数据）：
+     * 已发布且对关注者可见（public/followers）时写入发件箱并推送，否则从发件箱移除。
+     */
+    private void syncTimeline(long creatorId, long id) {
+        afterCommit(() -> {
+            try {
+                KnowPost post = mapper.findById(id);
+                boolean visibleToFollowers = post != null && "published".equals(post.getStatus()) && post.getPublishTime() != null
+                        && ("public".equals(post.getVisible()) || "followers".equals(post.getVisible()));
+                if (visibleToFollowers) {
+                    timeline.onPublished(creatorId, id, post.getPublishTime().toEpochMilli());
+                } else {
+                    timeline.onRemoved(creatorId, id);
+                }
+            } catch (Exception e) {
+                log.warn("Timeline sync failed, post {}: {}", id, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 在当前事务提交后执行；无事务时立即执行。
+     */
+    private static void afterCommit(Runnable task) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    task.run();
+                }
+            });
+        } else {
+            task.run();
+        }
     }
 
     private boolean isValidVisible(String visible) {
@@ -253,183 +352,509 @@ public class KnowPostServiceImpl implements KnowPostService {
      * 获取知文详情（含作者信息、图片列表）。
      * - 公开策略：published + public 可匿名访问；否则需作者本人访问。
      * - 软删除内容不可见。
+     * - 仅公开内容写入页面缓存，非公开内容每次回源并按当前用户校验权限。
+     * - 页面缓存为软/硬双 TTL：过软 TTL 后仍返回旧值并由一个后台任务重建。
+     * - 热度达到 MEDIUM 的公开详情进入本地缓存，命中时不访问 Redis（用户状态除外）。
+     * - 成功返回时登记一次浏览（仅内存，后台批量去重刷写）。
      */
     @Transactional(readOnly = true)
     public KnowPostDetailResponse getDetail(long id, Long currentUserIdNullable) {
-        String pageKey = "knowpost:detail:" + id + ":v" + DETAIL_LAYOUT_VER;
-        String cached = redis.opsForValue().get(pageKey);
+        String pageKey = detailKey(id);
+        KnowPostDetailResponse local = knowPostDetailCache.getIfPresent(id);
+        if (local != null) {
+            hotKey.record(pageKey, cacheProps.getSwr().getDetailHardSeconds());
+            tierMetrics.hit("knowpost.detail", CacheTierMetrics.LOCAL);
+            log.debug("detail source=local key={}", pageKey);
+            viewCounter.recordView("knowpost", String.valueOf(id), currentUserIdNullable);
+            return withUserState(local, id, currentUserIdNullable);
+        }
+
+        CachedDetail cached = readDetailCache(pageKey, id);
         if (cached != null) {
-            if ("NULL".equals(cached)) {
-                throw new BusinessException(ErrorCode.BAD_REQUEST, "内容不存在");
+            // 只做内存计数；热点详情的 TTL 续期由后台任务批量执行
+            hotKey.record(pageKey, cacheProps.getSwr().getDetailHardSeconds());
+            admitLocal(pageKey, id, cached.resp());
+            if (!cached.fresh()) {
+                refresher.refreshStale(pageKey, () -> singleFlight.execute(pageKey, () -> loadDetailFromDb(id, pageKey, true)));
             }
-            try {
-                KnowPostDetailResponse base = objectMapper.readValue(cached, KnowPostDetailResponse.class);
-                hotKey.record(pageKey);
-                maybeExtendTtlDetail(pageKey);
-                String cntKey = "feed:count:" + id;
-                String cntJson = redis.opsForValue().get(cntKey);
-                Long likeCount = base.likeCount();
-                Long favoriteCount = base.favoriteCount();
-                if (cntJson != null) {
-                    try {
-                        Map<String, Long> cm = objectMapper.readValue(cntJson, new TypeReference<Map<String, Long>>(){});
-                        likeCount = cm.getOrDefault("like", likeCount == null ? 0L : likeCount);
-                        favoriteCount = cm.getOrDefault("fav", favoriteCount == null ? 0L : favoriteCount);
-                    } catch (Exception ignored) {}
-                }
-                boolean liked = currentUserIdNullable != null && counterService.isLiked("knowpost", String.valueOf(id), currentUserIdNullable);
-                boolean faved = currentUserIdNullable != null && counterService.isFaved("knowpost", String.valueOf(id), currentUserIdNullable);
-                log.info("detail source=page key={}", pageKey);
-                return new KnowPostDetailResponse(
-                        String.valueOf(id),
-                        base.title(),
-                        base.description(),
-                        base.contentUrl(),
-                        base.images(),
-                        base.tags(),
-                        base.authorId(),
-                        base.authorAvatar(),
-                        base.authorNickname(),
-                        base.authorTagJson(),
-                        likeCount,
-                        favoriteCount,
-                        liked,
-                        faved,
-                        base.isTop(),
-                        base.visible(),
-                        base.type(),
-                        base.publishTime()
-                );
-            } catch (Exception ignored) {}
-        }
-
-        Object lock = singleFlight.computeIfAbsent(pageKey, k -> new Object());
-        synchronized (lock) {
-            String again = redis.opsForValue().get(pageKey);
-            if (again != null && !"NULL".equals(again)) {
-                try {
-                    KnowPostDetailResponse base = objectMapper.readValue(again, KnowPostDetailResponse.class);
-                    hotKey.record(pageKey);
-                    maybeExtendTtlDetail(pageKey);
-                    String cntKey = "feed:count:" + id;
-                    String cntJson = redis.opsForValue().get(cntKey);
-                    Long likeCount = base.likeCount();
-                    Long favoriteCount = base.favoriteCount();
-                    if (cntJson != null) {
-                        try {
-                            Map<String, Long> cm = objectMapper.readValue(cntJson, new TypeReference<Map<String, Long>>(){});
-                            likeCount = cm.getOrDefault("like", likeCount == null ? 0L : likeCount);
-                            favoriteCount = cm.getOrDefault("fav", favoriteCount == null ? 0L : favoriteCount);
-                        } catch (Exception ignored) {}
-                    }
-                    boolean liked = currentUserIdNullable != null && counterService.isLiked("knowpost", String.valueOf(id), currentUserIdNullable);
-                    boolean faved = currentUserIdNullable != null && counterService.isFaved("knowpost", String.valueOf(id), currentUserIdNullable);
-                    log.info("detail source=page(after-flight) key={}", pageKey);
-                    singleFlight.remove(pageKey);
-                    return new KnowPostDetailResponse(
-                            String.valueOf(id),
-                            base.title(),
-                            base.description(),
-                            base.contentUrl(),
-                            base.images(),
-                            base.tags(),
-                            base.authorId(),
-                            base.authorAvatar(),
-                            base.authorNickname(),
-                            base.authorTagJson(),
-                            likeCount,
-                            favoriteCount,
-                            liked,
-                            faved,
-                            base.isTop(),
-                            base.visible(),
-                            base.type(),
-                            base.publishTime()
-                    );
-                } catch (Exception ignored) {}
+            tierMetrics.hit("knowpost.detail", CacheTierMetrics.PAGE);
+            log.debug("detail source=page key={} fresh={}", pageKey, cached.fresh());
+            viewCounter.recordView("knowpost", String.valueOf(id), currentUserIdNullable);
+            return withUserState(cached.resp(), id, currentUserIdNullable);
+        }
+
+        // 单航班：同一详情并发回源只由一个请求执行，其余请求共享结果（含“内容不存在”异常）
+        DetailBase loaded = singleFlight.execute(pageKey, () -> loadDetail(id, pageKey));
+        hotKey.record(pageKey, cacheProps.getSwr().getDetailHardSeconds());
+        if (loaded.isPublic()) {
+            admitLocal(pageKey, id, loaded.resp());
+        }
+        boolean isOwner = currentUserIdNullable != null && String.valueOf(currentUserIdNullable).equals(loaded.resp().authorId());
+        if (!loaded.isPublic() && !isOwner) {
+            throw new BusinessException(ErrorCode.BAD_REQUEST, "无权限查看");
+        }
+        viewCounter.recordView("knowpost", String.valueOf(id), currentUserIdNullable);
+        return withUserState(loaded.resp(), id, currentUserIdNullable);
+    }
+
+    /**
+     * 批量获取知文详情，按请求顺序返回（重复 ID 只返回一次），可见性规则与单条详情一致。
+     * 往返次数与 ID 数量无关：本地缓存 → 一次管道（MGET 页面 + 新鲜标记 + 计数哈希）→ 一次 IN 查询回源
+     * （一次管道读计数、一次管道回写缓存）→ 一次批量读取用户状态。
+     * 不存在、已删除或无权限查看的 ID 列入 missing，不抛异常；与单条详情一致，每条返回的详情登记一次浏览。
+     * @param ids 知文 ID 列表
+     * @param currentUserIdNullable 当前用户 ID（为空表示匿名）
+     * @return 详情列表与缺失 ID
+     */
+    @Transactional(readOnly = true)
+    public KnowPostDetailBatchResponse getDetails(List<Long> ids, Long currentUserIdNullable) {
+        List<Long> uniq = new ArrayList<>(new LinkedHashSet<>(ids));
+        uniq.removeIf(Objects::isNull);
+        int hardTtl = cacheProps.getSwr().getDetailHardSeconds();
+        Map<Long, KnowPostDetailResponse> found = new HashMap<>();
+        Set<Long> missing = new HashSet<>();
+
+        List<Long> remote = new ArrayList<>();
+        for (Long id : uniq) {
+            hotKey.record(detailKey(id), hardTtl);
+            KnowPostDetailResponse local = knowPostDetailCache.getIfPresent(id);
+            if (local != null) {
+                found.put(id, local);
+                tierMetrics.hit("knowpost.detail", CacheTierMetrics.LOCAL);
+            } else {
+                remote.add(id);
             }
+        }
+
+        List<Long> dbIds = remote.isEmpty() ? List.of() : readDetailPages(remote, found, missing);
+        if (!dbIds.isEmpty()) {
+            loadDetailsFromDb(dbIds, currentUserIdNullable, found, missing);
+        }
 
-            KnowPostDetailRow row = mapper.findDetailById(id);
-            if (row == null || "deleted".equals(row.getStatus())) {
-                redis.opsForValue().set(pageKey, "NULL", java.time.Duration.ofSeconds(30 + java.util.concurrent.ThreadLocalRandom.current().nextInt(31)));
-                singleFlight.remove(pageKey);
-                throw new BusinessException(ErrorCode.BAD_REQUEST, "内容不存在");
+        List<String> idStrs = new ArrayList<>(found.size());
+        for (Long id : uniq) {
+            if (found.containsKey(id)) idStrs.add(String.valueOf(id));
+        }
+        Map<String, Map<String, Boolean>> states = currentUserIdNullable == null || idStrs.isEmpty()
+                ? Collections.emptyMap()
+                : counterService.getUserStatesBatch("knowpost", idStrs, currentUserIdNullable, List.of("like", "fav"));
+        List<KnowPostDetailResponse> items = new ArrayList<>(found.size());
+        List<String> missingOut = new ArrayList<>();
+        for (Long id : uniq) {
+            KnowPostDetailResponse base = found.get(id);
+            if (base == null) {
+                missingOut.add(String.valueOf(id));
+                continue;
             }
+            items.add(withUserState(base, id, states.getOrDefault(String.valueOf(id), Collections.emptyMap())));
+            viewCounter.recordView("knowpost", String.valueOf(id), currentUserIdNullable);
+        }
+        return new KnowPostDetailBatchResponse(items, missingOut);
+    }
 
-            boolean isPublic = "published".equals(row.getStatus()) && "public".equals(row.getVisible());
-            boolean isOwner = currentUserIdNullable != null && row.getCreatorId() != null && currentUserIdNullable.equals(row.getCreatorId());
-            if (!isPublic && !isOwner) {
-                singleFlight.remove(pageKey);
-                throw new BusinessException(ErrorCode.BAD_REQUEST, "无权限查看");
+    /**
+     * 一次管道读取多个详情页面缓存：MGET 页面值，并逐条读取新鲜标记与计数哈希。
+     * 命中的写入 found（过软 TTL 的提交后台刷新），空值哨兵记入 missing。
+     * @return 未命中、需回源的 ID
+     */
+    private List<Long> readDetailPages(List<Long> ids, Map<Long, KnowPostDetailResponse> found, Set<Long> missing) {
+        byte[][] keys = new byte[ids.size()][];
+        for (int i = 0; i < ids.size(); i++) {
+            keys[i] = detailKey(ids.get(i)).getBytes(StandardCharsets.UTF_8);
+        }
+        List<Object> res = redis.executePipelined((RedisCallback<Object>) c -> {
+            c.stringCommands().mGet(keys);
+            for (Long id : ids) {
+                c.keyCommands().exists(BackgroundRefresher.freshKey(detailKey(id)).getBytes(StandardCharsets.UTF_8));
+                c.hashCommands().hMGet(("feed:cnt:" + id).getBytes(StandardCharsets.UTF_8),
+                        "like".getBytes(StandardCharsets.UTF_8), "fav".getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        }, null);
+        List<?> values = !res.isEmpty() && res.get(0) instanceof List<?> l ? l : Collections.emptyList();
+        List<Long> miss = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            long id = ids.get(i);
+            byte[] raw = i < values.size() && values.get(i) instanceof byte[] b ? b : null;
+            if (raw == null) {
+                miss.add(id);
+                continue;
             }
+            if (isNullSentinel(raw)) {
+                missing.add(id);
+                continue;
+            }
+            int at = 1 + 2 * i;
+            boolean fresh = at < res.size() && Boolean.TRUE.equals(res.get(at));
+            CachedDetail cached = parseCachedDetail(raw, at + 1 < res.size() ? res.get(at + 1) : null, fresh);
+            if (cached == null) {
+                miss.add(id);
+                continue;
+            }
+            String pageKey = detailKey(id);
+            found.put(id, cached.resp());
+            admitLocal(pageKey, id, cached.resp());
+            if (!fresh) {
+                refresher.refreshStale(pageKey, () -> singleFlight.execute(pageKey, () -> loadDetailFromDb(id, pageKey, true)));
+            }
+            tierMetrics.hit("knowpost.detail", CacheTierMetrics.PAGE);
+        }
+        return miss;
+    }
 
-            List<String> images = parseStringArray(row.getImgUrls());
-            List<String> tags = parseStringArray(row.getTags());
-            Map<String, Long> counts = counterService.getCounts("knowpost", String.valueOf(row.getId()), List.of("like", "fav"));
-            Long likeCount = counts.getOrDefault("like", 0L);
-            Long favoriteCount = counts.getOrDefault("fav", 0L);
-
-            KnowPostDetailResponse resp = new KnowPostDetailResponse(
-                    String.valueOf(row.getId()),
-                    row.getTitle(),
-                    row.getDescription(),
-                    row.getContentUrl(),
-                    images,
-                    tags,
-                    String.valueOf(row.getCreatorId()),
-                    row.getAuthorAvatar(),
-                    row.getAuthorNickname(),
-                    row.getAuthorTagJson(),
-                    likeCount,
-                    favoriteCount,
-                    null,
-                    null,
-                    row.getIsTop(),
-                    row.getVisible(),
-                    row.getType(),
-                    row.getPublishTime()
-            );
+    /**
+     * 批量回源：一次 IN 查询与一次计数批量读取，公开详情与空值哨兵在一次管道中回写缓存。
+     * 非公开内容仅作者本人可见且不写缓存；不存在/已删除的记入 missing。
+     */
+    private void loadDetailsFromDb(List<Long> ids, Long uid, Map<Long, KnowPostDetailResponse> found, Set<Long> missing) {
+        List<KnowPostDetailRow> rows = mapper.findDetailByIds(ids);
+        Map<Long, KnowPostDetailRow> byId = new HashMap<>();
+        for (KnowPostDetailRow row : rows) {
+            if (row != null && !"deleted".equals(row.getStatus())) {
+                byId.put(row.getId(), row);
+            }
+        }
+        List<String> idStrs = new ArrayList<>(byId.size());
+        for (Long id : byId.keySet()) idStrs.add(String.valueOf(id));
+        Map<String, Map<String, Long>> counts = idStrs.isEmpty()
+                ? Collections.emptyMap()
+                : counterService.getCountsBatch("knowpost", idStrs, List.of("like", "fav"));
+
+        Map<String, KnowPostDetailResponse> pages = new LinkedHashMap<>();
+        List<String> nullKeys = new ArrayList<>();
+        for (Long id : ids) {
+            KnowPostDetailRow row = byId.get(id);
+            if (row == null) {
+                missing.add(id);
+                nullKeys.add(detailKey(id));
+                continue;
+            }
+            KnowPostDetailResponse resp = detailFromRow(row, counts.getOrDefault(String.valueOf(id), Map.of()));
+            boolean isOwner = uid != null && String.valueOf(uid).equals(resp.authorId());
+            if (isPublic(row)) {
+                pages.put(detailKey(id), resp);
+                admitLocal(detailKey(id), id, resp);
+                found.put(id, resp);
+            } else if (isOwner) {
+                found.put(id, resp);
+            } else {
+                missing.add(id);
+            }
+            tierMetrics.hit("knowpost.detail", CacheTierMetrics.DB);
+        }
+        writeDetailPages(pages);
+        if (!nullKeys.isEmpty()) {
+            redis.executePipelined((RedisCallback<Object>) c -> {
+                for (String k : nullKeys) {
+                    c.stringCommands().setEx(k.getBytes(StandardCharsets.UTF_8),
+                            30 + ThreadLocalRandom.current().nextInt(31), "NULL".getBytes(StandardCharsets.UTF_8));
+                }
+                return null;
+            });
+        }
+        log.debug("detail.batch source=db ids={} found={}", ids.size(), byId.size());
+    }
+
+    /**
+     * 热点详情进入本地缓存：仅当热度等级（本地与全局较大者）达到 MEDIUM 时收录，冷详情不占用堆内存。
+     */
+    private void admitLocal(String pageKey, long id, KnowPostDetailResponse resp) {
+        if (hotKey.level(pageKey).compareTo(HotKeyDetector.Level.MEDIUM) >= 0) {
+            knowPostDetailCache.put(id, resp);
+        }
+    }
+
+    /**
+     * 全局热点详情预热：从 Redis 页面缓存载入本地缓存，不回源数据库。
+     * @param pageKey 详情缓存 Key（knowpost:detail:{id}:v{ver}）
+     */
+    private void warmLocalDetail(String pageKey) {
+        String[] parts = pageKey.split(":");
+        if (parts.length < 3) {
+            return;
+        }
+        try {
+            long id = Long.parseLong(parts[2]);
+            CachedDetail cached = readDetailCache(pageKey, id);
+            if (cached != null) {
+                knowPostDetailCache.put(id, cached.resp());
+            }
+        } catch (Exception ignored) {}
+    }
+
+    /**
+     * 在本实例详情本地缓存中原地调整计数；由失效总线在本实例发布与接收其他实例广播时调用。
+     */
+    private void adjustLocalDetail(String eid, String metric, int delta) {
+        long id;
+        try {
+            id = Long.parseLong(eid);
+        } catch (NumberFormatException e) {
+            return;
+        }
+        knowPostDetailCache.asMap().computeIfPresent(id, (k, cur) -> {
+            Long like = cur.likeCount();
+            Long fav = cur.favoriteCount();
+            if ("like".equals(metric)) like = Math.max(0L, (like == null ? 0L : like) + delta);
+            if ("fav".equals(metric)) fav = Math.max(0L, (fav == null ? 0L : fav) + delta);
+            return withCounts(cur, like, fav);
+        });
+    }
+
+    /**
+     * 详情缓存命中结果。
+     * @param resp 详情（计数已按计数哈希覆盖）
+     * @param fresh 是否仍在软 TTL 内（新鲜标记存在）
+     */
+    private record CachedDetail(KnowPostDetailResponse resp, boolean fresh) {}
+
+    /**
+     * 读取详情页面缓存，并以计数哈希（feed:cnt）覆盖其中的点赞/收藏数。
+     * 页面值、新鲜标记与计数哈希在一次管道中读取。
+     * @param pageKey 详情缓存 Key
+     * @param id 知文 ID
+     * @return 详情（不含用户维度状态）及新鲜度；未命中或解析失败返回 null
+     * @throws BusinessException 命中空值哨兵时抛出“内容不存在”
+     */
+    private CachedDetail readDetailCache(String pageKey, long id) {
+        List<Object> res = redis.executePipelined((RedisCallback<Object>) c -> {
+            c.stringCommands().get(pageKey.getBytes(StandardCharsets.UTF_8));
+            c.keyCommands().exists(BackgroundRefresher.freshKey(pageKey).getBytes(StandardCharsets.UTF_8));
+            c.hashCommands().hMGet(("feed:cnt:" + id).getBytes(StandardCharsets.UTF_8),
+                    "like".getBytes(StandardCharsets.UTF_8), "fav".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }, null);
+        if (res.isEmpty() || !(res.get(0) instanceof byte[] raw)) {
+            return null;
+        }
+        if (isNullSentinel(raw)) {
+            throw new BusinessException(ErrorCode.BAD_REQUEST, "内容不存在");
+        }
+        boolean fresh = res.size() > 1 && Boolean.TRUE.equals(res.get(1));
+        return parseCachedDetail(raw, res.size() > 2 ? res.get(2) : null, fresh);
+    }
+
+    private static boolean isNullSentinel(byte[] raw) {
+        return "NULL".equals(new String(raw, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析详情页面缓存值，并以计数哈希的 HMGET 结果（like/fav）覆盖计数。
+     * @param raw 页面缓存值（JSON）
+     * @param countRaw HMGET 结果（可空）
+     * @param fresh 是否仍在软 TTL 内
+     * @return 详情及新鲜度；解析失败返回 null
+     */
+    private CachedDetail parseCachedDetail(byte[] raw, Object countRaw, boolean fresh) {
+        KnowPostDetailResponse base;
+        try {
+            base = objectMapper.readValue(raw, KnowPostDetailResponse.class);
+        } catch (Exception e) {
+            return null;
+        }
+        Long likeCount = base.likeCount();
+        Long favoriteCount = base.favoriteCount();
+        if (countRaw instanceof List<?> cnt && cnt.size() == 2) {
             try {
-                String json = objectMapper.writeValueAsString(resp);
-                int baseTtl = 60;
-                int jitter = java.util.concurrent.ThreadLocalRandom.current().nextInt(30);
-                int target = hotKey.ttlForPublic(baseTtl, pageKey);
-                redis.opsForValue().set(pageKey, json, java.time.Duration.ofSeconds(Math.max(target, baseTtl + jitter)));
-                log.info("detail source=db key={}", pageKey);
-            } catch (Exception ignored) {}
-            boolean liked = currentUserIdNullable != null && counterService.isLiked("knowpost", String.valueOf(row.getId()), currentUserIdNullable);
-            boolean faved = currentUserIdNullable != null && counterService.isFaved("knowpost", String.valueOf(row.getId()), currentUserIdNullable);
-            singleFlight.remove(pageKey);
-            return new KnowPostDetailResponse(
-                    String.valueOf(row.getId()),
-                    resp.title(),
-                    resp.description(),
-                    resp.contentUrl(),
-                    resp.images(),
-                    resp.tags(),
-                    resp.authorId(),
-                    resp.authorAvatar(),
-                    resp.authorNickname(),
-                    resp.authorTagJson(),
-                    resp.likeCount(),
-                    resp.favoriteCount(),
-                    liked,
-                    faved,
-                    resp.isTop(),
-                    resp.visible(),
-                    resp.type(),
-                    resp.publishTime()
-            );
-        }
-    }
-
-    private void maybeExtendTtlDetail(String key) {
-        int baseTtl = 60;
-        int target = hotKey.ttlForPublic(baseTtl, key);
-        Long currentTtl = redis.getExpire(key);
-        if (currentTtl < target) {
-            redis.expire(key, java.time.Duration.ofSeconds(target));
+                if (cnt.get(0) instanceof byte[] v) likeCount = Long.parseLong(new String(v, StandardCharsets.UTF_8));
+                if (cnt.get(1) instanceof byte[] v) favoriteCount = Long.parseLong(new String(v, StandardCharsets.UTF_8));
+            } catch (NumberFormatException ignored) {}
+        }
+        return new CachedDetail(withCounts(base, likeCount, favoriteCount), fresh);
+    }
+
+    /**
+     * 详情回源（仅单航班 leader 执行）：重查缓存，未命中时查询数据库并回写缓存。
+     * @param id 知文 ID
+     * @param pageKey 详情缓存 Key
+     * @return 详情基础数据及是否公开
+     */
+    private DetailBase loadDetail(long id, String pageKey) {
+        CachedDetail again = readDetailCache(pageKey, id);
+        if (again != null) {
+            tierMetrics.hit("knowpost.detail", CacheTierMetrics.PAGE);
+            log.debug("detail source=page(after-flight) key={}", pageKey);
+            return new DetailBase(again.resp(), true);
+        }
+        // 两次读取均未命中页面，无旧页面需要清除
+        return loadDetailFromDb(id, pageKey, false);
+    }
+
+    /**
+     * 详情数据库回源并回写缓存（同步回源与后台刷新共用）。
+     * 公开内容写入页面（硬 TTL）并重置新鲜标记（软 TTL）；后台刷新发现已不再公开时清除旧页面，避免旧值被继续返回。
+     * 非公开内容从不写缓存，同步回源时页面本就不存在，不做清除（可见性变更由写路径负责失效）。
+     * @param id 知文 ID
+     * @param pageKey 详情缓存 Key
+     * @param stalePage 是否存在待刷新的旧页面（后台刷新路径）
+     * @return 详情基础数据及是否公开
+     */
+    private DetailBase loadDetailFromDb(long id, String pageKey, boolean stalePage) {
+        KnowPostDetailRow row = mapper.findDetailById(id);
+        if (row == null || "deleted".equals(row.getStatus())) {
+            redis.opsForValue().set(pageKey, "NULL", Duration.ofSeconds(30 + ThreadLocalRandom.current().nextInt(31)));
+            throw new BusinessException(ErrorCode.BAD_REQUEST, "内容不存在");
+        }
+
+        // 与 Feed 一致走批量读取：SDS 缺失时按零返回并后台重建，不在单航班内同步重建
+        String idStr = String.valueOf(row.getId());
+        Map<String, Long> counts = counterService.getCountsBatch("knowpost", List.of(idStr), List.of("like", "fav"))
+                .getOrDefault(idStr, Map.of());
+        KnowPostDetailResponse resp = detailFromRow(row, counts);
+        boolean isPublic = isPublic(row);
+        if (isPublic) {
+            writeDetailPages(Map.of(pageKey, resp));
+        } else if (stalePage) {
+            evictDetail(id);
+        }
+        tierMetrics.hit("knowpost.detail", CacheTierMetrics.DB);
+        log.debug("detail source=db key={}", pageKey);
+        return new DetailBase(resp, isPublic);
+    }
+
+    private static boolean isPublic(KnowPostDetailRow row) {
+        return "published".equals(row.getStatus()) && "public".equals(row.getVisible());
+    }
+
+    /**
+     * 由数据库行构建详情（不含用户维度状态）。
+     * @param row 详情行
+     * @param counts like/fav 计数（缺失按 0）
+     */
+    private KnowPostDetailResponse detailFromRow(KnowPostDetailRow row, Map<String, Long> counts) {
+        List<String> images = parseStringArray(row.getImgUrls());
+        List<String> tags = parseStringArray(row.getTags());
+        Long likeCount = counts.getOrDefault("like", 0L);
+        Long favoriteCount = counts.getOrDefault("fav", 0L);
+        return new KnowPostDetailResponse(
+                String.valueOf(row.getId()),
+                row.getTitle(),
+                row.getDescription(),
+                row.getContentUrl(),
+                images,
+                tags,
+                String.valueOf(row.getCreatorId()),
+                row.getAuthorAvatar(),
+                row.getAuthorNickname(),
+                row.getAuthorTagJson(),
+                likeCount,
+                favoriteCount,
+                null,
+                null,
+                row.getIsTop(),
+                row.getVisible(),
+                row.getType(),
+                row.getPublishTime()
+        );
+    }
+
+    /**
+     * 一次管道写入多个公开详情页面（硬 TTL）及其新鲜标记（软 TTL，带抖动）。
+     * @param pages 详情缓存 Key -> 详情
+     */
+    private void writeDetailPages(Map<String, KnowPostDetailResponse> pages) {
+        if (pages.isEmpty()) {
+            return;
+        }
+        int soft = cacheProps.getSwr().getDetailSoftSeconds();
+        try {
+            Map<String, byte[]> values = new LinkedHashMap<>();
+            for (Map.Entry<String, KnowPostDetailResponse> e : pages.entrySet()) {
+                values.put(e.getKey(), objectMapper.writeValueAsBytes(e.getValue()));
+            }
+            redis.executePipelined((RedisCallback<Object>) c -> {
+                for (Map.Entry<String, byte[]> e : values.entrySet()) {
+                    String pageKey = e.getKey();
+                    int softTtl = soft + ThreadLocalRandom.current().nextInt(soft / 2 + 1);
+                    int target = hotKey.ttlForPublic(soft, pageKey);
+                    int hardTtl = Math.max(cacheProps.getSwr().getDetailHardSeconds(), Math.max(target, softTtl));
+                    c.stringCommands().setEx(pageKey.getBytes(StandardCharsets.UTF_8), hardTtl, e.getValue());
+                    c.stringCommands().setEx(BackgroundRefresher.freshKey(pageKey).getBytes(StandardCharsets.UTF_8),
+                            softTtl, "1".getBytes(StandardCharsets.UTF_8));
+                }
+                return null;
+            });
+        } catch (Exception ignored) {}
+    }
+
+    /**
+     * 叠加当前用户的点赞/收藏状态（不写回缓存）。
+     */
+    private KnowPostDetailResponse withUserState(KnowPostDetailResponse base, long id, Long uid) {
+        return withUserState(base, id, userStates(id, uid));
+    }
+
+    /**
+     * 叠加已读取的用户点赞/收藏状态（不写回缓存）。
+     * @param st like/fav -> 是否置位；匿名用户为空映射
+     */
+    private KnowPostDetailResponse withUserState(KnowPostDetailResponse base, long id, Map<String, Boolean> st) {
+        boolean liked = Boolean.TRUE.equals(st.get("like"));
+        boolean faved = Boolean.TRUE.equals(st.get("fav"));
+        return new KnowPostDetailResponse(
+                String.valueOf(id),
+                base.title(),
+                base.description(),
+                base.contentUrl(),
+                base.images(),
+                base.tags(),
+                base.authorId(),
+                base.authorAvatar(),
+                base.authorNickname(),
+                base.authorTagJson(),
+                base.likeCount(),
+                base.favoriteCount(),
+                liked,
+                faved,
+                base.isTop(),
+                base.visible(),
+                base.type(),
+                base.publishTime()
+        );
+    }
+
+    /**
+     * 以最新计数覆盖详情中的点赞/收藏数。
+     */
+    private KnowPostDetailResponse withCounts(KnowPostDetailResponse base, Long likeCount, Long favoriteCount) {
+        return new KnowPostDetailResponse(
+                base.id(),
+                base.title(),
+                base.description(),
+                base.contentUrl(),
+                base.images(),
+                base.tags(),
+                base.authorId(),
+                base.authorAvatar(),
+                base.authorNickname(),
+                base.authorTagJson(),
+                likeCount,
+                favoriteCount,
+                base.liked(),
+                base.faved(),
+                base.isTop(),
+                base.visible(),
+                base.type(),
+                base.publishTime()
+        );
+    }
+
+    /**
+     * 详情回源结果：基础数据（不含用户维度状态）与是否公开，用于各调用方独立做权限判断。
+     */
+    private record DetailBase(KnowPostDetailResponse resp, boolean isPublic) {}
+
+    /**
+     * 读取当前用户对该知文的点赞/收藏状态（两个位合并为一次管道往返）。
+     * @return like/fav -> 是否置位；匿名用户返回空映射
+     */
+    private Map<String, Boolean> userStates(long id, Long uid) {
+        if (uid == null) {
+            return Collections.emptyMap();
         }
+        String eid = String.valueOf(id);
+        Map<String, Map<String, Boolean>> states = counterService.getUserStatesBatch("knowpost", List.of(eid), uid, List.of("like", "fav"));
+        return states.getOrDefault(eid, Collections.emptyMap());
     }
 
     private List<String> parseStringArray(String json) {
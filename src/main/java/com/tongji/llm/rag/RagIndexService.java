@@ -6,6 +6,7 @@ import co.elastic.clients.elasticsearch.core.search.Hit;
 import com.tongji.knowpost.mapper.KnowPostMapper;
 import com.tongji.knowpost.model.KnowPostDetailRow;
 import com.tongji.config.EsProperties;
+import com.tongji.storage.content.ContentFetchService;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,7 +14,6 @@ import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
-import org.springframework.web.client.RestTemplate;
 
 import java.util.*;
 
@@ -31,8 +31,8 @@ public class RagIndexService {
     private final VectorStore vectorStore;
     // 数据访问：根据 postId 查询知文详情（含 contentUrl、指纹等）
     private final KnowPostMapper knowPostMapper;
-    // 拉取 Markdown 正文内容
-    private final RestTemplate http = new RestTemplate();
+    // 拉取 Markdown 正文内容（与搜索索引共享按版本缓存的正文）
+    private final ContentFetchService contentFetch;
     // 直接使用 ES 客户端做指纹判断和删除旧切片
     private final ElasticsearchClient es;
     // ES 相关配置（索引名等）
@@ -71,7 +71,7 @@ public class RagIndexService {
         }
 
         // 抓取 Markdown 正文
-        String text = fetchContent(row.getContentUrl());
+        String text = contentFetch.fetchText(row.getContentUrl(), currentSha, currentEtag);
         if (!StringUtils.hasText(text)) {
             log.warn("Post {} content empty", postId);
             return 0;
@@ -167,18 +167,6 @@ public class RagIndexService {
         return o == null ? null : String.valueOf(o);
     }
 
-    /**
-     * 拉取正文内容（Markdown 文本）。
-     */
-    private String fetchContent(String url) {
-        try {
-            return http.getForObject(url, String.class);
-        } catch (Exception e) {
-            log.error("Fetch content failed: {}", e.getMessage());
-            return null;
-        }
-    }
-
     /**
      * 按 Markdown 标题切段，再交由固定长度切片策略处理。
      */
@@ -88,6 +88,17 @@ public interface RelationMapper {
                                        @Param("limit") int limit,
                                        @Param("offset") int offset);
 
+    /**
+     * 按粉丝用户ID升序游标分页列出粉丝（走 uk_to_from 索引，翻页开销与页码无关，并发新增关注不影响已读位置）。
+     * @param toUserId 被关注者
+     * @param afterUserId 上一页最后一个粉丝ID（首页传 0）
+     * @param limit 上限
+     * @return 粉丝用户ID列表（升序）
+     */
+    List<Long> listFollowersAfter(@Param("toUserId") Long toUserId,
+                                  @Param("afterUserId") Long afterUserId,
+                                  @Param("limit") int limit);
+
     /**
      * 列出关注行用于缓存回填（包含 createdAt）。
      * @param fromUserId 发起者
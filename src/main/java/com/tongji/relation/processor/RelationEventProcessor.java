@@ -4,23 +4,30 @@ import com.tongji.relation.event.RelationEvent;
 import com.tongji.relation.mapper.RelationMapper;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import com.tongji.counter.service.UserCounterService;
+import com.tongji.knowpost.service.FollowingTimelineService;
+import com.tongji.cache.invalidation.L1InvalidationBus;
 import org.springframework.stereotype.Service;
 import java.time.Duration;
 
 /**
  * 关系事件处理器。
- * 职责：对 FollowCreated/FollowCanceled 事件进行去重、防抖与幂等处理，落库更新粉丝表，维护关注/粉丝 ZSet 缓存与 TTL，并原子更新用户维度计数（SDS）。
+ * 职责：对 FollowCreated/FollowCanceled 事件进行去重、防抖与幂等处理，落库更新粉丝表，维护关注/粉丝 ZSet 缓存与 TTL，并原子更新用户维度计数（SDS），同步关注时间线收件箱。
  */
 @Service
 public class RelationEventProcessor {
     private final RelationMapper mapper;
     private final StringRedisTemplate redis;
     private final UserCounterService userCounterService;
+    private final FollowingTimelineService timeline;
+    private final L1InvalidationBus l1Bus;
 
-    public RelationEventProcessor(RelationMapper mapper, StringRedisTemplate redis, UserCounterService userCounterService) {
+    public RelationEventProcessor(RelationMapper mapper, StringRedisTemplate redis, UserCounterService userCounterService,
+                                  FollowingTimelineService timeline, L1InvalidationBus l1Bus) {
         this.mapper = mapper;
         this.redis = redis;
         this.userCounterService = userCounterService;
+        this.timeline = timeline;
+        this.l1Bus = l1Bus;
     }
 
     /**
@@ -49,6 +56,12 @@ public class RelationEventProcessor {
             // 更新关注数与粉丝数
             userCounterService.incrementFollowings(evt.fromUserId(), 1);
             userCounterService.incrementFollowers(evt.toUserId(), 1);
+            invalidateLocalCaches(evt);
+
+            // 关注时间线：将被关注者最近发布补入收件箱
+            try {
+                timeline.onFollow(evt.fromUserId(), evt.toUserId());
+            } catch (Exception ignored) {}
         } else if ("FollowCanceled".equals(evt.type())) {
             mapper.cancelFollower(evt.toUserId(), evt.fromUserId());
 
@@ -61,6 +74,21 @@ public class RelationEventProcessor {
             // 更新关注数与粉丝数
             userCounterService.incrementFollowings(evt.fromUserId(), -1);
             userCounterService.incrementFollowers(evt.toUserId(), -1);
+            invalidateLocalCaches(evt);
+
+            // 关注时间线：移除被取消关注者的条目
+            try {
+                timeline.onUnfollow(evt.fromUserId(), evt.toUserId());
+            } catch (Exception ignored) {}
         }
     }
+
+    /**
+     * 关系变更后失效各实例的本地列表缓存：发起方的关注 Top 与大V关注列表、被关注方的粉丝 Top。
+     */
+    private void invalidateLocalCaches(RelationEvent evt) {
+        l1Bus.invalidate(L1InvalidationBus.RELATION_FLWS_TOP, evt.fromUserId());
+        l1Bus.invalidate(L1InvalidationBus.RELATION_BIGV_FOLLOW, evt.fromUserId());
+        l1Bus.invalidate(L1InvalidationBus.RELATION_FANS_TOP, evt.toUserId());
+    }
 }
@@ -89,5 +89,18 @@ public interface RelationService {
      * @return 粉丝用户的资料视图列表
      */
     List<ProfileResponse> followersProfiles(long userId, int limit, int offset, Long cursor);
-}
 
+    /**
+     * 判断是否为大V（粉丝数达到阈值）。
+     * @param userId 用户ID
+     * @return 是否为大V
+     */
+    boolean isBigV(long userId);
+
+    /**
+     * 当前用户关注的大V列表（关注时间线按拉模式合并这些作者的发件箱）。
+     * @param userId 用户ID
+     * @return 大V用户ID列表
+     */
+    List<Long> bigVFollowings(long userId);
+}
@@ -2,6 +2,7 @@ package com.tongji.relation.service.impl;
 
 import com.tongji.relation.mapper.RelationMapper;
 import com.tongji.relation.service.RelationService;
+import com.tongji.cache.invalidation.L1InvalidationBus;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.tongji.relation.event.RelationEvent;
 import com.tongji.relation.outbox.OutboxMapper;
@@ -46,6 +47,8 @@ public class RelationServiceImpl implements RelationService {
     private final ObjectMapper objectMapper;
     private final Cache<Long, List<Long>> flwsTopCache;
     private final Cache<Long, List<Long>> fansTopCache;
+    private final Cache<Long, List<Long>> bigVFollowCache;
+    private static final long BIG_V_FOLLOWERS = 500_000L;
     private final UserMapper userMapper;
     
 
@@ -55,12 +58,15 @@ public class RelationServiceImpl implements RelationService {
      * @param outboxMapper Outbox 事件写入访问
      * @param redis Redis 客户端
      * @param objectMapper JSON 序列化器
+     * @param userMapper 用户表数据访问
+     * @param l1Bus 本地缓存跨实例失效总线（Top 缓存与大V关注缓存接入）
      */
     public RelationServiceImpl(RelationMapper mapper,
                                OutboxMapper outboxMapper,
                                StringRedisTemplate redis,
                                ObjectMapper objectMapper,
-                               UserMapper userMapper) {
+                               UserMapper userMapper,
+                               L1InvalidationBus l1Bus) {
         this.mapper = mapper;
         this.outboxMapper = outboxMapper;
         this.redis = redis;
@@ -70,7 +76,11 @@ public class RelationServiceImpl implements RelationService {
         this.tokenScript.setScriptText(TOKEN_BUCKET_LUA);
         this.flwsTopCache = Caffeine.newBuilder().maximumSize(1000).expireAfterWrite(Duration.ofMinutes(10)).build();
         this.fansTopCache = Caffeine.newBuilder().maximumSize(1000).expireAfterWrite(Duration.ofMinutes(10)).build();
+        this.bigVFollowCache = Caffeine.newBuilder().maximumSize(10_000).expireAfterWrite(Duration.ofMinutes(1)).build();
         this.userMapper = userMapper;
+        l1Bus.register(L1InvalidationBus.RELATION_FLWS_TOP, flwsTopCache, Long::valueOf);
+        l1Bus.register(L1InvalidationBus.RELATION_FANS_TOP, fansTopCache, Long::valueOf);
+        l1Bus.register(L1InvalidationBus.RELATION_BIGV_FOLLOW, bigVFollowCache, Long::valueOf);
     }
 
     /**
@@ -273,13 +283,48 @@ public class RelationServiceImpl implements RelationService {
      * @param userId 用户ID
      * @return 是否为大V
      */
-    private boolean isBigV(long userId) {
+    @Override
+    public boolean isBigV(long userId) {
         byte[] raw = redis.execute((RedisCallback<byte[]>) c -> c.stringCommands().get(("ucnt:" + userId).getBytes(StandardCharsets.UTF_8)));
+        return isBigV(raw);
+    }
+
+    /**
+     * 获取当前用户关注的大V列表：关注列表（前 1000）上一次管道批量读取用户计数并按阈值过滤，结果本地缓存 1 分钟。
+     * @param userId 用户ID
+     * @return 大V用户ID列表
+     */
+    @Override
+    public List<Long> bigVFollowings(long userId) {
+        return bigVFollowCache.get(userId, uid -> {
+            List<Long> followings = following(uid, 1000, 0);
+            if (followings.isEmpty()) return List.of();
+            // 结果保持原始字节，不经过字符串反序列化
+            List<Object> raws = redis.executePipelined((RedisCallback<Object>) c -> {
+                for (Long id : followings) {
+                    c.stringCommands().get(("ucnt:" + id).getBytes(StandardCharsets.UTF_8));
+                }
+                return null;
+            }, null);
+            List<Long> out = new ArrayList<>();
+            for (int i = 0; i < followings.size() && i < raws.size(); i++) {
+                if (raws.get(i) instanceof byte[] raw && isBigV(raw)) {
+                    out.add(followings.get(i));
+                }
+            }
+            return out;
+        });
+    }
+
+    /**
+     * 解析用户计数 SDS 中的粉丝数（第 2 段，偏移 4）并与大V阈值比较。
+     */
+    private static boolean isBigV(byte[] raw) {
         if (raw == null || raw.length < 20) return false;
         long n = 0;
-        int off = 2 * 4;
+        int off = 4;
         for (int i = 0; i < 4; i++) n = (n << 8) | (raw[off + i] & 0xFFL);
-        return n >= 500_000L;
+        return n >= BIG_V_FOLLOWERS;
     }
 
     /**
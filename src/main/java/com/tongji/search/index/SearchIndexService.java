@@ -1,50 +1,50 @@
 package com.tongji.search.index;
 
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
 import co.elastic.clients.elasticsearch.core.IndexRequest;
 import co.elastic.clients.elasticsearch.core.IndexResponse;
 import co.elastic.clients.elasticsearch._types.Refresh;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tongji.counter.schema.CounterKeys;
 import com.tongji.counter.service.CounterService;
 import com.tongji.knowpost.mapper.KnowPostMapper;
 import com.tongji.knowpost.model.KnowPostDetailRow;
+import com.tongji.storage.content.ContentFetchService;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
-import org.springframework.web.client.RestTemplate;
 import jakarta.annotation.PostConstruct;
 
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import com.tongji.knowpost.model.KnowPostFeedRow;
 
 /**
- * 搜索索引写入服务：负责 upsert/软删 以及首次启动的索引回灌。
+ * 搜索索引写入服务：负责 upsert/软删、首次启动的索引回灌，以及浏览数的定时同步。
  */
 @Service
 @RequiredArgsConstructor
 public class SearchIndexService {
     private static final Logger log = LoggerFactory.getLogger(SearchIndexService.class);
     private static final String INDEX = "zhiguang_content_index";
+    private static final int VIEW_SYNC_BATCH = 500;
+    private static final int VIEW_SYNC_MAX_ROUNDS = 20;
 
     private final ElasticsearchClient es;
     private final KnowPostMapper knowPostMapper;
     private final CounterService counterService;
     private final ObjectMapper objectMapper;
-    private final RestTemplate http = new RestTemplate();
+    private final ContentFetchService contentFetch;
+    private final StringRedisTemplate redis;
 
     /**
      * 启动时若索引为空，进行历史数据回灌（分页）。
@@ -55,9 +55,11 @@ public class SearchIndexService {
             long cnt = es.count(c -> c.index(INDEX)).count();
             if (cnt > 0) return;
             int limit = 500;
-            int offset = 0;
+            // 以 (publish_time, id) 游标分批回灌，避免深偏移扫描
+            Instant cursorTime = null;
+            Long cursorId = null;
             while (true) {
-                List<KnowPostFeedRow> rows = knowPostMapper.listFeedPublic(limit, offset);
+                List<KnowPostFeedRow> rows = knowPostMapper.listFeedPublicAfter(limit, cursorTime, cursorId);
                 if (rows == null || rows.isEmpty()) {
                     // 没有更多数据，结束回灌
                     break;
@@ -65,7 +67,12 @@ public class SearchIndexService {
                 for (KnowPostFeedRow r : rows) {
                     upsertKnowPost(r.getId());
                 }
-                offset += rows.size();
+                KnowPostFeedRow last = rows.getLast();
+                cursorTime = last.getPublishTime();
+                cursorId = last.getId();
+                if (rows.size() < limit || cursorTime == null) {
+                    break;
+                }
             }
             log.info("Search index backfill completed: {} documents", es.count(c -> c.index(INDEX)).count());
         } catch (Exception e) {
@@ -102,8 +109,8 @@ public class SearchIndexService {
                 doc.put("is_top", row.getIsTop());
             }
 
-            // 正文优先拉取 contentUrl，失败则使用描述
-            String body = fetchContentSafe(row.getContentUrl());
+            // 正文优先拉取 contentUrl（按内容指纹走共享缓存），失败则使用描述
+            String body = contentFetch.fetchText(row.getContentUrl(), row.getContentSha256(), row.getContentEtag());
             if (body == null || body.isBlank()) {
                 body = row.getDescription();
             }
@@ -111,10 +118,10 @@ public class SearchIndexService {
                 doc.put("body", truncate(body, 4000));
             }
 
-            Map<String, Long> counts = counterService.getCounts("knowpost", String.valueOf(id), List.of("like","fav"));
+            Map<String, Long> counts = counterService.getCounts("knowpost", String.valueOf(id), List.of("like","fav","read"));
             doc.put("like_count", counts.getOrDefault("like", 0L));
             doc.put("favorite_count", counts.getOrDefault("fav", 0L));
-            doc.put("view_count", 0L);
+            doc.put("view_count", counts.getOrDefault("read", 0L));
 
             if (row.getTitle() != null && !row.getTitle().isBlank()) {
                 doc.put("title_suggest", row.getTitle());
@@ -155,88 +162,54 @@ public class SearchIndexService {
     }
 
     /**
-     * 安全拉取正文内容：失败返回 null，不中断索引流程。
+     * 定时同步浏览数：从待同步集合批量弹出知文，一次管道读取 SDS 浏览数，再以一次 bulk 局部更新 view_count。
+     * 固定延迟 60s，每轮最多处理 VIEW_SYNC_BATCH × VIEW_SYNC_MAX_ROUNDS 条，剩余留待下一轮。
+     * 浏览数只增不减，读到 0（SDS 缺失待重建）的条目跳过，避免覆盖索引中的旧值；
+     * 未入索引的文档更新失败属正常情况，忽略；整批失败时放回集合重试。
      */
-    private String fetchContentSafe(String url) {
-        if (url == null || url.isBlank()) {
-            return null;
-        }
-
-        try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setAccept(List.of(MediaType.TEXT_HTML, MediaType.TEXT_PLAIN, MediaType.APPLICATION_JSON));
-            ResponseEntity<byte[]> resp = http.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
-            byte[] bytes = resp.getBody();
-            if (bytes == null || bytes.length == 0) {
-                return null;
+    @Scheduled(fixedDelay = 60_000L, initialDelay = 60_000L)
+    public void syncViewCounts() {
+        String dirtyKey = CounterKeys.viewDirtyKey("knowpost");
+        for (int round = 0; round < VIEW_SYNC_MAX_ROUNDS; round++) {
+            List<String> ids;
+            try {
+                ids = redis.opsForSet().pop(dirtyKey, VIEW_SYNC_BATCH);
+            } catch (Exception e) {
+                log.warn("View count sync skipped: {}", e.getMessage());
+                return;
+            }
+            if (ids == null || ids.isEmpty()) {
+                return;
+            }
+            try {
+                Map<String, Map<String, Long>> counts = counterService.getCountsBatch("knowpost", ids, List.of("read"));
+                BulkRequest.Builder br = new BulkRequest.Builder();
+                int ops = 0;
+                for (String id : ids) {
+                    long views = counts.getOrDefault(id, Collections.emptyMap()).getOrDefault("read", 0L);
+                    if (views <= 0) {
+                        continue;
+                    }
+                    Map<String, Object> partial = Map.of("view_count", views);
+                    br.operations(op -> op.update(u -> u.index(INDEX).id(id).action(a -> a.doc(partial))));
+                    ops++;
+                }
+                if (ops > 0) {
+                    BulkResponse resp = es.bulk(br.build());
+                    if (resp.errors()) {
+                        long failed = resp.items().stream().filter(it -> it.error() != null).count();
+                        log.debug("View count sync partial failures: {}/{}", failed, ops);
+                    }
+                }
+            } catch (Exception e) {
+                redis.opsForSet().add(dirtyKey, ids.toArray(new String[0]));
+                log.warn("View count sync failed, {} posts requeued: {}", ids.size(), e.getMessage());
+                return;
+            }
+            if (ids.size() < VIEW_SYNC_BATCH) {
+                return;
             }
-            MediaType contentType = resp.getHeaders().getContentType();
-            Charset headerCharset = (contentType != null) ? contentType.getCharset() : null;
-            Charset metaCharset = sniffHtmlCharset(bytes);
-            Charset charset = pickCharset(bytes, headerCharset, metaCharset);
-            return new String(bytes, charset);
-        } catch (Exception e) {
-            return null;
-        }
-    }
-
-    private Charset pickCharset(byte[] bytes, Charset headerCharset, Charset metaCharset) {
-        if (metaCharset != null) {
-            return metaCharset;
-        }
-        if (headerCharset == null) {
-            Charset utf8 = StandardCharsets.UTF_8;
-            Charset gb18030 = Charset.forName("GB18030");
-            return countReplacementChars(new String(bytes, utf8)) <= countReplacementChars(new String(bytes, gb18030)) ? utf8 : gb18030;
-        }
-        if (isLikelyWrongCharsetHeader(headerCharset)) {
-            Charset utf8 = StandardCharsets.UTF_8;
-            Charset gb18030 = Charset.forName("GB18030");
-            int repUtf8 = countReplacementChars(new String(bytes, utf8));
-            int repGb = countReplacementChars(new String(bytes, gb18030));
-            int repHeader = countReplacementChars(new String(bytes, headerCharset));
-            if (repUtf8 <= repGb && repUtf8 <= repHeader) return utf8;
-            if (repGb <= repHeader) return gb18030;
-        }
-        return headerCharset;
-    }
-
-    private boolean isLikelyWrongCharsetHeader(Charset charset) {
-        return StandardCharsets.ISO_8859_1.equals(charset) || StandardCharsets.US_ASCII.equals(charset);
-    }
-
-    private Charset sniffHtmlCharset(byte[] bytes) {
-        int limit = Math.min(bytes.length, 8192);
-        String head = new String(bytes, 0, limit, StandardCharsets.ISO_8859_1);
-        Matcher m = Pattern.compile("charset\\s*=\\s*['\\\"]?([a-zA-Z0-9_\\-]+)", Pattern.CASE_INSENSITIVE).matcher(head);
-        if (!m.find()) {
-            return null;
-        }
-        String cs = m.group(1);
-        if (cs == null || cs.isBlank()) {
-            return null;
-        }
-        cs = cs.trim();
-        if ("utf8".equalsIgnoreCase(cs)) {
-            return StandardCharsets.UTF_8;
-        }
-        if ("gbk".equalsIgnoreCase(cs) || "gb2312".equalsIgnoreCase(cs) || "gb18030".equalsIgnoreCase(cs)) {
-            return Charset.forName("GB18030");
-        }
-        try {
-            return Charset.forName(cs);
-        } catch (Exception e) {
-            return null;
-        }
-    }
-
-    private int countReplacementChars(String s) {
-        if (s == null || s.isEmpty()) return 0;
-        int cnt = 0;
-        for (int i = 0; i < s.length(); i++) {
-            if (s.charAt(i) == '\uFFFD') cnt++;
         }
-        return cnt;
     }
 
     /**
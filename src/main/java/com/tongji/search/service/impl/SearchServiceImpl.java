@@ -107,6 +107,18 @@ public class SearchServiceImpl implements SearchService {
         List<FeedItemResponse> items = new ArrayList<>();
         List<Hit<Map<String, Object>>> hits = resp.hits() == null ? Collections.emptyList() : resp.hits().hits();
 
+        // 用户维度状态：整页命中一次管道批量读取，避免逐条 GETBIT
+        Map<String, Map<String, Boolean>> states = Collections.emptyMap();
+        if (currentUserIdNullable != null && !hits.isEmpty()) {
+            List<String> ids = new ArrayList<>(hits.size());
+            for (Hit<Map<String, Object>> hit : hits) {
+                if (hit.source() != null) {
+                    ids.add(asString(hit.source().get("content_id")));
+                }
+            }
+            states = counterService.getUserStatesBatch("knowpost", ids, currentUserIdNullable, List.of("like", "fav"));
+        }
+
         for (Hit<Map<String, Object>> hit : hits) {
             Map<String, Object> source = hit.source();
             if (source == null) {
@@ -125,8 +137,9 @@ public class SearchServiceImpl implements SearchService {
             String tagJson = asString(source.get("author_tag_json"));
             Long likeCount = asLong(source.get("like_count"));
             Long favoriteCount = asLong(source.get("favorite_count"));
-            Boolean liked = currentUserIdNullable != null && counterService.isLiked("knowpost", id, currentUserIdNullable);
-            Boolean faved = currentUserIdNullable != null && counterService.isFaved("knowpost", id, currentUserIdNullable);
+            Map<String, Boolean> st = states.get(id);
+            Boolean liked = st != null && Boolean.TRUE.equals(st.get("like"));
+            Boolean faved = st != null && Boolean.TRUE.equals(st.get("fav"));
             items.add(new FeedItemResponse(
                     id,
                     title,
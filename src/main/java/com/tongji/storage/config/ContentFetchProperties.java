@@ -0,0 +1,20 @@
+package com.tongji.storage.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 正文拉取与本地磁盘缓存配置。
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "content-fetch")
+public class ContentFetchProperties {
+    private boolean diskEnabled = true; // 是否启用磁盘缓存
+    private String cacheDir = System.getProperty("java.io.tmpdir") + "/zhiguang-content"; // 缓存目录
+    private long maxCacheBytes = 256L * 1024 * 1024; // 缓存总大小上限（字节），超出按最久未访问逐出
+    private long maxEntryBytes = 8L * 1024 * 1024; // 单篇正文写入缓存的大小上限（字节），超出仍返回但不落盘
+    private int connectTimeoutMs = 3000; // 建连超时（毫秒）
+    private int readTimeoutMs = 10000; // 单次请求超时（毫秒）
+}
@@ -0,0 +1,191 @@
+package com.tongji.storage.content;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 有界的正文磁盘缓存：每个版本一个文件（UTF-8 文本），文件名为版本指纹。
+ * <p>
+ * 设计说明：
+ * - 写入先落临时文件再原子改名，读取方不会看到半截文件；同一版本内容不变，重复写入直接覆盖；
+ * - 读取通过 {@link FileChannel#map} 内存映射后解码，不经过用户态读缓冲，页缓存由多个进程/实例共享；
+ * - 内存中维护 文件名 -> (大小, 最近访问时间) 索引，总大小超过上限时按最久未访问逐出到上限的 90%；
+ * - 启动时扫描目录重建索引（以文件修改时间作为初始访问时间），并清理上次残留的临时文件。
+ */
+final class ContentDiskCache {
+    private static final Logger log = LoggerFactory.getLogger(ContentDiskCache.class);
+    private static final String SUFFIX = ".md";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final Path dir;
+    private final long maxBytes;
+    private final Map<String, Entry> index = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final ReentrantLock evictLock = new ReentrantLock();
+
+    ContentDiskCache(Path dir, long maxBytes) throws IOException {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(dir);
+        load();
+    }
+
+    /**
+     * 读取缓存的正文。
+     * @param key 版本指纹（文件名安全）
+     * @return 正文；未命中返回 null
+     */
+    String get(String key) {
+        Entry e = index.get(key);
+        if (e == null) {
+            return null;
+        }
+        try (FileChannel ch = FileChannel.open(path(key), StandardOpenOption.READ)) {
+            long size = ch.size();
+            e.lastAccess = System.currentTimeMillis();
+            if (size == 0) {
+                return "";
+            }
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return StandardCharsets.UTF_8.decode(buf).toString();
+        } catch (NoSuchFileException ex) {
+            // 文件被外部清理：同步索引
+            if (index.remove(key, e)) {
+                totalBytes.addAndGet(-e.size);
+            }
+            return null;
+        } catch (IOException ex) {
+            log.warn("content cache read failed key={} err={}", key, ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 写入正文，必要时逐出最久未访问的文件。
+     * @param key 版本指纹（文件名安全）
+     * @param text 正文
+     */
+    void put(String key, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > maxBytes) {
+            return;
+        }
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(dir, key, TMP_SUFFIX);
+            Files.write(tmp, bytes);
+            Files.move(tmp, path(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            log.warn("content cache write failed key={} err={}", key, ex.getMessage());
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {}
+            }
+            return;
+        }
+        Entry prev = index.put(key, new Entry(bytes.length, System.currentTimeMillis()));
+        totalBytes.addAndGet(bytes.length - (prev == null ? 0 : prev.size));
+        if (totalBytes.get() > maxBytes) {
+            evict();
+        }
+    }
+
+    long totalBytes() {
+        return totalBytes.get();
+    }
+
+    int entryCount() {
+        return index.size();
+    }
+
+    long evictedCount() {
+        return evicted.get();
+    }
+
+    private void evict() {
+        if (!evictLock.tryLock()) {
+            // 已有线程在逐出
+            return;
+        }
+        try {
+            long target = maxBytes / 10 * 9;
+            // 先快照访问时间再排序，避免排序过程中并发读取改变比较结果
+            List<Candidate> candidates = new ArrayList<>(index.size());
+            index.forEach((k, e) -> candidates.add(new Candidate(k, e, e.lastAccess)));
+            candidates.sort(Comparator.comparingLong(Candidate::lastAccess));
+            for (Candidate c : candidates) {
+                if (totalBytes.get() <= target) {
+                    break;
+                }
+                if (!index.remove(c.key(), c.entry())) {
+                    continue;
+                }
+                totalBytes.addAndGet(-c.entry().size);
+                evicted.incrementAndGet();
+                try {
+                    // 已映射的读取方不受删除影响（文件在最后一个映射释放后才回收）
+                    Files.deleteIfExists(path(c.key()));
+                } catch (IOException ex) {
+                    log.warn("content cache evict failed key={} err={}", c.key(), ex.getMessage());
+                }
+            }
+        } finally {
+            evictLock.unlock();
+        }
+    }
+
+    private void load() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path f : files) {
+                String name = f.getFileName().toString();
+                if (name.endsWith(TMP_SUFFIX)) {
+                    Files.deleteIfExists(f);
+                } else if (name.endsWith(SUFFIX) && Files.isRegularFile(f)) {
+                    long size = Files.size(f);
+                    index.put(name.substring(0, name.length() - SUFFIX.length()),
+                            new Entry(size, Files.getLastModifiedTime(f).toMillis()));
+                    totalBytes.addAndGet(size);
+                }
+            }
+        }
+        if (totalBytes.get() > maxBytes) {
+            evict();
+        }
+    }
+
+    private Path path(String key) {
+        return dir.resolve(key + SUFFIX);
+    }
+
+    private record Candidate(String key, Entry entry, long lastAccess) {}
+
+    private static final class Entry {
+        private final long size;
+        private volatile long lastAccess;
+
+        Entry(long size, long lastAccess) {
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
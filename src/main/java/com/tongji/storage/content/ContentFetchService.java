@@ -0,0 +1,263 @@
+package com.tongji.storage.content;
+
+import com.tongji.cache.singleflight.SingleFlight;
+import com.tongji.storage.config.ContentFetchProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 知文正文（OSS 上的 Markdown）拉取服务，供搜索索引与 RAG 索引共用。
+ * <p>
+ * 设计说明：
+ * - 以内容指纹（优先 content_sha256，其次 contentUrl + ETag）作为版本键，同一版本的正文只下载一次，结果写入有界磁盘缓存；
+ * - 同一版本的并发拉取经 {@link SingleFlight} 合并，只有一个调用者发起 HTTP 请求；
+ * - 所有请求复用同一个 {@link HttpClient}（内部维护 keep-alive 连接池），不再每次新建客户端；
+ * - 下载后按响应头/HTML meta/替换字符数选择字符集解码，磁盘上统一存 UTF-8；
+ * - 声明的 SHA-256 与下载内容不一致时仍返回正文，但不写入缓存，避免错误指纹污染缓存；
+ * - 无指纹的内容不落盘，仅按 URL 合并并发请求。
+ */
+@Service
+public class ContentFetchService {
+    private static final Logger log = LoggerFactory.getLogger(ContentFetchService.class);
+    private static final Pattern HEX_SHA256 = Pattern.compile("[0-9a-fA-F]{64}");
+    private static final Pattern META_CHARSET = Pattern.compile("charset\\s*=\\s*['\\\"]?([a-zA-Z0-9_\\-]+)", Pattern.CASE_INSENSITIVE);
+
+    private final ContentFetchProperties props;
+    private final SingleFlight singleFlight;
+    private final HttpClient http;
+    private final ContentDiskCache disk;
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder downloads = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    public ContentFetchService(ContentFetchProperties props, SingleFlight singleFlight) {
+        this.props = props;
+        this.singleFlight = singleFlight;
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(props.getConnectTimeoutMs()))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.disk = props.isDiskEnabled() ? openDisk(props) : null;
+    }
+
+    /**
+     * 拉取正文文本：命中磁盘缓存直接返回，否则下载（同版本并发合并）并写入缓存。失败返回 null，不抛出异常。
+     * @param url 正文地址
+     * @param sha256 内容 SHA-256（可为空）
+     * @param etag 对象 ETag（可为空）
+     * @return 正文；地址为空或拉取失败时为 null
+     */
+    public String fetchText(String url, String sha256, String etag) {
+        if (!StringUtils.hasText(url)) {
+            return null;
+        }
+        String key = versionKey(url, sha256, etag);
+        if (key == null || disk == null) {
+            return singleFlight.execute("content:url:" + url, () -> {
+                Fetched f = download(url, null);
+                return f == null ? null : f.text();
+            });
+        }
+        String cached = disk.get(key);
+        if (cached != null) {
+            diskHits.increment();
+            return cached;
+        }
+        return singleFlight.execute("content:" + key, () -> {
+            // 前一个航班可能刚写完缓存
+            String again = disk.get(key);
+            if (again != null) {
+                diskHits.increment();
+                return again;
+            }
+            Fetched f = download(url, sha256);
+            if (f == null) {
+                return null;
+            }
+            if (f.cacheable() && f.rawBytes() <= props.getMaxEntryBytes()) {
+                disk.put(key, f.text());
+            }
+            return f.text();
+        });
+    }
+
+    public long diskHitCount() {
+        return diskHits.sum();
+    }
+
+    public long downloadCount() {
+        return downloads.sum();
+    }
+
+    public long failureCount() {
+        return failures.sum();
+    }
+
+    public long diskBytes() {
+        return disk == null ? 0L : disk.totalBytes();
+    }
+
+    public long diskEvictedCount() {
+        return disk == null ? 0L : disk.evictedCount();
+    }
+
+    /**
+     * 版本键：有 SHA-256 时只按内容寻址（与 URL 无关），否则按 URL + ETag；两者均为 64 位十六进制，可直接作为文件名。
+     */
+    static String versionKey(String url, String sha256, String etag) {
+        if (StringUtils.hasText(sha256)) {
+            return sha256Hex(("sha256:" + sha256.trim().toLowerCase()).getBytes(StandardCharsets.UTF_8));
+        }
+        if (StringUtils.hasText(etag)) {
+            return sha256Hex(("etag:" + url + "|" + etag.trim()).getBytes(StandardCharsets.UTF_8));
+        }
+        return null;
+    }
+
+    private Fetched download(String url, String expectedSha256) {
+        downloads.increment();
+        try {
+            HttpRequest req = HttpRequest.newBuilder(URI.create(url))
+                    .timeout(Duration.ofMillis(props.getReadTimeoutMs()))
+                    .header("Accept", "text/markdown, text/plain, text/html, application/json;q=0.9, */*;q=0.8")
+                    .GET()
+                    .build();
+            HttpResponse<byte[]> resp = http.send(req, HttpResponse.BodyHandlers.ofByteArray());
+            if (resp.statusCode() / 100 != 2) {
+                failures.increment();
+                log.warn("content fetch failed url={} status={}", url, resp.statusCode());
+                return null;
+            }
+            byte[] bytes = resp.body();
+            if (bytes == null || bytes.length == 0) {
+                return null;
+            }
+            boolean cacheable = true;
+            if (expectedSha256 != null && HEX_SHA256.matcher(expectedSha256.trim()).matches()) {
+                String actual = sha256Hex(bytes);
+                if (!actual.equalsIgnoreCase(expectedSha256.trim())) {
+                    cacheable = false;
+                    log.warn("content sha256 mismatch url={} expected={} actual={}", url, expectedSha256, actual);
+                }
+            }
+            Charset headerCharset = resp.headers().firstValue("Content-Type").map(ContentFetchService::charsetOf).orElse(null);
+            Charset charset = pickCharset(bytes, headerCharset, sniffHtmlCharset(bytes));
+            return new Fetched(new String(bytes, charset), bytes.length, cacheable);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failures.increment();
+            return null;
+        } catch (Exception e) {
+            failures.increment();
+            log.warn("content fetch failed url={} err={}", url, e.getMessage());
+            return null;
+        }
+    }
+
+    private static ContentDiskCache openDisk(ContentFetchProperties props) {
+        try {
+            return new ContentDiskCache(Path.of(props.getCacheDir()), props.getMaxCacheBytes());
+        } catch (IOException e) {
+            // 磁盘不可用时退化为仅合并并发请求
+            log.warn("content disk cache disabled dir={} err={}", props.getCacheDir(), e.getMessage());
+            return null;
+        }
+    }
+
+    private static Charset charsetOf(String contentType) {
+        try {
+            return MediaType.parseMediaType(contentType).getCharset();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static Charset pickCharset(byte[] bytes, Charset headerCharset, Charset metaCharset) {
+        if (metaCharset != null) {
+            return metaCharset;
+        }
+        if (headerCharset == null) {
+            Charset utf8 = StandardCharsets.UTF_8;
+            Charset gb18030 = Charset.forName("GB18030");
+            return countReplacementChars(new String(bytes, utf8)) <= countReplacementChars(new String(bytes, gb18030)) ? utf8 : gb18030;
+        }
+        if (isLikelyWrongCharsetHeader(headerCharset)) {
+            Charset utf8 = StandardCharsets.UTF_8;
+            Charset gb18030 = Charset.forName("GB18030");
+            int repUtf8 = countReplacementChars(new String(bytes, utf8));
+            int repGb = countReplacementChars(new String(bytes, gb18030));
+            int repHeader = countReplacementChars(new String(bytes, headerCharset));
+            if (repUtf8 <= repGb && repUtf8 <= repHeader) return utf8;
+            if (repGb <= repHeader) return gb18030;
+        }
+        return headerCharset;
+    }
+
+    private static boolean isLikelyWrongCharsetHeader(Charset charset) {
+        return StandardCharsets.ISO_8859_1.equals(charset) || StandardCharsets.US_ASCII.equals(charset);
+    }
+
+    private static Charset sniffHtmlCharset(byte[] bytes) {
+        int limit = Math.min(bytes.length, 8192);
+        String head = new String(bytes, 0, limit, StandardCharsets.ISO_8859_1);
+        Matcher m = META_CHARSET.matcher(head);
+        if (!m.find()) {
+            return null;
+        }
+        String cs = m.group(1);
+        if (cs == null || cs.isBlank()) {
+            return null;
+        }
+        cs = cs.trim();
+        if ("utf8".equalsIgnoreCase(cs)) {
+            return StandardCharsets.UTF_8;
+        }
+        if ("gbk".equalsIgnoreCase(cs) || "gb2312".equalsIgnoreCase(cs) || "gb18030".equalsIgnoreCase(cs)) {
+            return Charset.forName("GB18030");
+        }
+        try {
+            return Charset.forName(cs);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static int countReplacementChars(String s) {
+        if (s == null || s.isEmpty()) return 0;
+        int cnt = 0;
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) == '\uFFFD') cnt++;
+        }
+        return cnt;
+    }
+
+    private static String sha256Hex(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record Fetched(String text, int rawBytes, boolean cacheable) {}
+}
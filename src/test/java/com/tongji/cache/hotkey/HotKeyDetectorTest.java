@@ -4,6 +4,11 @@ import com.tongji.cache.config.CacheProperties;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
 public class HotKeyDetectorTest {
     @Test
     void slidingWindowLevelsAndTtl() {
@@ -43,5 +48,137 @@ public class HotKeyDetectorTest {
         detector.rotate();
         Assertions.assertTrue(detector.heat(key) >= 0);
     }
-}
 
+    @Test
+    void ttlExtensionsFollowLevelChanges() {
+        CacheProperties props = new CacheProperties();
+        props.getHotkey().setWindowSeconds(30);
+        props.getHotkey().setSegmentSeconds(10);
+        props.getHotkey().setLevelLow(2);
+        props.getHotkey().setLevelMedium(4);
+        props.getHotkey().setLevelHigh(6);
+        props.getHotkey().setExtendLowSeconds(10);
+        props.getHotkey().setExtendMediumSeconds(20);
+        props.getHotkey().setExtendHighSeconds(30);
+
+        HotKeyDetector detector = new HotKeyDetector(props);
+        String key = "k";
+        detector.record(key, 60);
+        Assertions.assertTrue(detector.collectTtlExtensions(0).isEmpty());
+
+        detector.record(key, 60);
+        Assertions.assertEquals(70, detector.collectTtlExtensions(0).get(key));
+        // 等级未变且未到续期时间：不重复续期
+        Assertions.assertTrue(detector.collectTtlExtensions(1_000).isEmpty());
+        // 超过目标 TTL 的一半：再次续期
+        Assertions.assertEquals(70, detector.collectTtlExtensions(36_000).get(key));
+
+        detector.record(key, 60);
+        detector.record(key, 60);
+        Assertions.assertEquals(80, detector.collectTtlExtensions(37_000).get(key));
+
+        detector.rotate();
+        detector.rotate();
+        detector.rotate();
+        Assertions.assertTrue(detector.collectTtlExtensions(38_000).isEmpty());
+        Assertions.assertEquals(0, detector.trackedCount());
+    }
+
+    @Test
+    void topKCandidatesAreBounded() {
+        CacheProperties props = new CacheProperties();
+        props.getHotkey().setLevelLow(2);
+        props.getHotkey().setLevelMedium(100);
+        props.getHotkey().setLevelHigh(200);
+        props.getHotkey().setTopK(2);
+
+        HotKeyDetector detector = new HotKeyDetector(props);
+        for (int i = 0; i < 3; i++) detector.record("a", 60);
+        for (int i = 0; i < 4; i++) detector.record("b", 60);
+        detector.collectTtlExtensions(0);
+        for (int i = 0; i < 10; i++) detector.record("c", 60);
+
+        Assertions.assertEquals(2, detector.trackedCount());
+        Map<String, Integer> ext = detector.collectTtlExtensions(1_000);
+        Assertions.assertFalse(ext.containsKey("a"));
+        Assertions.assertEquals(10, detector.heat("c"));
+
+        detector.reset("c");
+        Assertions.assertEquals(0, detector.heat("c"));
+    }
+
+    @Test
+    void globalHeatDrivesLevel() {
+        CacheProperties props = new CacheProperties();
+        props.getHotkey().setLevelLow(20);
+        props.getHotkey().setLevelMedium(40);
+        props.getHotkey().setLevelHigh(60);
+        props.getHotkey().setReportMinHeat(3);
+        props.getHotkey().setExtendHighSeconds(30);
+
+        HotKeyDetector detector = new HotKeyDetector(props);
+        for (int i = 0; i < 3; i++) detector.record("k", 60);
+        Assertions.assertEquals(HotKeyDetector.Level.NONE, detector.level("k"));
+        Assertions.assertEquals(3, detector.localTopK().get("k"));
+
+        // 其他实例的流量汇总后，本实例按全局热度评级
+        Assertions.assertEquals(List.of("k"), detector.applyGlobalHeat(Map.of("k", 65)));
+        Assertions.assertEquals(HotKeyDetector.Level.HIGH, detector.level("k"));
+        Assertions.assertEquals(90, detector.ttlForPublic(60, "k"));
+        Assertions.assertEquals(90, detector.collectTtlExtensions(0).get("k"));
+        // 已是 HIGH 的 key 不重复预热
+        Assertions.assertTrue(detector.applyGlobalHeat(Map.of("k", 70)).isEmpty());
+    }
+
+    @Test
+    void equalHashCodeKeysDoNotShareCounters() {
+        CacheProperties props = new CacheProperties();
+        String a = "feed:mine:1:Aa";
+        String b = "feed:mine:1:BB";
+        Assertions.assertEquals(a.hashCode(), b.hashCode());
+
+        HotKeyDetector detector = new HotKeyDetector(props);
+        for (int i = 0; i < 50; i++) detector.record(a);
+        Assertions.assertEquals(50, detector.heat(a));
+        // 128 位哈希按字节计算，hashCode 相同的 key 不会在所有行同时碰撞
+        Assertions.assertEquals(0, detector.heat(b));
+    }
+
+    @Test
+    void concurrentAdmissionsRespectTopK() throws Exception {
+        CacheProperties props = new CacheProperties();
+        props.getHotkey().setLevelLow(2);
+        props.getHotkey().setTopK(4);
+
+        HotKeyDetector detector = new HotKeyDetector(props);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int id = t;
+            Thread th = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int k = 0; k < 50; k++) {
+                    for (int i = 0; i < 3; i++) detector.record("k:" + id + ":" + k, 60);
+                }
+            });
+            threads.add(th);
+            th.start();
+        }
+        start.countDown();
+        for (Thread th : threads) th.join();
+
+        Assertions.assertEquals(4, detector.trackedCount());
+    }
+
+    @Test
+    void hashMatchesMurmur3Reference() {
+        // MurmurHash3 x64_128（seed 0）参考值，覆盖 5 字节与 43 字节（2 个整块 + 11 字节尾部）
+        Assertions.assertArrayEquals(new long[]{0xcbd8a7b341bd9b02L, 0x5b1e906a48ae1d19L}, HotKeyDetector.hash("hello"));
+        Assertions.assertArrayEquals(new long[]{0xe34bbc7bbc071b6cL, 0x7a433ca9c49a9347L},
+                HotKeyDetector.hash("The quick brown fox jumps over the lazy dog"));
+    }
+}
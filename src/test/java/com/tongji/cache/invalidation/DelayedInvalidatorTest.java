@@ -0,0 +1,46 @@
+package com.tongji.cache.invalidation;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DelayedInvalidatorTest {
+    @Test
+    void repeatedSchedulesForSameKeyRunOnce() throws Exception {
+        DelayedInvalidator inv = new DelayedInvalidator();
+        inv.start();
+        try {
+            AtomicInteger runs = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(1);
+            for (int i = 0; i < 5; i++) {
+                inv.schedule("feed:gen:public", 100, () -> {
+                    runs.incrementAndGet();
+                    done.countDown();
+                });
+            }
+            Assertions.assertTrue(done.await(2, TimeUnit.SECONDS));
+            Thread.sleep(200);
+            Assertions.assertEquals(1, runs.get());
+            Assertions.assertEquals(4, inv.coalescedCount());
+            Assertions.assertEquals(1, inv.executedCount());
+            Assertions.assertEquals(0, inv.pendingCount());
+        } finally {
+            inv.stop();
+        }
+    }
+
+    @Test
+    void stopRunsPendingTasks() {
+        DelayedInvalidator inv = new DelayedInvalidator();
+        inv.start();
+        AtomicInteger runs = new AtomicInteger();
+        inv.schedule("a", 60_000, runs::incrementAndGet);
+        inv.schedule("b", 60_000, runs::incrementAndGet);
+        inv.stop();
+        Assertions.assertEquals(2, runs.get());
+        Assertions.assertEquals(0, inv.pendingCount());
+    }
+}
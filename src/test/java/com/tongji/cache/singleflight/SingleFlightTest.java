@@ -0,0 +1,70 @@
+package com.tongji.cache.singleflight;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SingleFlightTest {
+    @Test
+    void concurrentCallersShareOneLoad() throws Exception {
+        SingleFlight sf = new SingleFlight();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<String>> results = new ArrayList<>();
+        results.add(pool.submit(() -> sf.execute("k", () -> {
+            calls.incrementAndGet();
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "v";
+        })));
+        Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 7; i++) {
+            results.add(pool.submit(() -> sf.execute("k", () -> {
+                calls.incrementAndGet();
+                return "other";
+            })));
+        }
+        while (sf.coalescedCount("k") < 7) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+        for (Future<String> f : results) {
+            Assertions.assertEquals("v", f.get(5, TimeUnit.SECONDS));
+        }
+        pool.shutdown();
+
+        Assertions.assertEquals(1, calls.get());
+        Assertions.assertEquals(1, sf.loadCount());
+        Assertions.assertEquals(7, sf.coalescedCount());
+        Assertions.assertEquals(0, sf.inFlightCount());
+    }
+
+    @Test
+    void failedLoadIsPropagatedAndCleared() {
+        SingleFlight sf = new SingleFlight();
+        IllegalStateException ex = Assertions.assertThrows(IllegalStateException.class,
+                () -> sf.execute("k", () -> {
+                    throw new IllegalStateException("boom");
+                }));
+        Assertions.assertEquals("boom", ex.getMessage());
+        Assertions.assertEquals(0, sf.inFlightCount());
+
+        Assertions.assertEquals("ok", sf.execute("k", () -> "ok"));
+        Assertions.assertEquals(2, sf.loadCount());
+    }
+}
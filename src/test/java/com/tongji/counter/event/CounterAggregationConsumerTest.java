@@ -0,0 +1,94 @@
+package com.tongji.counter.event;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisScriptingCommands;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.kafka.support.Acknowledgment;
+
+import java.util.List;
+import java.util.Map;
+
+public class CounterAggregationConsumerTest {
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private final CounterAggregationConsumer consumer = new CounterAggregationConsumer(objectMapper, null);
+
+    @Test
+    void mergesFieldsPerEntity() throws Exception {
+        Map<String, Map<Integer, Long>> net = consumer.fold(List.of(
+                event("knowpost", "1", "like", 1, 1),
+                event("knowpost", "1", "like", 1, 1),
+                event("knowpost", "1", "fav", 2, 1),
+                event("knowpost", "2", "like", 1, 1)));
+
+        Assertions.assertEquals(Map.of(1, 2L, 2, 1L), net.get("knowpost:1"));
+        Assertions.assertEquals(Map.of(1, 1L), net.get("knowpost:2"));
+        Assertions.assertEquals(2, net.size());
+    }
+
+    @Test
+    void likeThenUnlikeCancelsOut() throws Exception {
+        Map<String, Map<Integer, Long>> net = consumer.fold(List.of(
+                event("knowpost", "1", "like", 1, 1),
+                event("knowpost", "1", "like", 1, -1),
+                event("knowpost", "2", "fav", 2, 1),
+                event("knowpost", "2", "fav", 2, -1),
+                event("knowpost", "2", "like", 1, 1)));
+
+        // 净增量为 0 的字段与实体都不写入
+        Assertions.assertFalse(net.containsKey("knowpost:1"));
+        Assertions.assertEquals(Map.of(1, 1L), net.get("knowpost:2"));
+    }
+
+    @Test
+    void skipsMalformedAndOutOfRangeEvents() throws Exception {
+        Map<String, Map<Integer, Long>> net = consumer.fold(List.of(
+                "not json",
+                "{\"entityType\":",
+                event("knowpost", "1", "like", -1, 1),
+                event("knowpost", "1", "like", 99, 1),
+                event("knowpost", "1", "like", 1, 0),
+                event("knowpost", "1", "like", 1, 1)));
+
+        Assertions.assertEquals(Map.of("knowpost:1", Map.of(1, 1L)), net);
+    }
+
+    @Test
+    void reloadsScriptAndRetriesOnNoScript() throws Exception {
+        StringRedisTemplate redis = Mockito.mock(StringRedisTemplate.class);
+        RedisConnection connection = Mockito.mock(RedisConnection.class);
+        RedisScriptingCommands scripting = Mockito.mock(RedisScriptingCommands.class);
+        Mockito.when(connection.scriptingCommands()).thenReturn(scripting);
+        // 首次管道遇到 NOSCRIPT（脚本缓存被清空），重新加载后重试执行回调
+        Mockito.when(redis.executePipelined(ArgumentMatchers.<RedisCallback<?>>any()))
+                .thenThrow(new RedisSystemException("NOSCRIPT No matching script", null))
+                .thenAnswer(inv -> {
+                    inv.<RedisCallback<?>>getArgument(0).doInRedis(connection);
+                    return List.of(1L);
+                });
+        CounterAggregationConsumer c = new CounterAggregationConsumer(objectMapper, redis);
+        Acknowledgment ack = Mockito.mock(Acknowledgment.class);
+
+        c.onMessages(List.of(event("knowpost", "1", "like", 1, 1)), ack);
+
+        // 启动后首次加载一次，NOSCRIPT 后再加载一次；脚本以 EVALSHA 发送而非 EVAL
+        Mockito.verify(redis, Mockito.times(2)).execute(ArgumentMatchers.<RedisCallback<?>>any());
+        Mockito.verify(scripting).evalSha(ArgumentMatchers.anyString(), ArgumentMatchers.eq(ReturnType.INTEGER),
+                ArgumentMatchers.eq(2), ArgumentMatchers.any(byte[][].class));
+        Mockito.verify(scripting, Mockito.never()).eval(ArgumentMatchers.any(), ArgumentMatchers.any(),
+                ArgumentMatchers.anyInt(), ArgumentMatchers.any(byte[][].class));
+        Mockito.verify(ack).acknowledge();
+    }
+
+    private String event(String etype, String eid, String metric, int idx, int delta) throws Exception {
+        return objectMapper.writeValueAsString(CounterEvent.of(etype, eid, metric, idx, 42L, delta));
+    }
+}
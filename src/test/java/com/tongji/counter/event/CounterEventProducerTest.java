@@ -0,0 +1,113 @@
+package com.tongji.counter.event;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+public class CounterEventProducerTest {
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private KafkaTemplate<String, String> kafka;
+    private CounterEventProducer producer;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        kafka = Mockito.mock(KafkaTemplate.class);
+        producer = new CounterEventProducer(kafka, objectMapper);
+        ReflectionTestUtils.setField(producer, "coalesceEnabled", true);
+        // 窗口足够长，由测试显式触发刷写
+        ReflectionTestUtils.setField(producer, "windowMs", 60_000L);
+        ReflectionTestUtils.setField(producer, "maxPending", 2);
+        producer.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        producer.stop();
+    }
+
+    @Test
+    void flushSendsNetDeltasAndDropsZeros() throws Exception {
+        producer.publish(CounterEvent.of("knowpost", "1", "like", 1, 10L, 1));
+        producer.publish(CounterEvent.of("knowpost", "1", "like", 1, 11L, 1));
+        producer.publish(CounterEvent.of("knowpost", "2", "like", 1, 10L, 1));
+        producer.publish(CounterEvent.of("knowpost", "2", "like", 1, 10L, -1));
+        Mockito.verifyNoInteractions(kafka);
+
+        producer.flush();
+
+        List<CounterEvent> sent = sent();
+        Assertions.assertEquals(1, sent.size());
+        Assertions.assertEquals("1", sent.get(0).getEntityId());
+        Assertions.assertEquals(2, sent.get(0).getDelta());
+        Assertions.assertEquals(0L, sent.get(0).getUserId());
+    }
+
+    @Test
+    void overflowIsSentDirectly() throws Exception {
+        producer.publish(CounterEvent.of("knowpost", "1", "like", 1, 10L, 1));
+        producer.publish(CounterEvent.of("knowpost", "2", "like", 1, 10L, 1));
+        // 合并表已满：新实体直接发送，已有实体继续合并
+        producer.publish(CounterEvent.of("knowpost", "3", "fav", 2, 12L, 1));
+        producer.publish(CounterEvent.of("knowpost", "1", "like", 1, 11L, 1));
+
+        List<CounterEvent> sent = sent();
+        Assertions.assertEquals(1, sent.size());
+        Assertions.assertEquals("3", sent.get(0).getEntityId());
+        Assertions.assertEquals(12L, sent.get(0).getUserId());
+    }
+
+    @Test
+    void stopFlushesRemainingDeltas() throws Exception {
+        producer.publish(CounterEvent.of("knowpost", "1", "like", 1, 10L, 1));
+        producer.publish(CounterEvent.of("knowpost", "1", "fav", 2, 10L, 1));
+
+        producer.stop();
+
+        List<CounterEvent> sent = sent();
+        Assertions.assertEquals(2, sent.size());
+        // 关闭后不再合并，直接发送
+        producer.publish(CounterEvent.of("knowpost", "2", "like", 1, 10L, 1));
+        Assertions.assertEquals(3, sent().size());
+    }
+
+    @Test
+    void publishRacingStopIsStillSent() throws Exception {
+        // 模拟调用方已读到合并开启、在合并前恰好完成关闭（含最终刷写）
+        ReflectionTestUtils.setField(producer, "pending", new ConcurrentHashMap<Object, Integer>() {
+            @Override
+            public Integer merge(Object key, Integer value, BiFunction<? super Integer, ? super Integer, ? extends Integer> fn) {
+                producer.stop();
+                return super.merge(key, value, fn);
+            }
+        });
+
+        producer.publish(CounterEvent.of("knowpost", "1", "like", 1, 10L, 1));
+
+        List<CounterEvent> sent = sent();
+        Assertions.assertEquals(1, sent.size());
+        Assertions.assertEquals(1, sent.get(0).getDelta());
+    }
+
+    private List<CounterEvent> sent() throws Exception {
+        ArgumentCaptor<String> payloads = ArgumentCaptor.forClass(String.class);
+        Mockito.verify(kafka, Mockito.atLeast(0)).send(Mockito.eq(CounterTopics.EVENTS), payloads.capture());
+        List<CounterEvent> out = new ArrayList<>();
+        for (String p : payloads.getAllValues()) {
+            out.add(objectMapper.readValue(p, CounterEvent.class));
+        }
+        return out;
+    }
+}
@@ -0,0 +1,106 @@
+package com.tongji.counter.service.impl;
+
+import com.tongji.counter.schema.BitmapShard;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 长尾实体点赞存储的内存对比：分片位图（bm:*） vs 稀疏成员集合（bmset:*），断言位图布局至少为稀疏布局的 10 倍。
+ * 需要本地 Redis，默认跳过；运行方式：mvn test -Dtest=BitmapLayoutMemoryBenchmarkTest -Dcounter.bench.redis=localhost:6379
+ */
+public class BitmapLayoutMemoryBenchmarkTest {
+    private static final Logger log = LoggerFactory.getLogger(BitmapLayoutMemoryBenchmarkTest.class);
+    private static final String PREFIX = "bench:layout:";
+    private static final int ENTITIES = 2000;
+    private static final int MAX_USER_ID = 5_000_000;
+    /** 每个实体 512 个点赞时随机用户仍大多落在不同分片，位图布局至少多占一个数量级 */
+    private static final double MIN_RATIO = 10.0;
+
+    @Test
+    void sparseSetsUseLessMemoryThanBitmapsForLongTail() {
+        String addr = System.getProperty("counter.bench.redis");
+        Assumptions.assumeTrue(addr != null && !addr.isBlank(), "counter.bench.redis not set");
+        String[] hp = addr.split(":");
+        LettuceConnectionFactory factory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration(hp[0], hp.length > 1 ? Integer.parseInt(hp[1]) : 6379));
+        factory.afterPropertiesSet();
+        StringRedisTemplate redis = new StringRedisTemplate(factory);
+        try {
+            for (int likes : new int[]{1, 5, 50, 512}) {
+                cleanup(redis);
+                write(redis, likes);
+                long dense = memoryUsage(redis, PREFIX + "bm:");
+                long sparse = memoryUsage(redis, PREFIX + "bmset:");
+                double ratio = sparse == 0 ? 0.0 : (double) dense / sparse;
+                log.info("likes/entity={} entities={} bitmap={}B sparse={}B ratio={}x",
+                        likes, ENTITIES, dense, sparse, String.format("%.1f", ratio));
+                Assertions.assertTrue(sparse > 0, "sparse layout not written");
+                Assertions.assertTrue(ratio >= MIN_RATIO,
+                        String.format("likes/entity=%d ratio=%.1fx below %.0fx", likes, ratio, MIN_RATIO));
+            }
+        } finally {
+            cleanup(redis);
+            factory.destroy();
+        }
+    }
+
+    private static void write(StringRedisTemplate redis, int likesPerEntity) {
+        Random rnd = new Random(42);
+        redis.executePipelined((RedisCallback<Object>) c -> {
+            for (int e = 0; e < ENTITIES; e++) {
+                for (int i = 0; i < likesPerEntity; i++) {
+                    long uid = 1 + rnd.nextInt(MAX_USER_ID);
+                    // 现有布局：按用户ID分片置位
+                    c.stringCommands().setBit(bytes(PREFIX + "bm:like:knowpost:" + e + ":" + BitmapShard.chunkOf(uid)),
+                            BitmapShard.bitOf(uid), true);
+                    // 稀疏布局：成员集合（intset 编码）
+                    c.setCommands().sAdd(bytes(PREFIX + "bmset:like:knowpost:" + e), bytes(String.valueOf(uid)));
+                }
+            }
+            return null;
+        });
+    }
+
+    private static long memoryUsage(StringRedisTemplate redis, String prefix) {
+        List<String> keys = new ArrayList<>();
+        try (Cursor<String> cursor = redis.scan(ScanOptions.scanOptions().match(prefix + "*").count(1000).build())) {
+            cursor.forEachRemaining(keys::add);
+        }
+        long total = 0;
+        for (String k : keys) {
+            Object n = redis.execute((RedisCallback<Object>) c -> c.execute("MEMORY", bytes("USAGE"), bytes(k)));
+            if (n instanceof Number num) {
+                total += num.longValue();
+            }
+        }
+        return total;
+    }
+
+    private static void cleanup(StringRedisTemplate redis) {
+        List<String> keys = new ArrayList<>();
+        try (Cursor<String> cursor = redis.scan(ScanOptions.scanOptions().match(PREFIX + "*").count(1000).build())) {
+            cursor.forEachRemaining(keys::add);
+        }
+        if (!keys.isEmpty()) {
+            redis.delete(keys);
+        }
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
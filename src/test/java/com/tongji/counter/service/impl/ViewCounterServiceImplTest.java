@@ -0,0 +1,133 @@
+package com.tongji.counter.service.impl;
+
+import com.tongji.counter.schema.CounterKeys;
+import com.tongji.counter.schema.CounterSchema;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.AdditionalMatchers;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisHashCommands;
+import org.springframework.data.redis.connection.RedisKeyCommands;
+import org.springframework.data.redis.connection.RedisSetCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+public class ViewCounterServiceImplTest {
+    private static final byte[] READ_FIELD = bytes(String.valueOf(CounterSchema.IDX_READ));
+
+    private RedisHashCommands hash;
+    private RedisSetCommands set;
+    /** 按调用顺序依次返回的管道结果；元素为异常时执行命令后抛出 */
+    private final Deque<Object> replies = new ArrayDeque<>();
+    private ViewCounterServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        StringRedisTemplate redis = Mockito.mock(StringRedisTemplate.class);
+        RedisConnection connection = Mockito.mock(RedisConnection.class);
+        hash = Mockito.mock(RedisHashCommands.class);
+        set = Mockito.mock(RedisSetCommands.class);
+        Mockito.when(connection.hashCommands()).thenReturn(hash);
+        Mockito.when(connection.setCommands()).thenReturn(set);
+        Mockito.when(connection.keyCommands()).thenReturn(Mockito.mock(RedisKeyCommands.class));
+        Mockito.when(redis.executePipelined(ArgumentMatchers.<RedisCallback<?>>any())).thenAnswer(inv -> {
+            Object reply = replies.isEmpty() ? List.of() : replies.poll();
+            inv.<RedisCallback<?>>getArgument(0).doInRedis(connection);
+            if (reply instanceof RuntimeException e) {
+                throw e;
+            }
+            return reply;
+        });
+        service = new ViewCounterServiceImpl(redis);
+    }
+
+    @Test
+    void countsOnlyFirstViewOfTheDayPlusAnonymous() {
+        service.recordView("knowpost", "1", 7L);
+        service.recordView("knowpost", "1", 7L);
+        service.recordView("knowpost", "1", 8L);
+        service.recordView("knowpost", "1", null);
+        // 去重管道：用户 7 当天已浏览过（SADD 返回 0），用户 8 为首次
+        replies.add(List.of(0L, 1L, true));
+
+        service.flush();
+
+        // 1 个新用户 + 1 次匿名浏览
+        Mockito.verify(hash).hIncrBy(aggKey("1"), READ_FIELD, 2L);
+        Mockito.verify(set).sAdd(AdditionalMatchers.aryEq(bytes(CounterKeys.aggDirtyKey())),
+                AdditionalMatchers.aryEq(bytes(CounterKeys.aggDirtyMember("knowpost", "1"))));
+    }
+
+    @Test
+    void aggregationFailureRequeuesDedupedDelta() {
+        service.recordView("knowpost", "1", 7L);
+        replies.add(List.of(1L, true));
+        replies.add(new RedisSystemException("down", null));
+        service.flush();
+
+        // 去重成员已写入：重试时不再去重，直接写入退回的增量（首轮写入失败，第二轮重写）
+        service.flush();
+
+        Mockito.verify(hash, Mockito.times(2)).hIncrBy(aggKey("1"), READ_FIELD, 1L);
+        Mockito.verify(set, Mockito.times(1)).sAdd(AdditionalMatchers.aryEq(bytes(CounterKeys.viewDedupKey("knowpost", "1", today()))),
+                ArgumentMatchers.<byte[]>any());
+    }
+
+    @Test
+    void dedupFailureRequeuesUsers() {
+        service.recordView("knowpost", "1", 7L);
+        service.recordView("knowpost", "1", null);
+        replies.add(new RedisSystemException("down", null));
+        service.flush();
+        Mockito.verifyNoInteractions(hash);
+        Mockito.verify(set).sAdd(AdditionalMatchers.aryEq(bytes(CounterKeys.viewDedupKey("knowpost", "1", today()))),
+                AdditionalMatchers.aryEq(bytes("7")));
+
+        // 用户与匿名浏览原样退回，下一轮重新去重
+        replies.add(List.of(1L, true));
+        service.flush();
+
+        Mockito.verify(hash).hIncrBy(aggKey("1"), READ_FIELD, 2L);
+        Mockito.verify(set, Mockito.times(2)).sAdd(AdditionalMatchers.aryEq(bytes(CounterKeys.viewDedupKey("knowpost", "1", today()))),
+                AdditionalMatchers.aryEq(bytes("7")));
+    }
+
+    @Test
+    void dropsNewEntitiesWhenPendingIsFull() {
+        for (int i = 0; i < 100_000; i++) {
+            service.recordView("knowpost", String.valueOf(i), null);
+        }
+        service.recordView("knowpost", "overflow", null);
+        // 已登记的实体仍可继续累加
+        service.recordView("knowpost", "0", null);
+
+        service.flush();
+
+        Mockito.verify(hash, Mockito.never()).hIncrBy(AdditionalMatchers.aryEq(aggKey("overflow")),
+                ArgumentMatchers.any(), ArgumentMatchers.anyLong());
+        Mockito.verify(hash).hIncrBy(aggKey("0"), READ_FIELD, 2L);
+        Mockito.verify(hash, Mockito.times(100_000)).hIncrBy(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.anyLong());
+    }
+
+    private static byte[] aggKey(String eid) {
+        return bytes(CounterKeys.aggKey("knowpost", eid));
+    }
+
+    private static String today() {
+        return LocalDate.now().format(DateTimeFormatter.BASIC_ISO_DATE);
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,41 @@
+package com.tongji.knowpost.cache;
+
+import com.tongji.knowpost.api.dto.FeedItemResponse;
+import com.tongji.knowpost.api.dto.FeedPageResponse;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class FeedFragmentCodecTest {
+    @Test
+    void itemRoundTripKeepsNullsAndFlags() {
+        FeedItemResponse full = new FeedItemResponse("1234567890123", "标题", "描述", "https://img/1.png",
+                List.of("java", "缓存"), "https://avatar", "昵称", "[\"tag\"]", 12L, 0L, true, false, null);
+        Assertions.assertEquals(full, FeedFragmentCodec.decodeItem(FeedFragmentCodec.encodeItem(full)));
+
+        FeedItemResponse sparse = new FeedItemResponse("1", null, "", null, null, null, null, null, null, null, null, null, true);
+        Assertions.assertEquals(sparse, FeedFragmentCodec.decodeItem(FeedFragmentCodec.encodeItem(sparse)));
+    }
+
+    @Test
+    void pageRoundTrip() {
+        FeedItemResponse a = new FeedItemResponse("1", "a", null, null, List.of(), null, null, null, 300L, 5L, null, null, null);
+        FeedItemResponse b = new FeedItemResponse("2", "b", null, null, List.of("x"), null, null, null, 0L, 70000L, null, null, null);
+        FeedPageResponse page = new FeedPageResponse(List.of(a, b), 3, 20, true, "MTcwMDAwMDAwMDAwMDox");
+        Assertions.assertEquals(page, FeedFragmentCodec.decodePage(FeedFragmentCodec.encodePage(page)));
+    }
+
+    @Test
+    void legacyValuesAreNotBinary() {
+        Assertions.assertFalse(FeedFragmentCodec.isBinary("{\"id\":\"1\"}".getBytes(StandardCharsets.UTF_8)));
+        Assertions.assertFalse(FeedFragmentCodec.isBinary("NULL".getBytes(StandardCharsets.UTF_8)));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> FeedFragmentCodec.decodeItem("{\"id\":\"1\"}".getBytes(StandardCharsets.UTF_8)));
+
+        byte[] page = FeedFragmentCodec.encodePage(new FeedPageResponse(List.of(), 1, 10, false, null));
+        Assertions.assertTrue(FeedFragmentCodec.isBinary(page));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> FeedFragmentCodec.decodeItem(page));
+    }
+}
@@ -0,0 +1,41 @@
+package com.tongji.knowpost.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class FeedSlotClockTest {
+    @Test
+    void slotBoundaryIsShiftedByNodeOffset() {
+        long hour = FeedSlotClock.SLOT_MS;
+        long topOfHour = 480_000L * hour;
+        FeedSlotClock a = new FeedSlotClock(0);
+        FeedSlotClock b = new FeedSlotClock(3 * 60_000L);
+
+        // 整点时 a 已切换到新槽，b 仍停留在上一槽，3 分钟后 b 才切换
+        Assertions.assertEquals(480_000L, a.slotAt(topOfHour));
+        Assertions.assertEquals(479_999L, b.slotAt(topOfHour));
+        Assertions.assertEquals(480_000L, b.slotAt(topOfHour + 3 * 60_000L));
+    }
+
+    @Test
+    void overlapCoversStartOfEachSlot() {
+        long hour = FeedSlotClock.SLOT_MS;
+        long topOfHour = 480_000L * hour;
+        FeedSlotClock c = new FeedSlotClock(60_000L);
+
+        Assertions.assertFalse(c.inOverlapAt(topOfHour));
+        Assertions.assertTrue(c.inOverlapAt(topOfHour + 60_000L));
+        Assertions.assertTrue(c.inOverlapAt(topOfHour + 60_000L + FeedSlotClock.OVERLAP_MS - 1));
+        Assertions.assertFalse(c.inOverlapAt(topOfHour + 60_000L + FeedSlotClock.OVERLAP_MS));
+    }
+
+    @Test
+    void idsWrittenNearSlotEndOutliveNextOverlap() {
+        long topOfHour = 480_000L * FeedSlotClock.SLOT_MS;
+        FeedSlotClock c = new FeedSlotClock(0);
+
+        Assertions.assertEquals(90, c.idsTtlSecondsAt(topOfHour + 30 * 60_000L, 90));
+        // 槽结束前 1 分钟写入：需存活到下一槽重叠期结束（1 + 10 分钟）
+        Assertions.assertEquals(660, c.idsTtlSecondsAt(topOfHour - 60_000L, 90));
+    }
+}
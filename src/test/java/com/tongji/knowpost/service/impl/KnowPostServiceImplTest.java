@@ -0,0 +1,139 @@
+package com.tongji.knowpost.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tongji.cache.config.CacheProperties;
+import com.tongji.cache.hotkey.HotKeyDetector;
+import com.tongji.cache.invalidation.L1InvalidationBus;
+import com.tongji.cache.metrics.CacheTierMetrics;
+import com.tongji.cache.refresh.BackgroundRefresher;
+import com.tongji.cache.singleflight.SingleFlight;
+import com.tongji.common.exception.BusinessException;
+import com.tongji.counter.service.CounterService;
+import com.tongji.counter.service.UserCounterService;
+import com.tongji.counter.service.ViewCounterService;
+import com.tongji.knowpost.api.dto.KnowPostDetailBatchResponse;
+import com.tongji.knowpost.api.dto.KnowPostDetailResponse;
+import com.tongji.knowpost.id.SnowflakeIdGenerator;
+import com.tongji.knowpost.mapper.KnowPostMapper;
+import com.tongji.knowpost.model.KnowPostDetailRow;
+import com.tongji.knowpost.service.FeedCacheService;
+import com.tongji.knowpost.service.FollowingTimelineService;
+import com.tongji.llm.rag.RagIndexService;
+import com.tongji.storage.config.OssProperties;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+public class KnowPostServiceImplTest {
+    private static final long OWNER = 7L;
+    private static final long POST_ID = 100L;
+
+    private KnowPostMapper mapper;
+    private StringRedisTemplate redis;
+    private Cache<Long, KnowPostDetailResponse> localCache;
+    private ViewCounterService viewCounter;
+    private L1InvalidationBus l1Bus;
+    private KnowPostServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        mapper = Mockito.mock(KnowPostMapper.class);
+        redis = Mockito.mock(StringRedisTemplate.class);
+        // 页面缓存全部未命中
+        Mockito.when(redis.executePipelined(ArgumentMatchers.<RedisCallback<?>>any(), ArgumentMatchers.any()))
+                .thenReturn(List.of());
+        localCache = Caffeine.newBuilder().build();
+        viewCounter = Mockito.mock(ViewCounterService.class);
+        l1Bus = Mockito.mock(L1InvalidationBus.class);
+        // 单航班直接执行回源
+        SingleFlight singleFlight = Mockito.mock(SingleFlight.class);
+        Mockito.when(singleFlight.execute(ArgumentMatchers.anyString(), ArgumentMatchers.any()))
+                .thenAnswer(inv -> inv.<Supplier<?>>getArgument(1).get());
+        CacheProperties props = new CacheProperties();
+        service = new KnowPostServiceImpl(
+                mapper,
+                Mockito.mock(SnowflakeIdGenerator.class),
+                new ObjectMapper(),
+                new OssProperties(),
+                Mockito.mock(FeedCacheService.class),
+                Mockito.mock(CounterService.class),
+                Mockito.mock(UserCounterService.class),
+                viewCounter,
+                redis,
+                new HotKeyDetector(props),
+                singleFlight,
+                Mockito.mock(RagIndexService.class),
+                Mockito.mock(FollowingTimelineService.class),
+                Mockito.mock(BackgroundRefresher.class),
+                props,
+                localCache,
+                l1Bus,
+                Mockito.mock(CacheTierMetrics.class));
+
+        KnowPostDetailRow row = new KnowPostDetailRow();
+        row.setId(POST_ID);
+        row.setCreatorId(OWNER);
+        row.setTitle("仅自己可见");
+        row.setStatus("published");
+        row.setVisible("private");
+        Mockito.when(mapper.findDetailByIds(List.of(POST_ID))).thenReturn(List.of(row));
+        Mockito.when(mapper.findDetailById(POST_ID)).thenReturn(row);
+    }
+
+    @Test
+    void privatePostIsVisibleToOwner() {
+        KnowPostDetailBatchResponse resp = service.getDetails(List.of(POST_ID), OWNER);
+
+        Assertions.assertEquals(1, resp.items().size());
+        Assertions.assertEquals(String.valueOf(POST_ID), resp.items().get(0).id());
+        Assertions.assertTrue(resp.missing().isEmpty());
+        Mockito.verify(viewCounter).recordView("knowpost", String.valueOf(POST_ID), OWNER);
+        assertNotCached();
+    }
+
+    @Test
+    void privatePostIsMissingForOtherUsers() {
+        KnowPostDetailBatchResponse other = service.getDetails(List.of(POST_ID), 8L);
+        Assertions.assertTrue(other.items().isEmpty());
+        Assertions.assertEquals(List.of(String.valueOf(POST_ID)), other.missing());
+
+        KnowPostDetailBatchResponse anonymous = service.getDetails(List.of(POST_ID), null);
+        Assertions.assertTrue(anonymous.items().isEmpty());
+        Assertions.assertEquals(List.of(String.valueOf(POST_ID)), anonymous.missing());
+        // 未返回的详情不计浏览
+        Mockito.verifyNoInteractions(viewCounter);
+        assertNotCached();
+    }
+
+    @Test
+    void privateDetailReadDoesNotEvictPage() {
+        Assertions.assertThrows(BusinessException.class, () -> service.getDetail(POST_ID, 8L));
+        Assertions.assertThrows(BusinessException.class, () -> service.getDetail(POST_ID, null));
+        Assertions.assertEquals(String.valueOf(POST_ID), service.getDetail(POST_ID, OWNER).id());
+
+        // 页面未命中的同步回源没有旧页面可清除：不 DEL、不广播失效
+        Mockito.verify(redis, Mockito.never()).delete(ArgumentMatchers.anyString());
+        Mockito.verify(l1Bus, Mockito.never()).invalidate(ArgumentMatchers.anyString(), ArgumentMatchers.any());
+        Assertions.assertNull(localCache.getIfPresent(POST_ID));
+    }
+
+    /**
+     * 非公开详情不进入本地缓存，也不回写页面缓存（只有读取页面的那次管道）。
+     */
+    private void assertNotCached() {
+        Assertions.assertNull(localCache.getIfPresent(POST_ID));
+        Mockito.verify(redis, Mockito.atLeastOnce())
+                .executePipelined(ArgumentMatchers.<RedisCallback<?>>any(), ArgumentMatchers.isNull());
+        Mockito.verify(redis, Mockito.never()).executePipelined(ArgumentMatchers.<RedisCallback<?>>any());
+        Mockito.verify(redis, Mockito.never()).opsForValue();
+    }
+}
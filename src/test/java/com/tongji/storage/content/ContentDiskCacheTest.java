@@ -0,0 +1,61 @@
+package com.tongji.storage.content;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class ContentDiskCacheTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripsThroughMappedFile() throws Exception {
+        ContentDiskCache cache = new ContentDiskCache(dir, 1024);
+        Assertions.assertNull(cache.get("a"));
+
+        cache.put("a", "# 标题\n正文内容");
+        Assertions.assertEquals("# 标题\n正文内容", cache.get("a"));
+        Assertions.assertEquals(1, cache.entryCount());
+
+        // 重启后从目录重建索引
+        ContentDiskCache reopened = new ContentDiskCache(dir, 1024);
+        Assertions.assertEquals("# 标题\n正文内容", reopened.get("a"));
+        Assertions.assertEquals(cache.totalBytes(), reopened.totalBytes());
+    }
+
+    @Test
+    void evictsLeastRecentlyReadWhenOverBudget() throws Exception {
+        ContentDiskCache cache = new ContentDiskCache(dir, 350);
+        String body = "x".repeat(100);
+        cache.put("a", body);
+        Thread.sleep(5);
+        cache.put("b", body);
+        Thread.sleep(5);
+        // 读取 a 使其成为最近访问
+        Assertions.assertNotNull(cache.get("a"));
+        Thread.sleep(5);
+        cache.put("c", body);
+        Thread.sleep(5);
+        cache.put("d", body);
+
+        Assertions.assertNull(cache.get("b"));
+        Assertions.assertNotNull(cache.get("a"));
+        Assertions.assertNotNull(cache.get("d"));
+        Assertions.assertTrue(cache.totalBytes() <= 350);
+        Assertions.assertFalse(Files.exists(dir.resolve("b.md")));
+        Assertions.assertTrue(cache.evictedCount() >= 1);
+    }
+
+    @Test
+    void externallyDeletedFileIsAMiss() throws Exception {
+        ContentDiskCache cache = new ContentDiskCache(dir, 1024);
+        cache.put("a", "body");
+        Files.delete(dir.resolve("a.md"));
+        Assertions.assertNull(cache.get("a"));
+        Assertions.assertEquals(0, cache.totalBytes());
+        Assertions.assertEquals(0, cache.entryCount());
+    }
+}